@@ -0,0 +1,98 @@
+package xin.tomdonkey.util.http.benchmark;
+
+import com.alibaba.fastjson.JSON;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的json对象，通过items的数量控制序列化后的大小
+ *
+ * @author guolinyuan
+ */
+public class BenchmarkPayload
+{
+    private long id;
+    private String name;
+    private List<Item> items = new ArrayList<>();
+
+    /**
+     * 生成序列化后大小约为size字节的json
+     */
+    public static String json(int size)
+    {
+        return JSON.toJSONString(create(size));
+    }
+
+    public static BenchmarkPayload create(int size)
+    {
+        BenchmarkPayload payload = new BenchmarkPayload();
+        payload.setId(1);
+        payload.setName("payload-" + size);
+        //每个item序列化后约为64字节
+        for (int i = 0; i < Math.max(1, size / 64); i++)
+        {
+            Item item = new Item();
+            item.setId(i);
+            item.setValue("value-0123456789-abcdefghijklmnopqrstuvwxyz");
+            payload.getItems().add(item);
+        }
+        return payload;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public void setId(long id)
+    {
+        this.id = id;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public List<Item> getItems()
+    {
+        return items;
+    }
+
+    public void setItems(List<Item> items)
+    {
+        this.items = items;
+    }
+
+    public static class Item
+    {
+        private long id;
+        private String value;
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public void setId(long id)
+        {
+            this.id = id;
+        }
+
+        public String getValue()
+        {
+            return value;
+        }
+
+        public void setValue(String value)
+        {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package xin.tomdonkey.util.http.benchmark;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.pool.ConnPoolControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import xin.tomdonkey.util.http.common.config.ShardedHttpClientConnectionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池租用与归还的基准测试，比较standard（PoolingHttpClientConnectionManager）与sharded两种实现
+ * 测试前为每个路由建立maxPerRoute个已连接的空闲连接，测试中只租用并归还，不发送请求，结果只反映连接池本身的开销
+ * 每个路由对应一个本地回环服务，并发线程数通过 gradle jmh -PjmhThreads=64 指定，如
+ * java -jar http-jmh.jar ConnectionPoolBenchmark -t 64 -p routes=1,16
+ *
+ * @author guolinyuan
+ */
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark
+{
+    @Param({"standard", "sharded"})
+    private String pool;
+
+    @Param({"1", "16"})
+    private int routes;
+
+    @Param({"64"})
+    private int maxPerRoute;
+
+    private List<LoopbackServer> servers;
+    private HttpRoute[] httpRoutes;
+    private HttpClientConnectionManager connectionManager;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception
+    {
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .build();
+        if ("sharded".equals(pool))
+        {
+            connectionManager = new ShardedHttpClientConnectionManager(registry, SystemDefaultDnsResolver.INSTANCE, -1, TimeUnit.SECONDS);
+        }
+        else
+        {
+            connectionManager = new PoolingHttpClientConnectionManager(registry);
+        }
+        ConnPoolControl<HttpRoute> control = (ConnPoolControl<HttpRoute>) connectionManager;
+        control.setMaxTotal(routes * maxPerRoute);
+        control.setDefaultMaxPerRoute(maxPerRoute);
+
+        servers = new ArrayList<>(routes);
+        httpRoutes = new HttpRoute[routes];
+        for (int i = 0; i < routes; i++)
+        {
+            LoopbackServer server = new LoopbackServer(16);
+            servers.add(server);
+            httpRoutes[i] = new HttpRoute(HttpHost.create(server.url("")));
+            warmUp(httpRoutes[i]);
+        }
+    }
+
+    /**
+     * 建立maxPerRoute个连接后一起归还，之后的租用都复用空闲连接
+     */
+    private void warmUp(HttpRoute route) throws Exception
+    {
+        List<HttpClientConnection> connections = new ArrayList<>(maxPerRoute);
+        for (int i = 0; i < maxPerRoute; i++)
+        {
+            HttpClientConnection connection = connectionManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+            HttpClientContext context = HttpClientContext.create();
+            connectionManager.connect(connection, route, 1000, context);
+            connectionManager.routeComplete(connection, route, context);
+            //与ConnectionWarmer相同，绑定输入输出缓冲，使空闲后校验可以正常进行
+            connection.flush();
+            connections.add(connection);
+        }
+        for (HttpClientConnection connection : connections)
+        {
+            connectionManager.releaseConnection(connection, null, 10, TimeUnit.MINUTES);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        connectionManager.shutdown();
+        servers.forEach(LoopbackServer::stop);
+    }
+
+    @Benchmark
+    public HttpClientConnection leaseAndRelease() throws Exception
+    {
+        HttpRoute route = httpRoutes[routes == 1 ? 0 : ThreadLocalRandom.current().nextInt(routes)];
+        HttpClientConnection connection = connectionManager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        connectionManager.releaseConnection(connection, null, 10, TimeUnit.MINUTES);
+        return connection;
+    }
+}
@@ -0,0 +1,91 @@
+package xin.tomdonkey.util.http.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import xin.tomdonkey.util.http.HttpUtilApplication;
+import xin.tomdonkey.util.http.common.utils.HttpUtil;
+
+/**
+ * HttpUtil主要同步方法的吞吐量与延迟基准测试，请求发往本地回环服务
+ * 响应体大小与连接池参数均为@Param，并发线程数通过 gradle jmh -PjmhThreads=32 指定
+ * 也可以使用 gradle jmhJar 打包后运行，如 java -jar http-jmh.jar -t 32 -p connMaxTotal=200 -p maxPerRoute=200
+ *
+ * 连接池参数通过命令行参数传入Spring容器，优先级高于httpclient.properties
+ *
+ * @author guolinyuan
+ */
+@State(Scope.Benchmark)
+public class HttpUtilBenchmark
+{
+    @Param({"1024", "65536", "1048576"})
+    private int payloadSize;
+
+    @Param({"100"})
+    private int connMaxTotal;
+
+    @Param({"20"})
+    private int maxPerRoute;
+
+    private LoopbackServer server;
+    private ConfigurableApplicationContext context;
+    private HttpUtil httpUtil;
+
+    private String payloadUrl;
+    private String echoUrl;
+    private String requestJson;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        server = new LoopbackServer(payloadSize);
+        payloadUrl = server.url("/payload");
+        echoUrl = server.url("/echo");
+        requestJson = BenchmarkPayload.json(payloadSize);
+
+        context = new SpringApplicationBuilder(HttpUtilApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--httpclient.config.connMaxTotal=" + connMaxTotal,
+                        "--httpclient.config.maxPerRoute=" + maxPerRoute,
+                        "--logging.level.root=WARN");
+        httpUtil = context.getBean(HttpUtil.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        context.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public byte[] sendSynGetBytes()
+    {
+        return httpUtil.sendSynGetBytes(payloadUrl);
+    }
+
+    @Benchmark
+    public String sendSynGetString()
+    {
+        return httpUtil.sendSynGetString(payloadUrl);
+    }
+
+    @Benchmark
+    public BenchmarkPayload sendSynGetObject()
+    {
+        return httpUtil.sendSynGetObject(BenchmarkPayload.class, payloadUrl);
+    }
+
+    @Benchmark
+    public BenchmarkPayload sendSynJsonStrPostObject()
+    {
+        return httpUtil.sendSynJsonStrPostObject(echoUrl, requestJson, BenchmarkPayload.class);
+    }
+}
@@ -0,0 +1,75 @@
+package xin.tomdonkey.util.http.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基准测试使用的本地回环HTTP服务，避免网络波动影响测试结果
+ * /payload 返回指定大小的json对象，/echo 原样返回POST的请求体
+ *
+ * @author guolinyuan
+ */
+public class LoopbackServer
+{
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] payload;
+
+    public LoopbackServer(int payloadSize) throws IOException
+    {
+        this.payload = BenchmarkPayload.json(payloadSize).getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.executor = Executors.newCachedThreadPool(r ->
+        {
+            Thread thread = new Thread(r, "loopback-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext("/payload", exchange -> respond(exchange, payload));
+        this.server.createContext("/echo", exchange -> respond(exchange, readAll(exchange.getRequestBody())));
+        this.server.start();
+    }
+
+    public String url(String path)
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    public void stop()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException
+    {
+        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int l;
+        while ((l = in.read(buf)) != -1)
+        {
+            out.write(buf, 0, l);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,160 @@
+package xin.tomdonkey.util.http.common.admission;
+
+import org.springframework.beans.factory.DisposableBean;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按路由管理准入控制，路由第一次被请求时创建其并发限制器
+ *
+ * @author guolinyuan
+ */
+public class AdmissionRegistry implements DisposableBean
+{
+    private final boolean enabled;
+    private final ConcurrencyLimiter.Settings settings;
+    private final long timeoutNanos;
+    private final HttpClientMetrics metrics;
+
+    private final ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 异步请求在队列中等待超时的定时器，第一次有异步请求进入队列时创建
+     */
+    private ScheduledExecutorService timer;
+
+    /**
+     * @param enabled 是否启用准入控制，不启用时get返回null
+     * @param timeout 请求在队列中等待的最长时间，单位ms
+     */
+    public AdmissionRegistry(boolean enabled, ConcurrencyLimiter.Settings settings, long timeout, HttpClientMetrics metrics)
+    {
+        this.enabled = enabled;
+        this.settings = settings;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取路由的并发限制器
+     *
+     * @param route 路由名，格式为host:port
+     * @return 并发限制器，未启用准入控制时返回null
+     */
+    public ConcurrencyLimiter get(String route)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        return limiters.computeIfAbsent(route, key -> new ConcurrencyLimiter(key, settings));
+    }
+
+    /**
+     * 同步请求获取许可，在队列中等待不超过配置的等待时间及maxWait，记录等待时间与拒绝次数
+     *
+     * @param maxWait 调用方允许的最长等待时间，单位ns，如截止时间的剩余时间
+     * @return 是否获得许可
+     */
+    public boolean acquire(ConcurrencyLimiter limiter, long maxWait)
+    {
+        long start = System.nanoTime();
+        boolean admitted = limiter.acquire(Math.min(timeoutNanos, maxWait));
+        long waited = System.nanoTime() - start;
+        if (!admitted)
+        {
+            onRejected(limiter.getRoute());
+        }
+        else
+        {
+            metrics.recordTime(HttpClientMetrics.ADMISSION_WAIT, limiter.getRoute(), waited);
+        }
+        return admitted;
+    }
+
+    /**
+     * 异步请求获取许可，不阻塞，进入队列后在配置的等待时间内仍未获得许可时移出队列，执行onTimeout
+     * 进入队列的请求被调用方取消时，调用方须通过ConcurrencyLimiter.cancel(onGranted)将其移出队列
+     *
+     * @param onGranted 进入队列后获得许可时执行的回调
+     * @param onTimeout 等待超时时在定时器线程中执行的回调，此时已记录拒绝次数
+     * @return 获取许可的结果，REJECTED时已记录拒绝次数
+     */
+    public ConcurrencyLimiter.Admission tryAcquire(ConcurrencyLimiter limiter, Runnable onGranted, Runnable onTimeout)
+    {
+        ConcurrencyLimiter.Admission admission = limiter.tryAcquire(onGranted);
+        if (admission == ConcurrencyLimiter.Admission.QUEUED && timeoutNanos <= 0 && limiter.cancel(onGranted))
+        {
+            //不允许等待时不进入队列，与同步请求一致
+            admission = ConcurrencyLimiter.Admission.REJECTED;
+        }
+        if (admission == ConcurrencyLimiter.Admission.REJECTED)
+        {
+            onRejected(limiter.getRoute());
+        }
+        else if (admission == ConcurrencyLimiter.Admission.QUEUED)
+        {
+            //已经获得许可或被取消的请求不在队列中，到期时cancel返回false，不做处理
+            timer().schedule(() ->
+            {
+                if (limiter.cancel(onGranted))
+                {
+                    onRejected(limiter.getRoute());
+                    onTimeout.run();
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        return admission;
+    }
+
+    /**
+     * 记录一次被准入控制拒绝的请求
+     */
+    public void onRejected(String route)
+    {
+        metrics.increment(HttpClientMetrics.ADMISSION_REJECTED, route, 1);
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * 所有已创建的并发限制器
+     */
+    public Map<String, ConcurrencyLimiter> getLimiters()
+    {
+        return Collections.unmodifiableMap(limiters);
+    }
+
+    @Override
+    public synchronized void destroy()
+    {
+        if (timer != null)
+        {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    private synchronized ScheduledExecutorService timer()
+    {
+        if (timer == null)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "httpclient-admission");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+}
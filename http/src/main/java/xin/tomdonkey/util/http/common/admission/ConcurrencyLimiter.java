@@ -0,0 +1,477 @@
+package xin.tomdonkey.util.http.common.admission;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个路由的准入控制：限制同时进行中的请求数，超出限制的请求在有界的队列中按先后顺序等待
+ * 队列已满，或等待超时的请求被立即拒绝，不再占用线程等待连接池
+ *
+ * 并发限制可以是固定的，也可以根据观察到的响应耗时自动调整：
+ * FIXED：始终为initialLimit
+ * AIMD：请求失败（没有收到响应）时限制乘以0.9，并发接近限制时每个成功的请求使限制加1
+ * VEGAS：以观察到的最小耗时作为无排队时的耗时，估算服务端的排队数 limit * (1 - minRtt / rtt)
+ *        排队数少于alpha时增大限制，多于beta时减小限制，请求失败时同样减小限制
+ *
+ * 同步请求在acquire中等待，异步请求通过tryAcquire登记回调，不占用线程，等待超时或被取消时通过cancel移出队列
+ *
+ * @author guolinyuan
+ */
+public class ConcurrencyLimiter
+{
+    public enum Algorithm
+    {
+        FIXED, AIMD, VEGAS;
+
+        /**
+         * 解析fixed，aimd与vegas，不区分大小写
+         *
+         * @throws IllegalArgumentException 无法识别的算法
+         */
+        public static Algorithm parse(String value)
+        {
+            try
+            {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("并发限制算法只能为fixed，aimd或vegas：" + value);
+            }
+        }
+    }
+
+    /**
+     * tryAcquire的结果
+     */
+    public enum Admission
+    {
+        /**
+         * 立即获得许可
+         */
+        ADMITTED,
+        /**
+         * 进入等待队列，获得许可时执行回调
+         */
+        QUEUED,
+        /**
+         * 队列已满，请求被拒绝
+         */
+        REJECTED
+    }
+
+    /**
+     * AIMD在请求失败时限制乘以的比例
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * VEGAS每经过此数量的样本，以下一个样本重新估计最小耗时，避免网络或服务端变化后一直使用过时的最小耗时
+     */
+    private static final int MIN_RTT_PROBE_INTERVAL = 1000;
+
+    private final String route;
+    private final Settings settings;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition granted = lock.newCondition();
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inflight;
+
+    private long minRtt;
+    private int samples;
+
+    public ConcurrencyLimiter(String route, Settings settings)
+    {
+        this.route = route;
+        this.settings = settings;
+        this.limit = settings.initialLimit;
+    }
+
+    /**
+     * 获取许可，并发已满时在队列中等待
+     *
+     * @param maxWait 最长等待时间，单位ns，不大于0时不等待
+     * @return 是否获得许可，队列已满，等待超时或线程被中断时返回false
+     */
+    public boolean acquire(long maxWait)
+    {
+        List<Runnable> callbacks;
+        lock.lock();
+        try
+        {
+            if (queue.isEmpty() && inflight < currentLimit())
+            {
+                inflight++;
+                return true;
+            }
+            if (maxWait <= 0 || queue.size() >= settings.queueDepth)
+            {
+                return false;
+            }
+            Waiter waiter = new Waiter(null);
+            queue.addLast(waiter);
+
+            long nanos = maxWait;
+            try
+            {
+                while (!waiter.granted)
+                {
+                    if (nanos <= 0)
+                    {
+                        queue.remove(waiter);
+                        return false;
+                    }
+                    nanos = granted.awaitNanos(nanos);
+                }
+                return true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                if (!waiter.granted)
+                {
+                    queue.remove(waiter);
+                    return false;
+                }
+                //中断时已经获得许可，归还后再放弃
+                inflight--;
+                callbacks = grantWaiters();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        callbacks.forEach(Runnable::run);
+        return false;
+    }
+
+    /**
+     * 获取许可，不阻塞，并发已满时登记回调，获得许可时在归还许可的线程中执行
+     *
+     * @param onGranted 进入队列后获得许可时执行的回调，执行时已经占用许可
+     */
+    public Admission tryAcquire(Runnable onGranted)
+    {
+        lock.lock();
+        try
+        {
+            if (queue.isEmpty() && inflight < currentLimit())
+            {
+                inflight++;
+                return Admission.ADMITTED;
+            }
+            if (queue.size() >= settings.queueDepth)
+            {
+                return Admission.REJECTED;
+            }
+            queue.addLast(new Waiter(onGranted));
+            return Admission.QUEUED;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将仍在队列中等待的异步请求移出队列，用于等待超时或被调用方取消的请求
+     *
+     * @param onGranted tryAcquire登记的回调
+     * @return 是否移出队列，已经获得许可（回调已经或即将执行）时返回false
+     */
+    public boolean cancel(Runnable onGranted)
+    {
+        lock.lock();
+        try
+        {
+            Iterator<Waiter> it = queue.iterator();
+            while (it.hasNext())
+            {
+                if (it.next().callback == onGranted)
+                {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求完成，归还许可并按耗时与结果调整并发限制
+     *
+     * @param rtt 从获得许可到收到响应的耗时，单位ns
+     * @param dropped 请求是否失败（没有收到响应，如超时或连接失败）
+     */
+    public void onResult(long rtt, boolean dropped)
+    {
+        List<Runnable> callbacks;
+        lock.lock();
+        try
+        {
+            int before = inflight;
+            inflight--;
+            adjust(rtt, dropped, before);
+            callbacks = grantWaiters();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        callbacks.forEach(Runnable::run);
+    }
+
+    /**
+     * 归还许可，不调整并发限制，用于没有发出或被调用方取消的请求
+     */
+    public void release()
+    {
+        List<Runnable> callbacks;
+        lock.lock();
+        try
+        {
+            inflight--;
+            callbacks = grantWaiters();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        callbacks.forEach(Runnable::run);
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    /**
+     * 当前的并发限制
+     */
+    public int getLimit()
+    {
+        lock.lock();
+        try
+        {
+            return currentLimit();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getInflight()
+    {
+        lock.lock();
+        try
+        {
+            return inflight;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued()
+    {
+        lock.lock();
+        try
+        {
+            return queue.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        lock.lock();
+        try
+        {
+            return "ConcurrencyLimiter{" + route + ", limit=" + currentLimit() + ", inflight=" + inflight + ", queued=" + queue.size() + "}";
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit()
+    {
+        return (int) limit;
+    }
+
+    /**
+     * 按先后顺序把空闲的许可分给队列中的请求，须持有锁
+     *
+     * @return 需要在锁外执行的异步回调
+     */
+    private List<Runnable> grantWaiters()
+    {
+        List<Runnable> callbacks = null;
+        boolean signal = false;
+        Iterator<Waiter> it = queue.iterator();
+        while (it.hasNext() && inflight < currentLimit())
+        {
+            Waiter waiter = it.next();
+            it.remove();
+            inflight++;
+            waiter.granted = true;
+            if (waiter.callback != null)
+            {
+                if (callbacks == null)
+                {
+                    callbacks = new ArrayList<>(1);
+                }
+                callbacks.add(waiter.callback);
+            }
+            else
+            {
+                signal = true;
+            }
+        }
+        if (signal)
+        {
+            granted.signalAll();
+        }
+        return callbacks == null ? new ArrayList<>(0) : callbacks;
+    }
+
+    /**
+     * 按算法调整并发限制，须持有锁
+     *
+     * @param inflightBefore 本次请求完成之前进行中的请求数
+     */
+    private void adjust(long rtt, boolean dropped, int inflightBefore)
+    {
+        switch (settings.algorithm)
+        {
+            case AIMD:
+                if (dropped)
+                {
+                    limit = limit * BACKOFF_RATIO;
+                }
+                else if (inflightBefore * 2 >= currentLimit())
+                {
+                    limit = limit + 1;
+                }
+                break;
+            case VEGAS:
+                adjustVegas(rtt, dropped, inflightBefore);
+                break;
+            default:
+                return;
+        }
+        limit = Math.max(settings.minLimit, Math.min(settings.maxLimit, limit));
+    }
+
+    private void adjustVegas(long rtt, boolean dropped, int inflightBefore)
+    {
+        double step = Math.max(1, Math.log10(limit));
+        if (dropped)
+        {
+            limit = limit - step;
+            return;
+        }
+        if (rtt <= 0)
+        {
+            return;
+        }
+        if (++samples >= MIN_RTT_PROBE_INTERVAL)
+        {
+            samples = 0;
+            minRtt = 0;
+        }
+        if (minRtt == 0 || rtt < minRtt)
+        {
+            minRtt = rtt;
+        }
+        //并发远低于限制时，耗时不能说明限制是否合适
+        if (inflightBefore * 2 < currentLimit())
+        {
+            return;
+        }
+        double queueSize = limit * (1 - (double) minRtt / rtt);
+        double alpha = Math.max(1, 3 * Math.log10(limit));
+        double beta = Math.max(2, 6 * Math.log10(limit));
+        if (queueSize <= alpha)
+        {
+            limit = limit + step;
+        }
+        else if (queueSize >= beta)
+        {
+            limit = limit - step;
+        }
+    }
+
+    /**
+     * 队列中等待的请求，callback为null时为同步请求
+     */
+    private static class Waiter
+    {
+        private final Runnable callback;
+        private boolean granted;
+
+        Waiter(Runnable callback)
+        {
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * 准入控制的参数，所有路由共用
+     */
+    public static class Settings
+    {
+        private final Algorithm algorithm;
+        private final int initialLimit;
+        private final int minLimit;
+        private final int maxLimit;
+        private final int queueDepth;
+
+        /**
+         * @param algorithm 并发限制的算法
+         * @param initialLimit 初始的并发限制，FIXED时始终为此值
+         * @param minLimit 自动调整的下限
+         * @param maxLimit 自动调整的上限
+         * @param queueDepth 等待队列的长度，为0时并发已满的请求立即被拒绝
+         * @throws IllegalArgumentException 参数不合法
+         */
+        public Settings(Algorithm algorithm, int initialLimit, int minLimit, int maxLimit, int queueDepth)
+        {
+            if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || queueDepth < 0)
+            {
+                throw new IllegalArgumentException("准入控制的参数不合法，须满足 1 <= minLimit <= initialLimit <= maxLimit，queueDepth >= 0："
+                        + minLimit + "，" + initialLimit + "，" + maxLimit + "，" + queueDepth);
+            }
+            this.algorithm = algorithm;
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.queueDepth = queueDepth;
+        }
+
+        public Algorithm getAlgorithm()
+        {
+            return algorithm;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package xin.tomdonkey.util.http.common.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个路由的熔断器
+ *
+ * 关闭状态：请求正常放行，在按秒分桶的滑动窗口中统计请求数，失败数与慢请求数
+ * 窗口内请求数达到minimumCalls，且失败率或慢请求率达到阈值时，切换为打开状态
+ *
+ * 打开状态：所有请求被快速失败，持续openDuration后切换为半开状态
+ *
+ * 半开状态：只放行halfOpenCalls个探测请求，其余请求被快速失败
+ * 探测请求全部完成后，失败率与慢请求率均低于阈值时切换为关闭状态，否则再次切换为打开状态
+ *
+ * @author guolinyuan
+ */
+public class CircuitBreaker
+{
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 状态切换的监听器，在完成切换的线程中调用
+     */
+    public interface Listener
+    {
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String route;
+    private final Settings settings;
+    private final Listener listener;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    /**
+     * 打开状态结束的时间，System.nanoTime()
+     */
+    private volatile long openUntil;
+
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenCalls = new AtomicInteger();
+    private final AtomicInteger halfOpenFailures = new AtomicInteger();
+    private final AtomicInteger halfOpenSlowCalls = new AtomicInteger();
+
+    private final Bucket[] buckets;
+
+    public CircuitBreaker(String route, Settings settings, Listener listener)
+    {
+        this.route = route;
+        this.settings = settings;
+        this.listener = listener;
+        this.buckets = new Bucket[settings.windowSeconds];
+        for (int i = 0; i < buckets.length; i++)
+        {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 请求发送前调用，判断请求是否可以放行
+     * 返回true时，请求完成后必须调用onResult，请求最终没有发送时必须调用release
+     *
+     * @return 是否放行
+     */
+    public boolean tryAcquire()
+    {
+        State current = state.get();
+        if (current == State.CLOSED)
+        {
+            return true;
+        }
+        if (current == State.OPEN)
+        {
+            if (System.nanoTime() - openUntil < 0)
+            {
+                return false;
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+        }
+        //半开状态，只放行有限个探测请求
+        while (true)
+        {
+            int permits = halfOpenPermits.get();
+            if (permits <= 0 || state.get() != State.HALF_OPEN)
+            {
+                return false;
+            }
+            if (halfOpenPermits.compareAndSet(permits, permits - 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 放行的请求完成后调用，记录请求的结果
+     *
+     * @param nanos 请求的耗时，单位ns
+     * @param failure 请求是否失败
+     */
+    public void onResult(long nanos, boolean failure)
+    {
+        boolean slow = nanos >= settings.slowCallNanos;
+        State current = state.get();
+        if (current == State.CLOSED)
+        {
+            Bucket bucket = current();
+            bucket.calls.increment();
+            if (failure)
+            {
+                bucket.failures.increment();
+            }
+            if (slow)
+            {
+                bucket.slowCalls.increment();
+            }
+            long now = now();
+            long calls = 0;
+            long failures = 0;
+            long slowCalls = 0;
+            for (Bucket b : buckets)
+            {
+                if (b.second > now - buckets.length)
+                {
+                    calls += b.calls.sum();
+                    failures += b.failures.sum();
+                    slowCalls += b.slowCalls.sum();
+                }
+            }
+            if (calls >= settings.minimumCalls && exceeds(calls, failures, slowCalls))
+            {
+                transition(State.CLOSED, State.OPEN);
+            }
+        }
+        else if (current == State.HALF_OPEN)
+        {
+            if (failure)
+            {
+                halfOpenFailures.incrementAndGet();
+            }
+            if (slow)
+            {
+                halfOpenSlowCalls.incrementAndGet();
+            }
+            int calls = halfOpenCalls.incrementAndGet();
+            if (calls >= settings.halfOpenCalls)
+            {
+                boolean exceeds = exceeds(calls, halfOpenFailures.get(), halfOpenSlowCalls.get());
+                transition(State.HALF_OPEN, exceeds ? State.OPEN : State.CLOSED);
+            }
+        }
+        //打开状态下完成的请求是在打开之前放行的，不再统计
+    }
+
+    /**
+     * 放行的请求最终没有发送或被调用方取消时调用，不记录结果，只归还半开状态的探测名额
+     */
+    public void release()
+    {
+        if (state.get() == State.HALF_OPEN)
+        {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    public State getState()
+    {
+        return state.get();
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    private boolean exceeds(long calls, long failures, long slowCalls)
+    {
+        return failures * 100 >= settings.failureRateThreshold * calls
+                || slowCalls * 100 >= settings.slowCallRateThreshold * calls;
+    }
+
+    private void transition(State from, State to)
+    {
+        if (!state.compareAndSet(from, to))
+        {
+            return;
+        }
+        switch (to)
+        {
+            case OPEN:
+                openUntil = System.nanoTime() + settings.openNanos;
+                break;
+            case HALF_OPEN:
+                halfOpenCalls.set(0);
+                halfOpenFailures.set(0);
+                halfOpenSlowCalls.set(0);
+                halfOpenPermits.set(settings.halfOpenCalls);
+                break;
+            default:
+                for (Bucket bucket : buckets)
+                {
+                    bucket.second = Long.MIN_VALUE;
+                }
+                break;
+        }
+        listener.onStateChange(this, from, to);
+    }
+
+    private Bucket current()
+    {
+        long now = now();
+        Bucket bucket = buckets[(int) Math.floorMod(now, (long) buckets.length)];
+        if (bucket.second != now)
+        {
+            synchronized (bucket)
+            {
+                if (bucket.second != now)
+                {
+                    bucket.calls.reset();
+                    bucket.failures.reset();
+                    bucket.slowCalls.reset();
+                    bucket.second = now;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    private static class Bucket
+    {
+        private volatile long second = Long.MIN_VALUE;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+    }
+
+    /**
+     * 熔断器的参数，同一个客户端的所有路由共用
+     */
+    public static class Settings
+    {
+        private final int windowSeconds;
+        private final long minimumCalls;
+        private final int failureRateThreshold;
+        private final int slowCallRateThreshold;
+        private final long slowCallNanos;
+        private final long openNanos;
+        private final int halfOpenCalls;
+
+        /**
+         * @param windowSeconds 滑动窗口长度，单位s
+         * @param minimumCalls 窗口内请求数达到此值时才计算失败率
+         * @param failureRateThreshold 失败率阈值，单位%
+         * @param slowCallRateThreshold 慢请求率阈值，单位%
+         * @param slowCallDuration 慢请求的耗时，单位ms
+         * @param openDuration 打开状态的持续时间，单位ms
+         * @param halfOpenCalls 半开状态放行的探测请求数
+         */
+        public Settings(int windowSeconds, long minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+                        long slowCallDuration, long openDuration, int halfOpenCalls)
+        {
+            if (windowSeconds <= 0 || minimumCalls <= 0 || halfOpenCalls <= 0)
+            {
+                throw new IllegalArgumentException("熔断器的窗口长度，最小请求数与探测请求数必须大于0");
+            }
+            this.windowSeconds = windowSeconds;
+            this.minimumCalls = minimumCalls;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDuration);
+            this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+            this.halfOpenCalls = halfOpenCalls;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package xin.tomdonkey.util.http.common.breaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按路由管理熔断器，路由第一次被请求时创建其熔断器
+ * 状态切换时打印日志，发布CircuitBreakerStateEvent事件，并记录度量
+ *
+ * @author guolinyuan
+ */
+public class CircuitBreakerRegistry implements CircuitBreaker.Listener
+{
+    private static Logger logger = LoggerFactory.getLogger(CircuitBreakerRegistry.class);
+
+    private final boolean enabled;
+    private final CircuitBreaker.Settings settings;
+    private final ApplicationEventPublisher publisher;
+    private final HttpClientMetrics metrics;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param enabled 是否启用熔断，不启用时get返回null
+     */
+    public CircuitBreakerRegistry(boolean enabled, CircuitBreaker.Settings settings, ApplicationEventPublisher publisher,
+                                  HttpClientMetrics metrics)
+    {
+        this.enabled = enabled;
+        this.settings = settings;
+        this.publisher = publisher;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取路由的熔断器
+     *
+     * @param route 路由名，格式为host:port
+     * @return 熔断器，未启用熔断时返回null
+     */
+    public CircuitBreaker get(String route)
+    {
+        if (!enabled)
+        {
+            return null;
+        }
+        return breakers.computeIfAbsent(route, key -> new CircuitBreaker(key, settings, this));
+    }
+
+    /**
+     * 记录一次被熔断器拒绝的请求
+     */
+    public void onRejected(String route)
+    {
+        metrics.increment(HttpClientMetrics.BREAKER_REJECTED, route, 1);
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * 所有已创建的熔断器
+     */
+    public Map<String, CircuitBreaker> getBreakers()
+    {
+        return Collections.unmodifiableMap(breakers);
+    }
+
+    @Override
+    public void onStateChange(CircuitBreaker breaker, CircuitBreaker.State from, CircuitBreaker.State to)
+    {
+        if (to == CircuitBreaker.State.OPEN)
+        {
+            logger.warn("熔断器打开：" + breaker.getRoute() + "，" + from + " -> " + to);
+            metrics.increment(HttpClientMetrics.BREAKER_OPENED, breaker.getRoute(), 1);
+        }
+        else
+        {
+            logger.info("熔断器状态切换：" + breaker.getRoute() + "，" + from + " -> " + to);
+            if (to == CircuitBreaker.State.CLOSED)
+            {
+                metrics.increment(HttpClientMetrics.BREAKER_CLOSED, breaker.getRoute(), 1);
+            }
+        }
+        //事件监听器中的异常不能影响请求
+        try
+        {
+            publisher.publishEvent(new CircuitBreakerStateEvent(this, breaker.getRoute(), from, to));
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("发布熔断器状态切换事件时发生异常", e);
+        }
+    }
+}
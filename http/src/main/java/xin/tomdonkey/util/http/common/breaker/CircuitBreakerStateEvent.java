@@ -0,0 +1,49 @@
+package xin.tomdonkey.util.http.common.breaker;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * 熔断器状态切换时发布的Spring事件，可以通过@EventListener监听
+ *
+ * @author guolinyuan
+ */
+public class CircuitBreakerStateEvent extends ApplicationEvent
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String route;
+    private final CircuitBreaker.State from;
+    private final CircuitBreaker.State to;
+
+    public CircuitBreakerStateEvent(Object source, String route, CircuitBreaker.State from, CircuitBreaker.State to)
+    {
+        super(source);
+        this.route = route;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * 熔断器所在的路由，格式为host:port
+     */
+    public String getRoute()
+    {
+        return route;
+    }
+
+    public CircuitBreaker.State getFrom()
+    {
+        return from;
+    }
+
+    public CircuitBreaker.State getTo()
+    {
+        return to;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CircuitBreakerStateEvent{" + route + ": " + from + " -> " + to + "}";
+    }
+}
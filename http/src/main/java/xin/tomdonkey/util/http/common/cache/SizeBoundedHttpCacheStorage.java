@@ -0,0 +1,232 @@
+package xin.tomdonkey.util.http.common.cache;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.impl.client.cache.HeapResource;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.io.IOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按字节数限制大小的LRU缓存存储
+ * 堆内存中的响应体与磁盘上的响应体分别计算大小，任意一项超过上限时淘汰最久未使用的条目
+ * 被移除或淘汰条目的堆内存响应体立即释放
+ * 磁盘上的响应体可能仍在被其他线程返回（getEntry已经返回了该条目，调用方尚未读取），
+ * 因此等到条目不再被任何响应引用（被GC回收）后才删除文件，淘汰时只从占用的字节数中扣除
+ *
+ * 相比BasicHttpCacheStorage只限制条目数，此实现可以直接限制缓存占用的内存
+ *
+ * @author guolinyuan
+ */
+public class SizeBoundedHttpCacheStorage implements HttpCacheStorage
+{
+    /**
+     * 每个条目除响应体外的估算开销，包括响应头与map节点
+     */
+    private static final long ENTRY_OVERHEAD = 512;
+
+    private final long maxHeapBytes;
+    private final long maxDiskBytes;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * 按访问顺序排列的LinkedHashMap，头部为最久未使用的条目
+     */
+    private final LinkedHashMap<String, HttpCacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long heapBytes = 0;
+    private long diskBytes = 0;
+
+    /**
+     * 已经移出缓存，等待条目被回收后再删除的磁盘响应体
+     */
+    private final ReferenceQueue<HttpCacheEntry> unreachable = new ReferenceQueue<>();
+    private final Set<PendingDisposal> pendingDisposals = new HashSet<>();
+
+    /**
+     * @param maxHeapBytes 堆内存中缓存的最大字节数
+     * @param maxDiskBytes 磁盘上缓存的最大字节数
+     * @param metrics 记录淘汰次数
+     */
+    public SizeBoundedHttpCacheStorage(long maxHeapBytes, long maxDiskBytes, HttpClientMetrics metrics)
+    {
+        this.maxHeapBytes = maxHeapBytes;
+        this.maxDiskBytes = maxDiskBytes;
+        this.metrics = metrics;
+        metrics.gauge(HttpClientMetrics.CACHE_HEAP_BYTES, this::getHeapBytes);
+        metrics.gauge(HttpClientMetrics.CACHE_DISK_BYTES, this::getDiskBytes);
+    }
+
+    @Override
+    public synchronized void putEntry(String key, HttpCacheEntry entry)
+    {
+        disposeUnreachable();
+        HttpCacheEntry old = entries.put(key, entry);
+        if (old == entry)
+        {
+            return;
+        }
+        if (old != null)
+        {
+            release(old);
+        }
+        account(entry, 1);
+        evict();
+    }
+
+    @Override
+    public synchronized HttpCacheEntry getEntry(String key)
+    {
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void removeEntry(String key)
+    {
+        disposeUnreachable();
+        HttpCacheEntry old = entries.remove(key);
+        if (old != null)
+        {
+            release(old);
+        }
+    }
+
+    @Override
+    public synchronized void updateEntry(String key, HttpCacheUpdateCallback callback)
+    {
+        HttpCacheEntry old = entries.get(key);
+        HttpCacheEntry updated;
+        try
+        {
+            updated = callback.update(old);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("更新缓存条目失败：" + key, e);
+        }
+        if (updated == old)
+        {
+            return;
+        }
+        if (updated == null)
+        {
+            removeEntry(key);
+        }
+        else
+        {
+            putEntry(key, updated);
+        }
+    }
+
+    public synchronized long getHeapBytes()
+    {
+        return heapBytes;
+    }
+
+    public synchronized long getDiskBytes()
+    {
+        return diskBytes;
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * 已经移出缓存，尚未删除的磁盘响应体数量
+     */
+    public synchronized int getPendingDisposals()
+    {
+        disposeUnreachable();
+        return pendingDisposals.size();
+    }
+
+    /**
+     * 从头部（最久未使用）开始淘汰，直到堆内存与磁盘的占用均不超过上限
+     */
+    private void evict()
+    {
+        Iterator<Map.Entry<String, HttpCacheEntry>> it = entries.entrySet().iterator();
+        while ((heapBytes > maxHeapBytes || diskBytes > maxDiskBytes) && it.hasNext())
+        {
+            HttpCacheEntry eldest = it.next().getValue();
+            it.remove();
+            release(eldest);
+            metrics.increment(HttpClientMetrics.CACHE_EVICTION, HttpClientMetrics.UNKNOWN_ROUTE, 1);
+        }
+    }
+
+    private void release(HttpCacheEntry entry)
+    {
+        account(entry, -1);
+        //更新条目时HttpClient会复制响应体，因此被移除条目的响应体不会被其他条目引用
+        //但getEntry返回的条目可能还在被其他线程作为响应返回，磁盘文件须等到条目不再被引用后删除
+        Resource resource = entry.getResource();
+        if (resource == null)
+        {
+            return;
+        }
+        if (resource instanceof HeapResource)
+        {
+            resource.dispose();
+        }
+        else
+        {
+            pendingDisposals.add(new PendingDisposal(entry, resource, unreachable));
+        }
+    }
+
+    /**
+     * 删除已经不被任何响应引用的条目的磁盘响应体
+     */
+    private void disposeUnreachable()
+    {
+        Reference<? extends HttpCacheEntry> reference;
+        while ((reference = unreachable.poll()) != null)
+        {
+            PendingDisposal disposal = (PendingDisposal) reference;
+            pendingDisposals.remove(disposal);
+            disposal.resource.dispose();
+        }
+    }
+
+    /**
+     * 条目被回收后删除的响应体，条目本身不再可达，只保留响应体
+     */
+    private static class PendingDisposal extends PhantomReference<HttpCacheEntry>
+    {
+        private final Resource resource;
+
+        PendingDisposal(HttpCacheEntry entry, Resource resource, ReferenceQueue<HttpCacheEntry> queue)
+        {
+            super(entry, queue);
+            this.resource = resource;
+        }
+    }
+
+    private void account(HttpCacheEntry entry, int sign)
+    {
+        Resource resource = entry.getResource();
+        long length = resource == null ? 0 : resource.length();
+        if (resource == null || resource instanceof HeapResource)
+        {
+            heapBytes += sign * (length + ENTRY_OVERHEAD);
+        }
+        else
+        {
+            heapBytes += sign * ENTRY_OVERHEAD;
+            diskBytes += sign * length;
+        }
+    }
+}
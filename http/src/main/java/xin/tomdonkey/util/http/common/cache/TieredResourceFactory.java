@@ -0,0 +1,116 @@
+package xin.tomdonkey.util.http.common.cache;
+
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.cache.ResourceFactory;
+import org.apache.http.impl.client.cache.FileResource;
+import org.apache.http.impl.client.cache.HeapResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * 分层的缓存响应体工厂
+ * 响应体不超过diskThreshold时保存在堆内存中，超过后转存到磁盘目录，避免大响应体占用堆内存造成GC压力
+ * 未配置磁盘目录时，所有响应体均保存在堆内存中
+ *
+ * @author guolinyuan
+ */
+public class TieredResourceFactory implements ResourceFactory
+{
+    private final File directory;
+    private final long diskThreshold;
+
+    /**
+     * @param directory 磁盘缓存目录，为null时不使用磁盘
+     * @param diskThreshold 响应体超过此字节数时转存到磁盘
+     */
+    public TieredResourceFactory(File directory, long diskThreshold)
+    {
+        this.directory = directory;
+        this.diskThreshold = diskThreshold;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IllegalArgumentException("无法创建缓存目录：" + directory);
+        }
+    }
+
+    @Override
+    public Resource generate(String requestId, InputStream instream, InputLimit limit) throws IOException
+    {
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        long total = 0;
+        int l;
+        while ((l = instream.read(buf)) != -1)
+        {
+            total += l;
+            if (directory != null && total > diskThreshold)
+            {
+                return spill(heap, buf, l, instream, limit, total);
+            }
+            //与HeapResourceFactory一致，先保存已读取的部分再检查上限
+            //超过上限时HttpClient将已保存的部分与剩余的流拼接为响应体，已读取的部分不能丢弃
+            heap.write(buf, 0, l);
+            if (reached(limit, total))
+            {
+                break;
+            }
+        }
+        return new HeapResource(heap.toByteArray());
+    }
+
+    /**
+     * 复制时按相同的规则重新决定保存在堆内存还是磁盘
+     */
+    @Override
+    public Resource copy(String requestId, Resource resource) throws IOException
+    {
+        try (InputStream in = resource.getInputStream())
+        {
+            return generate(requestId, in, null);
+        }
+    }
+
+    /**
+     * 响应体超过阈值，将已读取的部分与剩余部分写入磁盘文件
+     */
+    private Resource spill(ByteArrayOutputStream heap, byte[] buf, int pending, InputStream instream, InputLimit limit, long total) throws IOException
+    {
+        File file = newFile();
+        try (OutputStream out = Files.newOutputStream(file.toPath()))
+        {
+            heap.writeTo(out);
+            out.write(buf, 0, pending);
+            int l;
+            while (!reached(limit, total) && (l = instream.read(buf)) != -1)
+            {
+                out.write(buf, 0, l);
+                total += l;
+            }
+        }
+        return new FileResource(file);
+    }
+
+    /**
+     * 已读取的字节数超过上限时通知HttpClient，不再继续读取
+     */
+    private static boolean reached(InputLimit limit, long total)
+    {
+        if (limit != null && total > limit.getValue())
+        {
+            limit.reached();
+            return true;
+        }
+        return false;
+    }
+
+    private File newFile() throws IOException
+    {
+        return File.createTempFile("httpcache-", ".body", directory);
+    }
+}
@@ -0,0 +1,100 @@
+package xin.tomdonkey.util.http.common.compress;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.DecompressingEntity;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+/**
+ * 请求体压缩及压缩前后字节数统计的拦截器
+ *
+ * 响应的解压由HttpClient内置的ResponseContentEncoding完成，解压是以流的方式边读取边进行的，不会先解压到中间数组
+ * 这里只在其前后各统计一次字节数，得到实际接收与解压后的字节数
+ *
+ * @author guolinyuan
+ */
+public final class CompressionInterceptors
+{
+    private CompressionInterceptors()
+    {
+    }
+
+    /**
+     * 以gzip压缩请求体的请求拦截器，必须作为第一个拦截器添加，以便在计算Content-Length及Transfer-Encoding之前替换请求体
+     *
+     * 请求体长度不小于threshold，或长度未知（chunked发送的流式请求体）时压缩
+     * 已经指定了Content-Encoding的请求体不会被再次压缩，请求被重试时也不会被重复压缩
+     *
+     * @param threshold 压缩的最小字节数
+     * @param metrics 度量记录，统计压缩前后的字节数
+     */
+    public static HttpRequestInterceptor requestCompression(long threshold, HttpClientMetrics metrics)
+    {
+        return (request, context) ->
+        {
+            if (!(request instanceof HttpEntityEnclosingRequest) || request.containsHeader(HttpHeaders.CONTENT_ENCODING))
+            {
+                return;
+            }
+            HttpEntityEnclosingRequest enclosing = (HttpEntityEnclosingRequest) request;
+            HttpEntity entity = enclosing.getEntity();
+            if (entity == null || entity.getContentEncoding() != null)
+            {
+                return;
+            }
+            long length = entity.getContentLength();
+            if (length >= 0 && length < threshold)
+            {
+                return;
+            }
+
+            String route = routeName(context);
+            HttpEntity gzip = new GzipCompressingEntity(
+                    new CountingHttpEntity(entity, HttpClientMetrics.REQUEST_BYTES_UNCOMPRESSED, route, metrics));
+            enclosing.setEntity(new CountingHttpEntity(gzip, HttpClientMetrics.REQUEST_BYTES_COMPRESSED, route, metrics));
+            //随后的RequestContent会根据实体设置Transfer-Encoding: chunked，这里同时写入请求头，防止重试时重复压缩
+            request.addHeader(gzip.getContentEncoding());
+        };
+    }
+
+    /**
+     * 统计压缩响应实际接收的字节数，必须作为第一个拦截器添加，以便在解压之前包装响应体
+     */
+    public static HttpResponseInterceptor responseCompressedBytes(HttpClientMetrics metrics)
+    {
+        return (response, context) ->
+        {
+            HttpEntity entity = response.getEntity();
+            if (entity != null && entity.getContentEncoding() != null)
+            {
+                response.setEntity(new CountingHttpEntity(entity, HttpClientMetrics.RESPONSE_BYTES_COMPRESSED, routeName(context), metrics));
+            }
+        };
+    }
+
+    /**
+     * 统计压缩响应解压后的字节数，必须在解压之后添加，只统计经过了解压的响应
+     */
+    public static HttpResponseInterceptor responseUncompressedBytes(HttpClientMetrics metrics)
+    {
+        return (response, context) ->
+        {
+            HttpEntity entity = response.getEntity();
+            if (entity instanceof DecompressingEntity)
+            {
+                response.setEntity(new CountingHttpEntity(entity, HttpClientMetrics.RESPONSE_BYTES_UNCOMPRESSED, routeName(context), metrics));
+            }
+        };
+    }
+
+    private static String routeName(HttpContext context)
+    {
+        return HttpClientMetrics.routeName(HttpClientContext.adapt(context).getHttpRoute());
+    }
+}
@@ -0,0 +1,156 @@
+package xin.tomdonkey.util.http.common.compress;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 统计实体字节数的包装，发送时统计写出的字节数，接收时统计读取的字节数
+ * 发送完毕，或响应流读取到末尾或被关闭时，将字节数累加到指定的计数器
+ *
+ * 用于在压缩前后各包装一层，得到压缩前与压缩后的字节数
+ *
+ * @author guolinyuan
+ */
+public class CountingHttpEntity extends HttpEntityWrapper
+{
+    private final String name;
+    private final String route;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * @param wrappedEntity 被统计的实体
+     * @param name 计数器的度量名
+     * @param route 路由名
+     * @param metrics 度量记录
+     */
+    public CountingHttpEntity(HttpEntity wrappedEntity, String name, String route, HttpClientMetrics metrics)
+    {
+        super(wrappedEntity);
+        this.name = name;
+        this.route = route;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException
+    {
+        //请求被重试时会再次写出，每次写出各自计数
+        CountingOutputStream counting = new CountingOutputStream(outstream);
+        try
+        {
+            super.writeTo(counting);
+        }
+        finally
+        {
+            metrics.increment(name, route, counting.count);
+        }
+    }
+
+    @Override
+    public InputStream getContent() throws IOException
+    {
+        return new CountingInputStream(super.getContent());
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream
+    {
+        private long count = 0;
+        private boolean recorded = false;
+
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b == -1)
+            {
+                record();
+            }
+            else
+            {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n == -1)
+            {
+                record();
+            }
+            else
+            {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException
+        {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                record();
+            }
+        }
+
+        private void record()
+        {
+            if (!recorded)
+            {
+                recorded = true;
+                metrics.increment(name, route, count);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * 连接池的后台回收器，定期关闭连接池中已过期（超过存活时间或keep-alive时间）的连接
+ * 以及空闲时间超过maxIdleTime的连接，避免在安静期之后使用已被服务端关闭的半关闭连接
+ *
+ * 由对应的FactoryBean在创建客户端时启动，在关闭客户端时停止
+ *
+ * @author guolinyuan
+ */
+public class ConnectionEvictor
+{
+    private static Logger logger = LoggerFactory.getLogger(ConnectionEvictor.class);
+
+    private final Runnable closeExpired;
+    private final LongConsumer closeIdle;
+    private final long evictInterval;
+    private final long maxIdleTime;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param connectionManager 同步客户端的连接池
+     * @param evictInterval 回收的执行间隔，单位s
+     * @param maxIdleTime 连接的最大空闲时间，单位s
+     */
+    public ConnectionEvictor(HttpClientConnectionManager connectionManager, long evictInterval, long maxIdleTime)
+    {
+        this(connectionManager::closeExpiredConnections,
+                idle -> connectionManager.closeIdleConnections(idle, TimeUnit.SECONDS), evictInterval, maxIdleTime);
+    }
+
+    /**
+     * @param connectionManager 异步客户端的连接池
+     * @param evictInterval 回收的执行间隔，单位s
+     * @param maxIdleTime 连接的最大空闲时间，单位s
+     */
+    public ConnectionEvictor(NHttpClientConnectionManager connectionManager, long evictInterval, long maxIdleTime)
+    {
+        this(connectionManager::closeExpiredConnections,
+                idle -> connectionManager.closeIdleConnections(idle, TimeUnit.SECONDS), evictInterval, maxIdleTime);
+    }
+
+    private ConnectionEvictor(Runnable closeExpired, LongConsumer closeIdle, long evictInterval, long maxIdleTime)
+    {
+        this.closeExpired = closeExpired;
+        this.closeIdle = closeIdle;
+        this.evictInterval = evictInterval;
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public synchronized void start()
+    {
+        if (scheduler != null)
+        {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread thread = new Thread(r, "httpclient-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::evict, evictInterval, evictInterval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void shutdown()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private void evict()
+    {
+        //回收线程中的异常不能抛出，否则后续的回收任务不会再执行
+        try
+        {
+            closeExpired.run();
+            if (maxIdleTime > 0)
+            {
+                closeIdle.accept(maxIdleTime);
+            }
+        }
+        catch (Exception e)
+        {
+            logger.error("回收过期及空闲连接时发生异常", e);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 启动时预热连接池：为配置的路由预先解析域名，建立TCP连接并完成TLS握手，放入连接池备用
+ * 部署后的第一批请求因此不必在请求路径上承担DNS，TCP与TLS的耗时
+ *
+ * 所有连接并行建立，整个预热不超过timeout，超时后不再等待，尚未完成的连接在完成后照常放入连接池
+ * 预热失败只打印日志，不影响启动
+ *
+ * 同一路由的连接全部建立后才一起归还连接池，否则先归还的连接会被同一路由的后续预热任务重复租用
+ *
+ * @author guolinyuan
+ */
+public class ConnectionWarmer
+{
+    private static Logger logger = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+    /**
+     * 预热使用的最大线程数
+     */
+    private static final int MAX_THREADS = 32;
+
+    private final HttpClientConnectionManager connectionManager;
+    private final int connectTimeout;
+    private final long keepAlive;
+
+    /**
+     * @param connectionManager 同步客户端的连接池
+     * @param connectTimeout 建立连接的超时时间，单位ms
+     * @param keepAlive 预热的连接在连接池中的保持时间，单位s
+     */
+    public ConnectionWarmer(HttpClientConnectionManager connectionManager, int connectTimeout, long keepAlive)
+    {
+        this.connectionManager = connectionManager;
+        this.connectTimeout = connectTimeout;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * 为每个路由建立指定数量的连接，最多等待timeout
+     *
+     * @param routes 路由及需要建立的连接数，连接数不超过路由的最大连接数
+     * @param timeout 整个预热的最长等待时间，单位ms
+     * @return 在超时之前建立的连接数
+     */
+    @SuppressWarnings("unchecked")
+    public int warmUp(Map<HttpRoute, Integer> routes, long timeout)
+    {
+        Map<HttpRoute, Integer> counts = new ConcurrentHashMap<>();
+        routes.forEach((route, count) ->
+        {
+            //经过代理隧道的路由需要先建立隧道，预热不支持
+            if (route.isTunnelled())
+            {
+                logger.warn("经过代理隧道的路由不预热：" + route);
+                return;
+            }
+            int max = connectionManager instanceof ConnPoolControl
+                    ? ((ConnPoolControl<HttpRoute>) connectionManager).getMaxPerRoute(route) : count;
+            if (count > 0)
+            {
+                counts.put(route, Math.min(count, max));
+            }
+        });
+        int total = counts.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(total, MAX_THREADS), r ->
+        {
+            Thread thread = new Thread(r, "httpclient-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch latch = new CountDownLatch(counts.size());
+        AtomicInteger opened = new AtomicInteger();
+        try
+        {
+            counts.forEach((route, count) ->
+            {
+                RouteWarmUp warmUp = new RouteWarmUp(route, count, deadline, latch, opened);
+                for (int i = 0; i < count; i++)
+                {
+                    executor.execute(warmUp::connectOne);
+                }
+            });
+            if (!latch.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS))
+            {
+                logger.warn("连接池预热超过" + timeout + "ms，不再等待，已建立" + opened.get() + "/" + total + "个连接");
+            }
+            else
+            {
+                logger.info("连接池预热完成，已建立" + opened.get() + "/" + total + "个连接，耗时"
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            //不再接收新任务，进行中的任务完成后线程退出
+            executor.shutdown();
+        }
+        return opened.get();
+    }
+
+    /**
+     * 一个路由的预热，建立的连接暂存在connections中，全部完成后一起归还连接池
+     */
+    private class RouteWarmUp
+    {
+        private final HttpRoute route;
+        private final long deadline;
+        private final CountDownLatch latch;
+        private final AtomicInteger opened;
+        private final AtomicInteger remaining;
+        private final List<HttpClientConnection> connections = new ArrayList<>();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        RouteWarmUp(HttpRoute route, int count, long deadline, CountDownLatch latch, AtomicInteger opened)
+        {
+            this.route = route;
+            this.deadline = deadline;
+            this.latch = latch;
+            this.opened = opened;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        void connectOne()
+        {
+            HttpClientConnection connection = null;
+            try
+            {
+                long wait = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (wait <= 0)
+                {
+                    throw new IllegalStateException("超过预热时间");
+                }
+                ConnectionRequest request = connectionManager.requestConnection(route, null);
+                connection = request.get(wait, TimeUnit.MILLISECONDS);
+                if (!connection.isOpen())
+                {
+                    HttpClientContext context = HttpClientContext.create();
+                    //connect中完成域名解析，TCP连接以及TLS握手
+                    int timeout = connectTimeout > 0 ? (int) Math.min(connectTimeout, wait) : (int) Math.min(Integer.MAX_VALUE, wait);
+                    connectionManager.connect(connection, route, timeout, context);
+                    connectionManager.routeComplete(connection, route, context);
+                    //绑定连接的输入输出缓冲，未发送过请求的连接在空闲后校验时会因缓冲未绑定而抛出异常
+                    connection.flush();
+                }
+                opened.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                if (failures.getAndIncrement() == 0)
+                {
+                    logger.warn("预热连接失败：" + route, e);
+                }
+                if (connection != null)
+                {
+                    connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+                    connection = null;
+                }
+            }
+            finally
+            {
+                complete(connection);
+            }
+        }
+
+        private void complete(HttpClientConnection connection)
+        {
+            List<HttpClientConnection> toRelease = null;
+            synchronized (this)
+            {
+                if (connection != null)
+                {
+                    connections.add(connection);
+                }
+                if (remaining.decrementAndGet() == 0)
+                {
+                    toRelease = new ArrayList<>(connections);
+                    connections.clear();
+                }
+            }
+            if (toRelease == null)
+            {
+                return;
+            }
+            for (HttpClientConnection c : toRelease)
+            {
+                //已完成路由的连接归还后作为空闲连接留在连接池中
+                connectionManager.releaseConnection(c, null, keepAlive, TimeUnit.SECONDS);
+            }
+            if (failures.get() > 0)
+            {
+                logger.warn("路由预热完成，" + failures.get() + "个连接建立失败：" + route);
+            }
+            latch.countDown();
+        }
+    }
+}
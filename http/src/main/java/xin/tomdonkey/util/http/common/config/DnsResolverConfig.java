@@ -0,0 +1,42 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import xin.tomdonkey.util.http.common.dns.CachingDnsResolver;
+
+/**
+ * 同步与异步连接池建立新连接时使用的域名解析，可以自行注入DnsResolver的实现替换
+ *
+ * 通过META-INF/spring.factories注册为自动配置，在所有用户配置之后处理，
+ * 因此无论用户的配置类以什么顺序注册，@ConditionalOnMissingBean都能看到用户注入的DnsResolver
+ *
+ * @author guolinyuan
+ */
+@Configuration
+@PropertySource("classpath:httpclient.properties")
+public class DnsResolverConfig
+{
+    /**
+     * 域名解析结果的缓存时间，单位s，0表示不缓存，每次建立连接时使用JVM的解析
+     */
+    @Value("${httpclient.config.dnsCacheTtl}")
+    private long dnsCacheTtl = 60;
+
+    /**
+     * 域名解析失败的缓存时间，单位s
+     */
+    @Value("${httpclient.config.dnsNegativeTtl}")
+    private long dnsNegativeTtl = 5;
+
+    @Bean
+    @ConditionalOnMissingBean(DnsResolver.class)
+    public DnsResolver dnsResolver()
+    {
+        return this.dnsCacheTtl > 0 ? new CachingDnsResolver(this.dnsCacheTtl, this.dnsNegativeTtl) : SystemDefaultDnsResolver.INSTANCE;
+    }
+}
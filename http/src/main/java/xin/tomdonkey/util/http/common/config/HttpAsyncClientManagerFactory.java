@@ -0,0 +1,132 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 异步HttpClient的FactoryBean，基于NIO反应器，少量IO线程即可承载大量进行中的请求
+ * 与同步客户端共用httpclient.properties中的配置
+ *
+ * @author guolinyuan
+ */
+@Component
+public class HttpAsyncClientManagerFactory implements FactoryBean<CloseableHttpAsyncClient>, InitializingBean, DisposableBean
+{
+
+    @Autowired
+    private NHttpClientConnectionManager poolingNHttpClientConnectionManager;
+    @Autowired
+    private ConnectionKeepAliveStrategy connectionKeepAliveStrategy;
+    @Autowired
+    private HttpRoutePlanner httpRoutePlanner;
+    @Autowired
+    private RequestConfig requestConfig;
+
+    /**
+     * 是否启用代理设置
+     */
+    @Value("${httpclient.config.proxy}")
+    private boolean proxy = false;
+
+    /**
+     * 后台回收过期及空闲连接的执行间隔，单位s
+     */
+    @Value("${httpclient.config.evictInterval}")
+    private long evictInterval = 5;
+
+    /**
+     * 连接的最大空闲时间，单位s
+     */
+    @Value("${httpclient.config.maxIdleTime}")
+    private long maxIdleTime = 30;
+
+    /**
+     * 连接池的后台回收器，随客户端一起启动和关闭
+     */
+    private ConnectionEvictor connectionEvictor;
+
+    /**
+     * FactoryBean生成的目标对象
+     */
+    private CloseableHttpAsyncClient client;
+
+    @Override
+    public CloseableHttpAsyncClient getObject() throws Exception
+    {
+        return this.client;
+    }
+
+    @Override
+    public Class<?> getObjectType()
+    {
+        return this.client == null ? CloseableHttpAsyncClient.class : this.client.getClass();
+    }
+
+    @Override
+    public boolean isSingleton()
+    {
+        return true;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        this.client = createClient(poolingNHttpClientConnectionManager, connectionKeepAliveStrategy, requestConfig);
+
+        //启动后台回收器，定期回收过期及空闲的连接
+        this.connectionEvictor = new ConnectionEvictor(poolingNHttpClientConnectionManager, evictInterval, maxIdleTime);
+        this.connectionEvictor.start();
+    }
+
+    /**
+     * 以给定的连接池，keep-alive与请求配置创建并启动异步客户端，代理使用与默认客户端相同的配置
+     * 命名的客户端配置（httpclient.profiles.*）同样经由此方法创建，创建的客户端不会启动连接池的后台回收器
+     */
+    public CloseableHttpAsyncClient createClient(NHttpClientConnectionManager connectionManager, ConnectionKeepAliveStrategy keepAliveStrategy,
+                                                 RequestConfig requestConfig)
+    {
+        HttpAsyncClientBuilder httpAsyncClientBuilder = HttpAsyncClients.custom().setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(requestConfig);
+
+        //默认不使用代理
+        //若httpclient.config.proxy配置为true，则启用
+        if (proxy)
+        {
+            httpAsyncClientBuilder.setRoutePlanner(httpRoutePlanner);
+        }
+
+        CloseableHttpAsyncClient client = httpAsyncClientBuilder.build();
+
+        //异步客户端必须启动IO反应器后才能发送请求
+        client.start();
+        return client;
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        /*
+         * 关闭异步客户端会同时关闭IO反应器及其使用的连接池
+         */
+        if (null != this.connectionEvictor)
+        {
+            this.connectionEvictor.shutdown();
+        }
+        if (null != this.client)
+        {
+            this.client.close();
+        }
+    }
+}
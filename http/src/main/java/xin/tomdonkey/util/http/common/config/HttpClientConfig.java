@@ -2,21 +2,69 @@ package xin.tomdonkey.util.http.common.config;
 
 import org.apache.http.*;
 import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.ResourceFactory;
 import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.cache.CacheConfig;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.protocol.HTTP;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import xin.tomdonkey.util.http.common.admission.AdmissionRegistry;
+import xin.tomdonkey.util.http.common.admission.ConcurrencyLimiter;
+import xin.tomdonkey.util.http.common.breaker.CircuitBreaker;
+import xin.tomdonkey.util.http.common.breaker.CircuitBreakerRegistry;
+import xin.tomdonkey.util.http.common.cache.SizeBoundedHttpCacheStorage;
+import xin.tomdonkey.util.http.common.cache.TieredResourceFactory;
+import xin.tomdonkey.util.http.common.hedge.HedgingPolicy;
+import xin.tomdonkey.util.http.common.lb.LogicalService;
+import xin.tomdonkey.util.http.common.lb.ServiceProperties;
+import xin.tomdonkey.util.http.common.lb.ServiceRegistry;
+import xin.tomdonkey.util.http.common.limit.RateLimiter;
+import xin.tomdonkey.util.http.common.limit.RateLimiterRegistry;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+import xin.tomdonkey.util.http.common.profile.ClientProfile;
+import xin.tomdonkey.util.http.common.profile.ClientProfileProperties;
+import xin.tomdonkey.util.http.common.profile.ClientProfiles;
+import xin.tomdonkey.util.http.common.retry.BackoffRetryHandler;
+import xin.tomdonkey.util.http.common.retry.RetryAfterRetryStrategy;
+import xin.tomdonkey.util.http.common.retry.RetryBudget;
+import xin.tomdonkey.util.http.common.retry.RetryPolicy;
 
-import javax.net.ssl.SSLException;
-import java.io.InterruptedIOException;
-import java.net.UnknownHostException;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,8 +82,16 @@ public class HttpClientConfig
     @Value("${httpclient.config.keepAliveTime}")
     private int keeAliveTime = 30;
 
+    /**
+     * 服务端未通过Keep-Alive头指定timeout时，使用keepAliveTime作为连接的保持时间
+     */
     @Bean
     public ConnectionKeepAliveStrategy connectionKeepAliveStrategy()
+    {
+        return keepAliveStrategy(this.keeAliveTime);
+    }
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveTime)
     {
         return (response, context) ->
         {
@@ -57,7 +113,7 @@ public class HttpClientConfig
                     }
                 }
             }
-            return 30 * 1000;
+            return keepAliveTime * 1000L;
         };
     }
 
@@ -68,49 +124,293 @@ public class HttpClientConfig
 
     /**
      *  此处建议采用@ConfigurationProperties(prefix="httpclient.config")方式，方便复用
+     *  一次调用的最大执行次数，包含第一次请求，io异常与429/503的重试共用
      */
     @Value("${httpclient.config.retryTime}")
     private int retryTime = 3;
 
+    /**
+     * 重试的基础退避时间，单位ms
+     */
+    @Value("${httpclient.config.retryBaseDelay}")
+    private long retryBaseDelay = 100;
+
+    /**
+     * 重试的最大退避时间，单位ms
+     */
+    @Value("${httpclient.config.retryMaxDelay}")
+    private long retryMaxDelay = 2000;
+
+    /**
+     * 按路由覆盖的重试策略
+     */
+    @Value("${httpclient.config.routeRetryPolicy}")
+    private String routeRetryPolicy = "";
+
+    /**
+     * 重试占请求数的最大比例
+     */
+    @Value("${httpclient.config.retryBudgetRatio}")
+    private double retryBudgetRatio = 0.1;
+
+    /**
+     * 每秒至少允许的重试数
+     */
+    @Value("${httpclient.config.retryBudgetMinPerSecond}")
+    private long retryBudgetMinPerSecond = 10;
+
+    /**
+     * 重试预算的滑动窗口长度，单位s
+     */
+    @Value("${httpclient.config.retryBudgetWindow}")
+    private int retryBudgetWindow = 10;
+
+    /**
+     * 愿意等待的最长Retry-After，单位s
+     */
+    @Value("${httpclient.config.maxRetryAfter}")
+    private long maxRetryAfter = 30;
+
     @Bean
-    public HttpRequestRetryHandler httpRequestRetryHandler()
+    public RetryPolicy.Routes retryPolicies()
     {
-        // 请求重试
-        final int retryTime = this.retryTime;
+        return new RetryPolicy.Routes(new RetryPolicy(this.retryTime, this.retryBaseDelay, this.retryMaxDelay), this.routeRetryPolicy);
+    }
 
-        return (exception, executionCount, context) ->
-        {
-            // Do not retry if over max retry count,如果重试次数超过了retryTime,则不再重试请求
-            if (executionCount >= retryTime)
-            {
-                return false;
-            }
-            // 服务端断掉客户端的连接异常
-            if (exception instanceof NoHttpResponseException)
-            {
-                return true;
-            }
-            // time out 超时重试
-            if (exception instanceof InterruptedIOException)
-            {
-                return true;
-            }
-            // Unknown host
-            if (exception instanceof UnknownHostException)
-            {
-                return false;
-            }
-            // Connection refused
-            // SSL handshake exception
-            if (exception instanceof SSLException)
-            {
-                return false;
-            }
-            HttpClientContext clientContext = HttpClientContext.adapt(context);
-            HttpRequest request = clientContext.getRequest();
-            return !(request instanceof HttpEntityEnclosingRequest);
+    /**
+     * 客户端共用的重试预算，io异常与429/503响应的重试均从中扣除
+     */
+    @Bean
+    public RetryBudget retryBudget()
+    {
+        return new RetryBudget(this.retryBudgetRatio, this.retryBudgetMinPerSecond, this.retryBudgetWindow);
+    }
 
-        };
+    @Bean
+    public HttpRequestRetryHandler httpRequestRetryHandler(RetryPolicy.Routes retryPolicies, RetryBudget retryBudget,
+                                                           HttpClientMetrics httpClientMetrics)
+    {
+        return new BackoffRetryHandler(retryPolicies, retryBudget, httpClientMetrics);
+    }
+
+    @Bean
+    public ServiceUnavailableRetryStrategy serviceUnavailableRetryStrategy(RetryPolicy.Routes retryPolicies, RetryBudget retryBudget,
+                                                                           HttpClientMetrics httpClientMetrics)
+    {
+        return new RetryAfterRetryStrategy(retryPolicies, retryBudget, httpClientMetrics, this.maxRetryAfter * 1000);
+    }
+
+    /*
+     *******************************按路由熔断********************************
+     */
+
+    /**
+     * 是否启用按路由的熔断器
+     */
+    @Value("${httpclient.config.circuitBreaker}")
+    private boolean circuitBreaker = false;
+
+    @Value("${httpclient.config.breakerWindow}")
+    private int breakerWindow = 10;
+
+    @Value("${httpclient.config.breakerMinimumCalls}")
+    private long breakerMinimumCalls = 20;
+
+    @Value("${httpclient.config.breakerFailureRateThreshold}")
+    private int breakerFailureRateThreshold = 50;
+
+    @Value("${httpclient.config.breakerSlowCallRateThreshold}")
+    private int breakerSlowCallRateThreshold = 100;
+
+    @Value("${httpclient.config.breakerSlowCallDuration}")
+    private long breakerSlowCallDuration = 3000;
+
+    @Value("${httpclient.config.breakerOpenDuration}")
+    private long breakerOpenDuration = 10000;
+
+    @Value("${httpclient.config.breakerHalfOpenCalls}")
+    private int breakerHalfOpenCalls = 5;
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(ApplicationEventPublisher applicationEventPublisher,
+                                                         HttpClientMetrics httpClientMetrics)
+    {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(this.breakerWindow, this.breakerMinimumCalls,
+                this.breakerFailureRateThreshold, this.breakerSlowCallRateThreshold, this.breakerSlowCallDuration,
+                this.breakerOpenDuration, this.breakerHalfOpenCalls);
+        return new CircuitBreakerRegistry(this.circuitBreaker, settings, applicationEventPublisher, httpClientMetrics);
+    }
+
+    /*
+     *******************************按路由限流********************************
+     */
+
+    /**
+     * 按路由的限流，格式为 地址=每秒请求数:突发数:限流方式，逗号分隔，后两项可以省略
+     * 例如 https://partner.example.com=20,http://quota.example.com:8080=5:10:failfast
+     */
+    @Value("${httpclient.config.rateLimit}")
+    private String rateLimit = "";
+
+    /**
+     * 未单独指定时的限流方式，block，failfast或timeout
+     */
+    @Value("${httpclient.config.rateLimitMode}")
+    private String rateLimitMode = "block";
+
+    /**
+     * 限流方式为timeout时，愿意等待许可的最长时间，单位ms
+     */
+    @Value("${httpclient.config.rateLimitTimeout}")
+    private long rateLimitTimeout = 1000;
+
+    @Bean
+    public RateLimiterRegistry rateLimiterRegistry(HttpClientMetrics httpClientMetrics)
+    {
+        return new RateLimiterRegistry(this.rateLimit, RateLimiter.Mode.parse(this.rateLimitMode), this.rateLimitTimeout,
+                httpClientMetrics);
+    }
+
+    /*
+     *******************************准入控制********************************
+     */
+
+    /**
+     * 是否启用按路由的准入控制
+     */
+    @Value("${httpclient.config.admission}")
+    private boolean admission = false;
+
+    /**
+     * 并发限制的算法，fixed，aimd或vegas
+     */
+    @Value("${httpclient.config.admissionAlgorithm}")
+    private String admissionAlgorithm = "fixed";
+
+    /**
+     * 初始的并发限制，0表示使用maxPerRoute
+     */
+    @Value("${httpclient.config.admissionInitialLimit}")
+    private int admissionInitialLimit = 0;
+
+    @Value("${httpclient.config.admissionMinLimit}")
+    private int admissionMinLimit = 1;
+
+    @Value("${httpclient.config.admissionMaxLimit}")
+    private int admissionMaxLimit = 200;
+
+    /**
+     * 每个路由等待队列的长度
+     */
+    @Value("${httpclient.config.admissionQueueDepth}")
+    private int admissionQueueDepth = 20;
+
+    /**
+     * 请求在等待队列中的最长等待时间，单位ms
+     */
+    @Value("${httpclient.config.admissionTimeout}")
+    private long admissionTimeout = 100;
+
+    @Bean
+    public AdmissionRegistry admissionRegistry(HttpClientMetrics httpClientMetrics)
+    {
+        int initialLimit = this.admissionInitialLimit > 0 ? this.admissionInitialLimit : this.maxPerRoute;
+        ConcurrencyLimiter.Settings settings = new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.parse(this.admissionAlgorithm),
+                initialLimit, Math.min(this.admissionMinLimit, initialLimit), Math.max(this.admissionMaxLimit, initialLimit),
+                this.admissionQueueDepth);
+        return new AdmissionRegistry(this.admission, settings, this.admissionTimeout, httpClientMetrics);
+    }
+
+    /*
+     *******************************对冲请求********************************
+     */
+
+    /**
+     * 是否对同步的GET请求启用对冲
+     */
+    @Value("${httpclient.config.hedge}")
+    private boolean hedge = false;
+
+    /**
+     * 样本不足时发送对冲请求的延迟，单位ms
+     */
+    @Value("${httpclient.config.hedgeDelay}")
+    private long hedgeDelay = 100;
+
+    /**
+     * 按路由观察到的延迟的此百分位数作为对冲延迟，单位%，0表示总是使用hedgeDelay
+     */
+    @Value("${httpclient.config.hedgePercentile}")
+    private double hedgePercentile = 95;
+
+    /**
+     * 按百分位数计算的对冲延迟的下限，单位ms
+     */
+    @Value("${httpclient.config.hedgeMinDelay}")
+    private long hedgeMinDelay = 5;
+
+    /**
+     * 对冲请求占GET请求数的最大比例
+     */
+    @Value("${httpclient.config.hedgeRatio}")
+    private double hedgeRatio = 0.05;
+
+    /**
+     * 每秒至少允许的对冲请求数，保证请求量很小时仍然可以对冲
+     */
+    @Value("${httpclient.config.hedgeMinPerSecond}")
+    private long hedgeMinPerSecond = 1;
+
+    /**
+     * 对冲请求使用与重试预算相同的滑动窗口计数，但额度独立，对冲不会耗尽重试的额度
+     */
+    @Bean
+    public HedgingPolicy hedgingPolicy()
+    {
+        return new HedgingPolicy(this.hedge, this.hedgeDelay, this.hedgeMinDelay, this.hedgePercentile,
+                new RetryBudget(this.hedgeRatio, this.hedgeMinPerSecond, this.retryBudgetWindow));
+    }
+
+    /*
+     *******************************逻辑服务负载均衡********************************
+     */
+
+    /**
+     * 服务实例连续失败（io异常或5xx响应）多少次后被暂时摘除
+     */
+    @Value("${httpclient.config.lbEjectAfterFailures}")
+    private int lbEjectAfterFailures = 5;
+
+    /**
+     * 实例被摘除的基础时间，连续被摘除时成倍增加，单位ms
+     */
+    @Value("${httpclient.config.lbEjectionTime}")
+    private long lbEjectionTime = 30000;
+
+    /**
+     * 同一服务中同时被摘除的实例占总数的最大百分比
+     */
+    @Value("${httpclient.config.lbMaxEjectedPercent}")
+    private int lbMaxEjectedPercent = 50;
+
+    /**
+     * 响应耗时EWMA的时间常数，单位ms
+     */
+    @Value("${httpclient.config.lbEwmaDecay}")
+    private long lbEwmaDecay = 10000;
+
+    /**
+     * 由httpclient.services.服务名.*的配置创建的逻辑服务
+     */
+    @Bean
+    public ServiceRegistry serviceRegistry(Environment environment, HttpClientMetrics httpClientMetrics)
+    {
+        Map<String, ServiceProperties> services = Binder.get(environment)
+                .bind("httpclient.services", Bindable.mapOf(String.class, ServiceProperties.class))
+                .orElse(Collections.emptyMap());
+        LogicalService.Settings settings = new LogicalService.Settings(this.lbEjectAfterFailures, this.lbEjectionTime,
+                this.lbMaxEjectedPercent, this.lbEwmaDecay);
+        return new ServiceRegistry(services, settings, httpClientMetrics);
     }
 
     /*
@@ -129,21 +429,79 @@ public class HttpClientConfig
     @Value("${httpclient.config.maxPerRoute}")
     private int maxPerRoute = 20;
 
+    /**
+     * 按路由覆盖的最大连接数，格式为 地址=最大连接数，逗号分隔
+     * 例如 https://slow.example.com=5,http://internal:8080=50
+     */
+    @Value("${httpclient.config.routeMaxPerRoute}")
+    private String routeMaxPerRoute = "";
+
     /**
      * 连接存活时间，单位为s
      */
     @Value("${httpclient.config.timeToLive}")
     private int timeToLive = 60;
 
+    /**
+     * 连接空闲超过此时间后，再次从连接池取出时先校验连接是否可用，单位ms
+     */
+    @Value("${httpclient.config.validateAfterInactivity}")
+    private int validateAfterInactivity = 2000;
+
+    /**
+     * 同步客户端的连接池实现：
+     * standard 使用PoolingHttpClientConnectionManager，整个连接池共用一把锁
+     * sharded 使用按路由分片的ShardedHttpClientConnectionManager，适合大量线程同时请求的场景
+     */
+    @Value("${httpclient.config.connectionPool}")
+    private String connectionPool = "standard";
+
+    /**
+     * 使用与默认构造相同的http/https连接工厂，只替换域名解析
+     * 连接池实现由connectionPool选择，两种实现都支持运行时调整大小
+     */
     @Bean
-    public PoolingHttpClientConnectionManager poolingClientConnectionManager()
+    public HttpClientConnectionManager poolingClientConnectionManager(DnsResolver dnsResolver)
     {
-        PoolingHttpClientConnectionManager poolHttpConnManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        return createConnectionManager(dnsResolver, this.connMaxTotal, this.maxPerRoute, this.routeMaxPerRoute, this.timeToLive);
+    }
+
+    private HttpClientConnectionManager createConnectionManager(DnsResolver dnsResolver, int connMaxTotal, int maxPerRoute,
+                                                                String routeMaxPerRoute, int timeToLive)
+    {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        HttpClientConnectionManager connectionManager;
+        ConnPoolControl<HttpRoute> pool;
+        switch (this.connectionPool.trim().toLowerCase(Locale.ROOT))
+        {
+            case "standard":
+                PoolingHttpClientConnectionManager poolHttpConnManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry,
+                        null, null, dnsResolver, timeToLive, TimeUnit.SECONDS);
+                // 空闲后校验
+                poolHttpConnManager.setValidateAfterInactivity(this.validateAfterInactivity);
+                connectionManager = poolHttpConnManager;
+                pool = poolHttpConnManager;
+                break;
+            case "sharded":
+                ShardedHttpClientConnectionManager shardedConnManager = new ShardedHttpClientConnectionManager(socketFactoryRegistry,
+                        dnsResolver, timeToLive, TimeUnit.SECONDS);
+                shardedConnManager.setValidateAfterInactivity(this.validateAfterInactivity);
+                connectionManager = shardedConnManager;
+                pool = shardedConnManager;
+                break;
+            default:
+                throw new IllegalArgumentException("连接池实现只能为standard或sharded：" + this.connectionPool);
+        }
         // 最大连接数
-        poolHttpConnManager.setMaxTotal(this.connMaxTotal);
+        pool.setMaxTotal(connMaxTotal);
         // 路由基数
-        poolHttpConnManager.setDefaultMaxPerRoute(this.maxPerRoute);
-        return poolHttpConnManager;
+        pool.setDefaultMaxPerRoute(maxPerRoute);
+        // 按路由覆盖的最大连接数
+        RouteSpecs.parseIntSpec(routeMaxPerRoute).forEach(pool::setMaxPerRoute);
+        return connectionManager;
     }
 
     /*
@@ -185,12 +543,228 @@ public class HttpClientConfig
 
     @Bean
     public RequestConfig requestConfig()
+    {
+        return createRequestConfig(this.connectRequestTimeout, this.connectTimeout, this.socketTimeout);
+    }
+
+    private static RequestConfig createRequestConfig(int connectRequestTimeout, int connectTimeout, int socketTimeout)
     {
         return RequestConfig.custom()
-                .setConnectionRequestTimeout(this.connectRequestTimeout)
-                .setConnectTimeout(this.connectTimeout)
-                .setSocketTimeout(this.socketTimeout)
+                .setConnectionRequestTimeout(connectRequestTimeout)
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
                 .build();
     }
+
+    /*
+     *******************************响应缓存********************************
+     */
+
+    /**
+     * 单个响应可被缓存的最大字节数
+     */
+    @Value("${httpclient.config.cacheMaxObjectSize}")
+    private long cacheMaxObjectSize = 8 * 1024 * 1024;
+
+    /**
+     * 缓存在堆内存中占用的最大字节数
+     */
+    @Value("${httpclient.config.cacheMaxHeapBytes}")
+    private long cacheMaxHeapBytes = 64 * 1024 * 1024;
+
+    /**
+     * 磁盘缓存目录，为空时不使用磁盘
+     */
+    @Value("${httpclient.config.cacheDirectory}")
+    private String cacheDirectory = "";
+
+    /**
+     * 响应体超过此字节数时转存到磁盘
+     */
+    @Value("${httpclient.config.cacheDiskThreshold}")
+    private long cacheDiskThreshold = 64 * 1024;
+
+    /**
+     * 磁盘缓存占用的最大字节数
+     */
+    @Value("${httpclient.config.cacheMaxDiskBytes}")
+    private long cacheMaxDiskBytes = 1024 * 1024 * 1024;
+
+    /**
+     * 缓存为客户端私有，因此Cache-Control: private的响应同样可以缓存
+     */
+    @Bean
+    public CacheConfig cacheConfig()
+    {
+        return CacheConfig.custom()
+                .setMaxObjectSize(this.cacheMaxObjectSize)
+                .setSharedCache(false)
+                .build();
+    }
+
+    @Bean
+    public HttpCacheStorage httpCacheStorage(HttpClientMetrics httpClientMetrics)
+    {
+        return new SizeBoundedHttpCacheStorage(this.cacheMaxHeapBytes, this.cacheMaxDiskBytes, httpClientMetrics);
+    }
+
+    @Bean
+    public ResourceFactory cacheResourceFactory()
+    {
+        File directory = this.cacheDirectory.trim().isEmpty() ? null : new File(this.cacheDirectory.trim());
+        return new TieredResourceFactory(directory, this.cacheDiskThreshold);
+    }
+
+    /*
+     *******************************异步HttpClient连接池管理********************************
+     */
+
+    /**
+     * 异步客户端的IO线程数，为0时使用CPU核数
+     * 少量的IO线程即可承载大量同时进行中的请求
+     */
+    @Value("${httpclient.config.ioThreadCount}")
+    private int ioThreadCount = 0;
+
+    @Bean
+    public IOReactorConfig ioReactorConfig()
+    {
+        return createIOReactorConfig(this.ioThreadCount, this.connectTimeout, this.socketTimeout);
+    }
+
+    private static IOReactorConfig createIOReactorConfig(int ioThreadCount, int connectTimeout, int socketTimeout)
+    {
+        return IOReactorConfig.custom()
+                .setIoThreadCount(ioThreadCount > 0 ? ioThreadCount : Runtime.getRuntime().availableProcessors())
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(socketTimeout)
+                .setSoKeepAlive(true)
+                .build();
+    }
+
+    /**
+     * 异步客户端使用的连接池，与同步连接池使用相同的最大连接数，路由基数配置，连接存活时间与域名解析
+     * 异步连接池只使用解析结果的第一个地址，缓存的域名解析每次轮转地址，新连接同样分散到各个地址
+     *
+     * @throws IOReactorException IO反应器创建失败
+     */
+    @Bean
+    public PoolingNHttpClientConnectionManager poolingNHttpClientConnectionManager(DnsResolver dnsResolver) throws IOReactorException
+    {
+        return createNConnectionManager(ioReactorConfig(), dnsResolver, this.connMaxTotal, this.maxPerRoute, this.routeMaxPerRoute, this.timeToLive);
+    }
+
+    private static PoolingNHttpClientConnectionManager createNConnectionManager(IOReactorConfig ioReactorConfig, DnsResolver dnsResolver,
+                                                                                int connMaxTotal, int maxPerRoute, String routeMaxPerRoute,
+                                                                                int timeToLive)
+            throws IOReactorException
+    {
+        DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioReactorConfig);
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", SSLIOSessionStrategy.getDefaultStrategy())
+                .build();
+        //与同步连接池相同，连接建立超过timeToLive后不再复用
+        PoolingNHttpClientConnectionManager poolNHttpConnManager = new PoolingNHttpClientConnectionManager(ioReactor,
+                ManagedNHttpClientConnectionFactory.INSTANCE, sessionStrategyRegistry, null, dnsResolver, timeToLive, TimeUnit.SECONDS);
+        // 最大连接数
+        poolNHttpConnManager.setMaxTotal(connMaxTotal);
+        // 路由基数
+        poolNHttpConnManager.setDefaultMaxPerRoute(maxPerRoute);
+        // 按路由覆盖的最大连接数
+        RouteSpecs.parseIntSpec(routeMaxPerRoute).forEach(poolNHttpConnManager::setMaxPerRoute);
+        return poolNHttpConnManager;
+    }
+
+    /*
+     *******************************命名的客户端配置********************************
+     */
+
+    /**
+     * 后台回收过期及空闲连接的执行间隔，单位s，各个客户端配置的连接池使用相同的回收参数
+     */
+    @Value("${httpclient.config.evictInterval}")
+    private long evictInterval = 5;
+
+    /**
+     * 连接的最大空闲时间，单位s
+     */
+    @Value("${httpclient.config.maxIdleTime}")
+    private long maxIdleTime = 30;
+
+    /**
+     * 由httpclient.profiles.配置名.*创建的客户端配置，每个配置拥有独立的同步与异步连接池，客户端，超时，重试策略与keep-alive
+     * 未配置的项使用httpclient.config.*中的默认配置；重试预算按默认的参数为每个配置单独计数
+     * 缓存，压缩，代理，熔断与限流与默认客户端共用
+     *
+     * @throws IOReactorException 异步连接池的IO反应器创建失败
+     */
+    @Bean
+    public ClientProfiles clientProfiles(Environment environment, DnsResolver dnsResolver, HttpClientMetrics httpClientMetrics,
+                                         HttpClientManagerFactory httpClientManagerFactory,
+                                         HttpAsyncClientManagerFactory httpAsyncClientManagerFactory) throws IOReactorException
+    {
+        Map<String, ClientProfileProperties> properties = Binder.get(environment)
+                .bind("httpclient.profiles", Bindable.mapOf(String.class, ClientProfileProperties.class))
+                .orElse(Collections.emptyMap());
+        Map<String, ClientProfile> profiles = new LinkedHashMap<>();
+        try
+        {
+            for (Map.Entry<String, ClientProfileProperties> entry : properties.entrySet())
+            {
+                profiles.put(entry.getKey(), createProfile(entry.getKey(), entry.getValue(), dnsResolver, httpClientMetrics,
+                        httpClientManagerFactory, httpAsyncClientManagerFactory));
+            }
+        }
+        catch (IOReactorException | RuntimeException e)
+        {
+            //创建失败时关闭已经创建的配置，避免遗留IO反应器线程
+            profiles.values().forEach(ClientProfile::close);
+            throw e;
+        }
+        return new ClientProfiles(profiles);
+    }
+
+    private ClientProfile createProfile(String name, ClientProfileProperties profile, DnsResolver dnsResolver, HttpClientMetrics httpClientMetrics,
+                                        HttpClientManagerFactory httpClientManagerFactory,
+                                        HttpAsyncClientManagerFactory httpAsyncClientManagerFactory) throws IOReactorException
+    {
+        int connMaxTotal = orDefault(profile.getConnMaxTotal(), this.connMaxTotal);
+        int maxPerRoute = orDefault(profile.getMaxPerRoute(), this.maxPerRoute);
+        String routeMaxPerRoute = orDefault(profile.getRouteMaxPerRoute(), "");
+        int connectTimeout = orDefault(profile.getConnectTimeout(), this.connectTimeout);
+        int socketTimeout = orDefault(profile.getSocketTimeout(), this.socketTimeout);
+
+        RequestConfig requestConfig = createRequestConfig(orDefault(profile.getConnectRequestTimeout(), this.connectRequestTimeout),
+                connectTimeout, socketTimeout);
+        ConnectionKeepAliveStrategy keepAliveStrategy = keepAliveStrategy(orDefault(profile.getKeepAliveTime(), this.keeAliveTime));
+
+        RetryPolicy.Routes retryPolicies = new RetryPolicy.Routes(new RetryPolicy(orDefault(profile.getRetryTime(), this.retryTime),
+                orDefault(profile.getRetryBaseDelay(), this.retryBaseDelay), orDefault(profile.getRetryMaxDelay(), this.retryMaxDelay)),
+                orDefault(profile.getRouteRetryPolicy(), ""));
+        RetryBudget retryBudget = new RetryBudget(this.retryBudgetRatio, this.retryBudgetMinPerSecond, this.retryBudgetWindow);
+
+        int timeToLive = orDefault(profile.getTimeToLive(), this.timeToLive);
+        HttpClientConnectionManager connectionManager = createConnectionManager(dnsResolver, connMaxTotal, maxPerRoute,
+                routeMaxPerRoute, timeToLive);
+        CloseableHttpClient client = httpClientManagerFactory.createClient(connectionManager, keepAliveStrategy,
+                new BackoffRetryHandler(retryPolicies, retryBudget, httpClientMetrics),
+                new RetryAfterRetryStrategy(retryPolicies, retryBudget, httpClientMetrics, this.maxRetryAfter * 1000),
+                retryBudget, requestConfig);
+        httpClientManagerFactory.registerPoolGauges(name, connectionManager);
+
+        PoolingNHttpClientConnectionManager asyncConnectionManager = createNConnectionManager(
+                createIOReactorConfig(orDefault(profile.getIoThreadCount(), this.ioThreadCount), connectTimeout, socketTimeout),
+                dnsResolver, connMaxTotal, maxPerRoute, routeMaxPerRoute, timeToLive);
+        CloseableHttpAsyncClient asyncClient = httpAsyncClientManagerFactory.createClient(asyncConnectionManager, keepAliveStrategy, requestConfig);
+
+        return new ClientProfile(name, client, connectionManager, asyncClient, asyncConnectionManager, requestConfig,
+                this.evictInterval, this.maxIdleTime);
+    }
+
+    private static <T> T orDefault(T value, T defaultValue)
+    {
+        return value != null ? value : defaultValue;
+    }
 }
 
@@ -1,23 +1,47 @@
 package xin.tomdonkey.util.http.common.config;
 
+import org.apache.http.HttpException;
 import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.ResourceFactory;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.routing.HttpRoutePlanner;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import xin.tomdonkey.util.http.common.compress.CompressionInterceptors;
+import xin.tomdonkey.util.http.common.deadline.Deadline;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+import xin.tomdonkey.util.http.common.metrics.InstrumentedHttpClientConnectionManager;
+import xin.tomdonkey.util.http.common.metrics.InstrumentedHttpRequestExecutor;
+import xin.tomdonkey.util.http.common.metrics.MeteredHttpEntity;
+import xin.tomdonkey.util.http.common.retry.BackoffRetryHandler;
+import xin.tomdonkey.util.http.common.retry.RetryBudget;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Component
 public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient>, InitializingBean, DisposableBean
 {
+    private static Logger logger = LoggerFactory.getLogger(HttpClientManagerFactory.class);
 
     @Autowired
     private HttpClientConnectionManager poolingClientConnectionManager;
@@ -26,9 +50,21 @@ public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient
     @Autowired
     private HttpRequestRetryHandler httpRequestRetryHandler;
     @Autowired
+    private ServiceUnavailableRetryStrategy serviceUnavailableRetryStrategy;
+    @Autowired
+    private RetryBudget retryBudget;
+    @Autowired
     private HttpRoutePlanner httpRoutePlanner;
     @Autowired
     private RequestConfig requestConfig;
+    @Autowired
+    private HttpClientMetrics httpClientMetrics;
+    @Autowired
+    private CacheConfig cacheConfig;
+    @Autowired
+    private HttpCacheStorage httpCacheStorage;
+    @Autowired
+    private ResourceFactory cacheResourceFactory;
 
     /**
      * 是否启用代理设置
@@ -36,6 +72,59 @@ public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient
     @Value("${httpclient.config.proxy}")
     private boolean proxy = false;
 
+    /**
+     * 是否启用响应缓存
+     */
+    @Value("${httpclient.config.cache}")
+    private boolean cache = false;
+
+    /**
+     * 是否请求并解压压缩的响应
+     */
+    @Value("${httpclient.config.compression}")
+    private boolean compression = true;
+
+    /**
+     * 请求体压缩的最小字节数，负数表示不压缩请求体
+     */
+    @Value("${httpclient.config.requestCompressionThreshold}")
+    private long requestCompressionThreshold = -1;
+
+    /**
+     * 后台回收过期及空闲连接的执行间隔，单位s
+     */
+    @Value("${httpclient.config.evictInterval}")
+    private long evictInterval = 5;
+
+    /**
+     * 连接的最大空闲时间，单位s
+     */
+    @Value("${httpclient.config.maxIdleTime}")
+    private long maxIdleTime = 30;
+
+    /**
+     * 启动时预热的路由及连接数，格式为 地址=连接数，逗号分隔，为空时不预热
+     */
+    @Value("${httpclient.config.warmUp}")
+    private String warmUp = "";
+
+    /**
+     * 预热的最长等待时间，单位ms
+     */
+    @Value("${httpclient.config.warmUpTimeout}")
+    private long warmUpTimeout = 5000;
+
+    /**
+     * 预热的连接在连接池中的保持时间，与keepAliveTime一致，单位s
+     */
+    @Value("${httpclient.config.keepAliveTime}")
+    private long keepAliveTime = 30;
+
+    /**
+     * 连接池的后台回收器，随客户端一起启动和关闭
+     */
+    private ConnectionEvictor connectionEvictor;
+
     /**
      * FactoryBean生成的目标对象
      */
@@ -62,9 +151,65 @@ public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient
     @Override
     public void afterPropertiesSet() throws Exception
     {
-        HttpClientBuilder httpClientBuilder = HttpClients.custom().setConnectionManager(poolingClientConnectionManager)
-                .setKeepAliveStrategy(connectionKeepAliveStrategy)
-                .setRetryHandler(httpRequestRetryHandler)
+        this.client = createClient(poolingClientConnectionManager, connectionKeepAliveStrategy, httpRequestRetryHandler,
+                serviceUnavailableRetryStrategy, retryBudget, requestConfig);
+
+        //启动后台回收器，定期回收过期及空闲的连接
+        this.connectionEvictor = new ConnectionEvictor(poolingClientConnectionManager, evictInterval, maxIdleTime);
+        this.connectionEvictor.start();
+
+        registerPoolGauges(HttpClientMetrics.DEFAULT_POOL, poolingClientConnectionManager);
+
+        //若配置了httpclient.config.warmUp，在客户端可用之前预先建立连接
+        if (!warmUp.trim().isEmpty())
+        {
+            warmUpConnections();
+        }
+    }
+
+    /**
+     * 以给定的连接池，keep-alive，重试策略与请求配置创建客户端
+     * 缓存，压缩，度量与代理使用与默认客户端相同的配置，命名的客户端配置（httpclient.profiles.*）同样经由此方法创建
+     * 创建的客户端不会启动连接池的后台回收器
+     */
+    public CloseableHttpClient createClient(HttpClientConnectionManager connectionManager, ConnectionKeepAliveStrategy keepAliveStrategy,
+                                            HttpRequestRetryHandler retryHandler, ServiceUnavailableRetryStrategy serviceUnavailableRetryStrategy,
+                                            RetryBudget retryBudget, RequestConfig requestConfig)
+    {
+        //默认不使用缓存
+        //若httpclient.config.cache配置为true，则在请求执行链的最前面加入遵循HTTP缓存语义的缓存层
+        HttpClientBuilder httpClientBuilder = cache ? CachingHttpClientBuilder.create()
+                .setCacheConfig(cacheConfig)
+                .setHttpCacheStorage(httpCacheStorage)
+                .setResourceFactory(cacheResourceFactory) : HttpClients.custom();
+
+        //默认发送Accept-Encoding，并以流的方式解压响应，统计解压前后的字节数
+        //解压由内置的拦截器完成，统计解压前字节数的拦截器在其之前，统计解压后字节数的拦截器在其之后
+        //须在度量包装响应体之前添加，否则无法识别解压后的响应体
+        if (compression)
+        {
+            httpClientBuilder.addInterceptorFirst(CompressionInterceptors.responseCompressedBytes(httpClientMetrics))
+                    .addInterceptorLast(CompressionInterceptors.responseUncompressedBytes(httpClientMetrics));
+        }
+        else
+        {
+            httpClientBuilder.disableContentCompression();
+        }
+        //请求体压缩只由requestCompressionThreshold控制，与响应的解压无关
+        if (requestCompressionThreshold >= 0)
+        {
+            httpClientBuilder.addInterceptorFirst(CompressionInterceptors.requestCompression(requestCompressionThreshold, httpClientMetrics));
+        }
+
+        //连接池与请求执行器均经过度量包装，记录租用等待、建立连接、首字节及响应体读取耗时
+        httpClientBuilder.setConnectionManager(new InstrumentedHttpClientConnectionManager(connectionManager, httpClientMetrics))
+                .setRequestExecutor(new InstrumentedHttpRequestExecutor(httpClientMetrics))
+                .addInterceptorLast(MeteredHttpEntity.interceptor(httpClientMetrics))
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setRetryHandler(retryHandler)
+                .setServiceUnavailableRetryStrategy(serviceUnavailableRetryStrategy)
+                .addInterceptorFirst(BackoffRetryHandler.attemptInterceptor(retryBudget))
+                .addInterceptorLast(Deadline.interceptor())
                 .setDefaultRequestConfig(requestConfig);
 
         //默认不使用代理
@@ -74,9 +219,51 @@ public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient
             httpClientBuilder.setRoutePlanner(httpRoutePlanner);
         }
 
+        return httpClientBuilder.build();
+    }
 
-        this.client = httpClientBuilder.build();
+    /**
+     * 为配置的路由并行建立连接，失败或超时只打印日志，不阻止启动
+     */
+    private void warmUpConnections()
+    {
+        Map<HttpRoute, Integer> routes = new LinkedHashMap<>();
+        RouteSpecs.parseIntSpec(warmUp).forEach((route, count) ->
+        {
+            //启用代理时，连接池中的路由经过代理
+            if (proxy)
+            {
+                try
+                {
+                    route = httpRoutePlanner.determineRoute(route.getTargetHost(), new BasicHttpRequest("GET", "/"), HttpClientContext.create());
+                }
+                catch (HttpException e)
+                {
+                    logger.warn("无法计算预热路由：" + route, e);
+                    return;
+                }
+            }
+            routes.merge(route, count, Integer::sum);
+        });
+        new ConnectionWarmer(poolingClientConnectionManager, requestConfig.getConnectTimeout(), keepAliveTime)
+                .warmUp(routes, warmUpTimeout);
+    }
 
+    /**
+     * 发布连接池的租用，等待与空闲连接数，命名的客户端配置的连接池同样经由此方法发布
+     *
+     * @param poolName 连接池名，默认客户端为HttpClientMetrics.DEFAULT_POOL，命名的客户端配置为配置名
+     */
+    @SuppressWarnings("unchecked")
+    public void registerPoolGauges(String poolName, HttpClientConnectionManager connectionManager)
+    {
+        if (connectionManager instanceof ConnPoolControl)
+        {
+            ConnPoolControl<HttpRoute> pool = (ConnPoolControl<HttpRoute>) connectionManager;
+            httpClientMetrics.gauge(HttpClientMetrics.POOL_LEASED, poolName, () -> pool.getTotalStats().getLeased());
+            httpClientMetrics.gauge(HttpClientMetrics.POOL_PENDING, poolName, () -> pool.getTotalStats().getPending());
+            httpClientMetrics.gauge(HttpClientMetrics.POOL_AVAILABLE, poolName, () -> pool.getTotalStats().getAvailable());
+        }
     }
 
     @Override
@@ -88,6 +275,10 @@ public class HttpClientManagerFactory implements FactoryBean<CloseableHttpClient
          * 所以在下次还要进行http请求的时候，要重新new一个connection manager来build一个HttpClient,
          * 也就是在需要关闭和新建Client的情况下，connection manager不能是单例的.
          */
+        if (null != this.connectionEvictor)
+        {
+            this.connectionEvictor.shutdown();
+        }
         if (null != this.client)
         {
             this.client.close();
@@ -0,0 +1,46 @@
+package xin.tomdonkey.util.http.common.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+import xin.tomdonkey.util.http.common.metrics.MicrometerHttpClientMetrics;
+import xin.tomdonkey.util.http.common.metrics.SimpleHttpClientMetrics;
+
+/**
+ * HttpClient度量的配置
+ * classpath中存在Micrometer时，发布到容器中的MeterRegistry，没有则发布到Micrometer的全局registry
+ * 否则使用内存中的SimpleHttpClientMetrics，可以自行注入HttpClientMetrics的实现替换
+ *
+ * 与DnsResolverConfig相同，通过META-INF/spring.factories注册为自动配置，在用户配置之后处理
+ *
+ * @author guolinyuan
+ */
+@Configuration
+public class HttpClientMetricsConfig
+{
+    /**
+     * 不标注@Configuration，避免被组件扫描当作用户配置单独注册，只作为HttpClientMetricsConfig的成员类随自动配置处理
+     */
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class MicrometerMetricsConfig
+    {
+        @Bean
+        @ConditionalOnMissingBean(HttpClientMetrics.class)
+        public HttpClientMetrics micrometerHttpClientMetrics(ObjectProvider<MeterRegistry> meterRegistry)
+        {
+            return new MicrometerHttpClientMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+        }
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(HttpClientMetrics.class)
+    public HttpClientMetrics simpleHttpClientMetrics()
+    {
+        return new SimpleHttpClientMetrics();
+    }
+}
@@ -0,0 +1,169 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.MBeanExportException;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import xin.tomdonkey.util.http.common.profile.ClientProfile;
+import xin.tomdonkey.util.http.common.profile.ClientProfiles;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 运行时调整连接池大小的管理接口，同时作用于同步与异步客户端的连接池
+ * 通过JMX暴露，也可以直接注入后调用
+ *
+ * 调整立即对之后的连接租用生效，不会关闭HttpClientManagerFactory管理的客户端，也不会中断进行中的请求
+ * 调小限制时，超出限制的连接在归还后被关闭
+ *
+ * 每个命名的客户端配置（httpclient.profiles.*）的连接池另外注册一个管理接口，
+ * ObjectName为 xin.tomdonkey.util.http:type=HttpClientPool,profile=配置名，只作用于该配置的同步与异步连接池
+ *
+ * @author guolinyuan
+ */
+@Component
+@ManagedResource(objectName = "xin.tomdonkey.util.http:type=HttpClientPool", description = "HttpClient连接池管理")
+public class HttpClientPoolManagement
+{
+    private static Logger logger = LoggerFactory.getLogger(HttpClientPoolManagement.class);
+
+    private static final String OBJECT_NAME = "xin.tomdonkey.util.http:type=HttpClientPool";
+
+    private final List<ConnPoolControl<HttpRoute>> pools = new ArrayList<>();
+
+    /**
+     * 管理默认客户端的连接池，并为每个命名的客户端配置注册各自的管理接口
+     * 未启用JMX（没有MBeanExporter）时，命名的客户端配置不注册管理接口
+     */
+    @Autowired
+    public HttpClientPoolManagement(HttpClientConnectionManager poolingClientConnectionManager,
+                                    NHttpClientConnectionManager poolingNHttpClientConnectionManager,
+                                    ClientProfiles clientProfiles, ObjectProvider<MBeanExporter> mbeanExporter)
+    {
+        this(poolingClientConnectionManager, poolingNHttpClientConnectionManager);
+        MBeanExporter exporter = mbeanExporter.getIfAvailable();
+        if (exporter != null)
+        {
+            clientProfiles.getProfiles().values().forEach(profile -> register(exporter, profile));
+        }
+    }
+
+    /**
+     * 管理给定的同步与异步连接池
+     */
+    @SuppressWarnings("unchecked")
+    public HttpClientPoolManagement(HttpClientConnectionManager connectionManager, NHttpClientConnectionManager asyncConnectionManager)
+    {
+        for (Object pool : new Object[]{connectionManager, asyncConnectionManager})
+        {
+            if (pool instanceof ConnPoolControl)
+            {
+                pools.add((ConnPoolControl<HttpRoute>) pool);
+            }
+        }
+    }
+
+    /**
+     * 注册命名的客户端配置的管理接口，随MBeanExporter一起注销
+     * 注册失败只打印日志，不影响启动
+     */
+    private static void register(MBeanExporter exporter, ClientProfile profile)
+    {
+        HttpClientPoolManagement management = new HttpClientPoolManagement(profile.getConnectionManager(), profile.getAsyncConnectionManager());
+        try
+        {
+            exporter.registerManagedResource(management, objectName(profile.getName()));
+        }
+        catch (MalformedObjectNameException | MBeanExportException e)
+        {
+            logger.error("注册客户端配置" + profile.getName() + "的连接池管理接口失败", e);
+        }
+    }
+
+    /**
+     * 配置名含有ObjectName的保留字符时，使用引号括起
+     */
+    private static ObjectName objectName(String profile) throws MalformedObjectNameException
+    {
+        String value = profile.matches("[\\w.-]+") ? profile : ObjectName.quote(profile);
+        return new ObjectName(OBJECT_NAME + ",profile=" + value);
+    }
+
+    @ManagedAttribute(description = "连接池最大连接数")
+    public int getMaxTotal()
+    {
+        return pools.isEmpty() ? 0 : pools.get(0).getMaxTotal();
+    }
+
+    @ManagedAttribute(description = "连接池最大连接数")
+    public void setMaxTotal(int maxTotal)
+    {
+        logger.info("调整连接池最大连接数为：" + maxTotal);
+        pools.forEach(pool -> pool.setMaxTotal(maxTotal));
+    }
+
+    @ManagedAttribute(description = "单个路由默认的最大连接数")
+    public int getDefaultMaxPerRoute()
+    {
+        return pools.isEmpty() ? 0 : pools.get(0).getDefaultMaxPerRoute();
+    }
+
+    @ManagedAttribute(description = "单个路由默认的最大连接数")
+    public void setDefaultMaxPerRoute(int maxPerRoute)
+    {
+        logger.info("调整单个路由默认的最大连接数为：" + maxPerRoute);
+        pools.forEach(pool -> pool.setDefaultMaxPerRoute(maxPerRoute));
+    }
+
+    @ManagedOperation(description = "获取指定路由的最大连接数")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "url", description = "路由地址，如 https://api.example.com")
+    })
+    public int getMaxPerRoute(String url)
+    {
+        return pools.isEmpty() ? 0 : pools.get(0).getMaxPerRoute(RouteSpecs.toRoute(url));
+    }
+
+    @ManagedOperation(description = "调整指定路由的最大连接数")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "url", description = "路由地址，如 https://api.example.com"),
+            @ManagedOperationParameter(name = "max", description = "最大连接数")
+    })
+    public void setMaxPerRoute(String url, int max)
+    {
+        HttpRoute route = RouteSpecs.toRoute(url);
+        logger.info("调整路由" + route + "的最大连接数为：" + max);
+        pools.forEach(pool -> pool.setMaxPerRoute(route, max));
+    }
+
+    @ManagedOperation(description = "获取指定路由的连接池状态")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "url", description = "路由地址，如 https://api.example.com")
+    })
+    public String getRouteStats(String url)
+    {
+        HttpRoute route = RouteSpecs.toRoute(url);
+        return pools.isEmpty() ? "" : pools.get(0).getStats(route).toString();
+    }
+
+    @ManagedAttribute(description = "连接池整体状态")
+    public String getTotalStats()
+    {
+        return pools.isEmpty() ? "" : pools.get(0).getTotalStats().toString();
+    }
+}
@@ -0,0 +1,104 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解析httpclient.properties中按路由配置的参数
+ * 配置格式为逗号分隔的 地址=值，地址可以省略协议与端口，如：
+ * https://api.example.com=10,http://internal-service:8080=50,other.example.com=5
+ *
+ * 得到的路由与HttpClient在不使用代理时为请求计算出的路由一致，可以直接作为连接池的key
+ *
+ * @author guolinyuan
+ */
+public final class RouteSpecs
+{
+    private RouteSpecs()
+    {
+    }
+
+    /**
+     * 将地址转换为连接池使用的路由，未指定协议时使用http，未指定端口时使用协议的默认端口
+     *
+     * @param url 地址，如 https://api.example.com:8443
+     * @return 路由
+     * @throws IllegalArgumentException 地址不合法
+     */
+    public static HttpRoute toRoute(String url)
+    {
+        HttpHost host = HttpHost.create(url.trim());
+        if (host.getPort() <= 0)
+        {
+            try
+            {
+                host = new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host), host.getSchemeName());
+            }
+            catch (UnsupportedSchemeException e)
+            {
+                throw new IllegalArgumentException("不支持的协议：" + url, e);
+            }
+        }
+        return new HttpRoute(host, null, "https".equalsIgnoreCase(host.getSchemeName()));
+    }
+
+    /**
+     * 解析 地址=整数值 格式的配置
+     *
+     * @param spec 配置，为空时返回空map
+     * @return 路由到配置值的映射，保持配置中的顺序
+     * @throws IllegalArgumentException 配置格式不合法
+     */
+    public static Map<HttpRoute, Integer> parseIntSpec(String spec)
+    {
+        Map<HttpRoute, Integer> result = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : parseSpec(spec).entrySet())
+        {
+            try
+            {
+                result.put(toRoute(entry.getKey()), Integer.parseInt(entry.getValue()));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("路由配置的值必须为整数：" + entry.getKey() + "=" + entry.getValue(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 解析 地址=值 格式的配置，不做类型转换
+     *
+     * @param spec 配置，为空时返回空map
+     * @return 地址到配置值的映射，保持配置中的顺序
+     * @throws IllegalArgumentException 配置格式不合法
+     */
+    public static Map<String, String> parseSpec(String spec)
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (spec == null || spec.trim().isEmpty())
+        {
+            return result;
+        }
+        for (String item : spec.split(","))
+        {
+            if (item.trim().isEmpty())
+            {
+                continue;
+            }
+            //地址中可能包含协议的冒号，因此以最后一个等号分隔
+            int index = item.lastIndexOf('=');
+            if (index <= 0)
+            {
+                throw new IllegalArgumentException("路由配置的格式应为 地址=值：" + item);
+            }
+            result.put(item.substring(0, index).trim(), item.substring(index + 1).trim());
+        }
+        return result;
+    }
+}
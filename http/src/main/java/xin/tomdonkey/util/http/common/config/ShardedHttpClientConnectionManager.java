@@ -0,0 +1,754 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * 按路由分片的同步连接池，可以替换PoolingHttpClientConnectionManager
+ *
+ * PoolingHttpClientConnectionManager的每次租用与归还都要获取整个连接池共用的一把锁，线程多时在这把锁上排队
+ * 此连接池中每个路由是一个独立的分片，分片之间不共用锁：
+ * 路由的最大连接数与连接池的最大连接数分别由可调整的信号量限制，没有等待时只需CAS
+ * 空闲连接保存在无锁的双端队列中，后进先出，最近使用的连接优先被复用，长期空闲的连接留在队尾由回收器关闭
+ * 租出的连接通过以连接为key的map找到所属的分片
+ *
+ * 获取不到许可的请求登记在等待队列中并挂起自己的线程，归还连接或调大限制时唤醒等待的请求重新尝试
+ * 取消请求只唤醒该请求的线程，不中断线程，被取消的请求与PoolingHttpClientConnectionManager一样以ExecutionException（CancellationException）失败
+ *
+ * 信号量限制的是同时租出的连接数，连接池中的连接总数（租出与空闲）只是近似地不超过最大连接数：
+ * 创建新连接导致总数超过限制时，关闭一个其他路由的空闲连接，调小限制时立即关闭超出的空闲连接，超出的租出连接在归还时被关闭
+ *
+ * 连接的存活时间，keep-alive，空闲后校验及状态匹配与PoolingHttpClientConnectionManager一致
+ * 每个连接使用默认的SocketConfig与ConnectionConfig
+ *
+ * @author guolinyuan
+ */
+public class ShardedHttpClientConnectionManager implements HttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ShardedHttpClientConnectionManager.class);
+
+    private final HttpClientConnectionOperator connectionOperator;
+    private final long timeToLive;
+
+    private final ConcurrentHashMap<HttpRoute, RoutePool> pools = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<HttpRoute, Integer> maxPerRoute = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<HttpClientConnection, PoolEntry> leased = new ConcurrentHashMap<>();
+
+    private final ResizableSemaphore totalPermits;
+    /**
+     * 已经获得路由许可，等待连接池许可的请求
+     */
+    private final Queue<LeaseRequest> totalWaiters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile int maxTotal;
+    private volatile int defaultMaxPerRoute;
+    private volatile int validateAfterInactivity = 2000;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param socketFactoryRegistry 按协议查找的连接工厂
+     * @param dnsResolver 建立新连接时使用的域名解析
+     * @param timeToLive 连接的最长存活时间，不大于0时不限制
+     */
+    public ShardedHttpClientConnectionManager(Lookup<ConnectionSocketFactory> socketFactoryRegistry, DnsResolver dnsResolver,
+                                              long timeToLive, TimeUnit unit)
+    {
+        this.connectionOperator = new DefaultHttpClientConnectionOperator(socketFactoryRegistry, null, dnsResolver);
+        this.timeToLive = timeToLive > 0 ? unit.toMillis(timeToLive) : 0;
+        this.maxTotal = 20;
+        this.defaultMaxPerRoute = 2;
+        this.totalPermits = new ResizableSemaphore(this.maxTotal);
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state)
+    {
+        return new LeaseRequest(route, state);
+    }
+
+    /**
+     * 获取路由与连接池的许可，timeout为0时一直等待
+     *
+     * @return 已经获得许可的分片
+     */
+    private RoutePool acquire(LeaseRequest request, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+    {
+        if (shutdown)
+        {
+            throw new IllegalStateException("连接池已关闭");
+        }
+        RoutePool pool = pool(request.route);
+        //没有等待时只需CAS
+        if (pool.permits.tryAcquire())
+        {
+            if (totalPermits.tryAcquire())
+            {
+                return pool;
+            }
+            pool.releaseRoute();
+        }
+
+        pending.incrementAndGet();
+        pool.pending.incrementAndGet();
+        try
+        {
+            long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : Long.MAX_VALUE;
+            await(pool.permits, pool.waiters, request, deadline);
+            boolean acquired = false;
+            try
+            {
+                await(totalPermits, totalWaiters, request, deadline);
+                acquired = true;
+            }
+            finally
+            {
+                if (!acquired)
+                {
+                    pool.releaseRoute();
+                }
+            }
+            return pool;
+        }
+        finally
+        {
+            pool.pending.decrementAndGet();
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * 等待一个许可，直到获得许可，超时，请求被取消，线程被中断或连接池关闭
+     * 请求先登记在waiters中再尝试获取，归还许可或关闭连接池的线程随后唤醒登记的请求，因此不会错过唤醒
+     *
+     * @param deadline 等待的截止时间，System.nanoTime()，Long.MAX_VALUE表示一直等待
+     */
+    private void await(Semaphore permits, Queue<LeaseRequest> waiters, LeaseRequest request, long deadline)
+            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+    {
+        waiters.add(request);
+        try
+        {
+            while (!permits.tryAcquire())
+            {
+                if (shutdown)
+                {
+                    throw new IllegalStateException("连接池已关闭");
+                }
+                if (request.cancelled)
+                {
+                    throw new ExecutionException(new CancellationException("连接请求已取消"));
+                }
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedException("等待连接时线程被中断");
+                }
+                if (deadline == Long.MAX_VALUE)
+                {
+                    LockSupport.park(request);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                {
+                    throw new ConnectionPoolTimeoutException("Timeout waiting for connection from pool");
+                }
+                LockSupport.parkNanos(request, remaining);
+            }
+        }
+        finally
+        {
+            waiters.remove(request);
+        }
+    }
+
+    /**
+     * 唤醒登记的所有请求，由它们重新竞争许可，与PoolingHttpClientConnectionManager归还连接时的signalAll相同
+     */
+    private static void signal(Queue<LeaseRequest> waiters)
+    {
+        if (waiters.isEmpty())
+        {
+            return;
+        }
+        for (LeaseRequest request : waiters)
+        {
+            Thread thread = request.waiter;
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * 优先复用状态匹配的空闲连接，没有时创建未连接的新连接，由执行链完成连接
+     */
+    private HttpClientConnection lease(RoutePool pool, Object state)
+    {
+        PoolEntry entry;
+        while ((entry = pool.takeIdle(state)) != null)
+        {
+            long now = System.currentTimeMillis();
+            if (entry.isExpired(now) || !entry.connection.isOpen())
+            {
+                close(entry);
+                continue;
+            }
+            if (validateAfterInactivity > 0 && entry.updated + validateAfterInactivity <= now && entry.connection.isStale())
+            {
+                close(entry);
+                continue;
+            }
+            break;
+        }
+        if (entry == null)
+        {
+            entry = create(pool);
+        }
+        leased.put(entry.connection, entry);
+        return entry.connection;
+    }
+
+    private PoolEntry create(RoutePool pool)
+    {
+        //连接总数超过限制时，关闭其他路由最久未使用的一个空闲连接
+        if (allocated.incrementAndGet() > maxTotal)
+        {
+            for (RoutePool other : pools.values())
+            {
+                PoolEntry idle = other == pool ? null : other.idle.pollLast();
+                if (idle != null)
+                {
+                    close(idle);
+                    break;
+                }
+            }
+        }
+        pool.allocated.incrementAndGet();
+        ManagedHttpClientConnection connection = ManagedHttpClientConnectionFactory.INSTANCE.create(pool.route, ConnectionConfig.DEFAULT);
+        return new PoolEntry(pool, connection, System.currentTimeMillis(), timeToLive);
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection managedConn, Object state, long keepalive, TimeUnit unit)
+    {
+        PoolEntry entry = leased.remove(managedConn);
+        //重复归还或不属于此连接池
+        if (entry == null)
+        {
+            return;
+        }
+        RoutePool pool = entry.pool;
+        try
+        {
+            if (!shutdown && entry.routeComplete && entry.connection.isOpen()
+                    && allocated.get() <= maxTotal && pool.allocated.get() <= pool.max)
+            {
+                entry.state = state;
+                entry.updateExpiry(keepalive, unit);
+                pool.idle.offerFirst(entry);
+            }
+            else
+            {
+                close(entry);
+            }
+        }
+        finally
+        {
+            pool.release();
+        }
+    }
+
+    @Override
+    public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException
+    {
+        HttpHost host = route.getProxyHost() != null ? route.getProxyHost() : route.getTargetHost();
+        connectionOperator.connect(leasedEntry(managedConn).connection, host, route.getLocalSocketAddress(), connectTimeout,
+                SocketConfig.DEFAULT, context);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection managedConn, HttpRoute route, HttpContext context) throws IOException
+    {
+        connectionOperator.upgrade(leasedEntry(managedConn).connection, route.getTargetHost(), context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection managedConn, HttpRoute route, HttpContext context)
+    {
+        leasedEntry(managedConn).routeComplete = true;
+    }
+
+    private PoolEntry leasedEntry(HttpClientConnection managedConn)
+    {
+        PoolEntry entry = leased.get(managedConn);
+        if (entry == null)
+        {
+            throw new IllegalStateException("连接不是从此连接池租出的，或已经归还");
+        }
+        return entry;
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit unit)
+    {
+        long cutoff = System.currentTimeMillis() - Math.max(0, unit.toMillis(idletime));
+        closeIdle(entry -> entry.updated <= cutoff);
+    }
+
+    @Override
+    public void closeExpiredConnections()
+    {
+        long now = System.currentTimeMillis();
+        closeIdle(entry -> entry.isExpired(now));
+    }
+
+    private void closeIdle(Predicate<PoolEntry> predicate)
+    {
+        for (RoutePool pool : pools.values())
+        {
+            for (PoolEntry entry : pool.idle)
+            {
+                //其他线程可能同时取出了此连接，移除成功的线程负责关闭
+                if (predicate.test(entry) && pool.idle.remove(entry))
+                {
+                    close(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * 关闭连接池中的空闲连接，租出的连接在归还时关闭
+     * 唤醒所有等待许可的请求，它们随后抛出IllegalStateException，不会在已经关闭的连接池上一直等待
+     */
+    @Override
+    public void shutdown()
+    {
+        if (shutdown)
+        {
+            return;
+        }
+        shutdown = true;
+        for (RoutePool pool : pools.values())
+        {
+            signal(pool.waiters);
+            PoolEntry entry;
+            while ((entry = pool.idle.pollFirst()) != null)
+            {
+                close(entry);
+            }
+        }
+        signal(totalWaiters);
+    }
+
+    @Override
+    public void close()
+    {
+        shutdown();
+    }
+
+    private void close(PoolEntry entry)
+    {
+        try
+        {
+            entry.connection.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("关闭连接时发生异常：" + entry.pool.route, e);
+        }
+        entry.pool.allocated.decrementAndGet();
+        allocated.decrementAndGet();
+    }
+
+    private RoutePool pool(HttpRoute route)
+    {
+        RoutePool pool = pools.get(route);
+        return pool != null ? pool : pools.computeIfAbsent(route, r -> new RoutePool(r, getMaxPerRoute(r)));
+    }
+
+    /*
+     *******************************连接池大小********************************
+     */
+
+    public int getValidateAfterInactivity()
+    {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * 连接空闲超过此时间后，再次租出之前先校验连接是否可用，单位ms，不大于0时不校验
+     */
+    public void setValidateAfterInactivity(int validateAfterInactivity)
+    {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    @Override
+    public synchronized void setMaxTotal(int max)
+    {
+        totalPermits.resize(max - this.maxTotal);
+        this.maxTotal = max;
+        signal(totalWaiters);
+        //调小限制时立即关闭超出的空闲连接，每次从连接最多的路由关闭最久未使用的连接
+        while (allocated.get() > max)
+        {
+            PoolEntry entry = pools.values().stream()
+                    .filter(pool -> !pool.idle.isEmpty())
+                    .max(Comparator.comparingInt(pool -> pool.allocated.get()))
+                    .map(pool -> pool.idle.pollLast())
+                    .orElse(null);
+            if (entry == null)
+            {
+                break;
+            }
+            close(entry);
+        }
+    }
+
+    @Override
+    public int getMaxTotal()
+    {
+        return maxTotal;
+    }
+
+    @Override
+    public synchronized void setDefaultMaxPerRoute(int max)
+    {
+        this.defaultMaxPerRoute = max;
+        pools.values().forEach(pool -> pool.resize(getMaxPerRoute(pool.route)));
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute()
+    {
+        return defaultMaxPerRoute;
+    }
+
+    @Override
+    public synchronized void setMaxPerRoute(HttpRoute route, int max)
+    {
+        maxPerRoute.put(route, max);
+        RoutePool pool = pools.get(route);
+        if (pool != null)
+        {
+            pool.resize(max);
+        }
+    }
+
+    @Override
+    public int getMaxPerRoute(HttpRoute route)
+    {
+        return maxPerRoute.getOrDefault(route, defaultMaxPerRoute);
+    }
+
+    /**
+     * 各分片的计数分别读取，不是同一时刻的快照
+     */
+    @Override
+    public PoolStats getTotalStats()
+    {
+        int leasedCount = 0;
+        int available = 0;
+        for (RoutePool pool : pools.values())
+        {
+            int idle = pool.idle.size();
+            leasedCount += Math.max(0, pool.allocated.get() - idle);
+            available += idle;
+        }
+        return new PoolStats(leasedCount, pending.get(), available, maxTotal);
+    }
+
+    @Override
+    public PoolStats getStats(HttpRoute route)
+    {
+        RoutePool pool = pools.get(route);
+        if (pool == null)
+        {
+            return new PoolStats(0, 0, 0, getMaxPerRoute(route));
+        }
+        int idle = pool.idle.size();
+        return new PoolStats(Math.max(0, pool.allocated.get() - idle), pool.pending.get(), idle, pool.max);
+    }
+
+    /**
+     * 有空闲连接或租出连接的路由
+     */
+    public Map<HttpRoute, PoolStats> getRouteStats()
+    {
+        Map<HttpRoute, PoolStats> stats = new LinkedHashMap<>();
+        pools.keySet().forEach(route -> stats.put(route, getStats(route)));
+        return stats;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ShardedHttpClientConnectionManager{routes=" + pools.size() + ", " + getTotalStats() + "}";
+    }
+
+    /**
+     * 一次连接请求，等待许可时挂起自己的线程，由归还连接，调大限制或cancel唤醒
+     */
+    private class LeaseRequest implements ConnectionRequest
+    {
+        private final HttpRoute route;
+        private final Object state;
+
+        private volatile Thread waiter;
+        private volatile boolean cancelled = false;
+        private boolean done = false;
+
+        LeaseRequest(HttpRoute route, Object state)
+        {
+            this.route = route;
+            this.state = state;
+        }
+
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+        {
+            RoutePool pool;
+            synchronized (this)
+            {
+                if (cancelled)
+                {
+                    throw new ExecutionException(new CancellationException("连接请求已取消"));
+                }
+                waiter = Thread.currentThread();
+            }
+            try
+            {
+                pool = acquire(this, timeout, unit);
+            }
+            finally
+            {
+                waiter = null;
+            }
+            synchronized (this)
+            {
+                //获得许可之后才被取消
+                if (cancelled)
+                {
+                    pool.release();
+                    throw new ExecutionException(new CancellationException("连接请求已取消"));
+                }
+                done = true;
+            }
+            try
+            {
+                return lease(pool, state);
+            }
+            catch (RuntimeException e)
+            {
+                pool.release();
+                throw e;
+            }
+        }
+
+        /**
+         * 取消尚未获得连接的请求，只唤醒此请求等待的线程
+         *
+         * @return 是否取消，已经获得连接或已经取消时返回false
+         */
+        @Override
+        public boolean cancel()
+        {
+            Thread thread;
+            synchronized (this)
+            {
+                if (done || cancelled)
+                {
+                    return false;
+                }
+                cancelled = true;
+                thread = waiter;
+            }
+            if (thread != null)
+            {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 一个路由的分片
+     */
+    private class RoutePool
+    {
+        private final HttpRoute route;
+        private final ResizableSemaphore permits;
+        private final Queue<LeaseRequest> waiters = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final ConcurrentLinkedDeque<PoolEntry> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger allocated = new AtomicInteger();
+        private volatile int max;
+
+        RoutePool(HttpRoute route, int max)
+        {
+            this.route = route;
+            this.max = max;
+            this.permits = new ResizableSemaphore(max);
+        }
+
+        /**
+         * 先查找状态相同的空闲连接，再查找没有状态的空闲连接，与PoolingHttpClientConnectionManager一致
+         */
+        PoolEntry takeIdle(Object state)
+        {
+            for (PoolEntry entry : idle)
+            {
+                if (Objects.equals(entry.state, state) && idle.remove(entry))
+                {
+                    return entry;
+                }
+            }
+            if (state != null)
+            {
+                for (PoolEntry entry : idle)
+                {
+                    if (entry.state == null && idle.remove(entry))
+                    {
+                        return entry;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 归还路由与连接池的许可
+         */
+        void release()
+        {
+            totalPermits.release();
+            signal(totalWaiters);
+            releaseRoute();
+        }
+
+        /**
+         * 只归还路由的许可
+         */
+        void releaseRoute()
+        {
+            permits.release();
+            signal(waiters);
+        }
+
+        synchronized void resize(int max)
+        {
+            permits.resize(max - this.max);
+            this.max = max;
+            signal(waiters);
+            PoolEntry entry;
+            while (allocated.get() > max && (entry = idle.pollLast()) != null)
+            {
+                close(entry);
+            }
+        }
+    }
+
+    /**
+     * 连接池中的一个连接，租出时只由租用的线程访问
+     */
+    private static class PoolEntry
+    {
+        private final RoutePool pool;
+        private final ManagedHttpClientConnection connection;
+        private final long validityDeadline;
+
+        private volatile Object state;
+        private volatile long updated;
+        private volatile long expiry;
+        private volatile boolean routeComplete = false;
+
+        PoolEntry(RoutePool pool, ManagedHttpClientConnection connection, long created, long timeToLive)
+        {
+            this.pool = pool;
+            this.connection = connection;
+            this.updated = created;
+            this.validityDeadline = timeToLive > 0 ? created + timeToLive : Long.MAX_VALUE;
+            this.expiry = this.validityDeadline;
+        }
+
+        void updateExpiry(long keepalive, TimeUnit unit)
+        {
+            long now = System.currentTimeMillis();
+            long newExpiry = keepalive > 0 ? now + unit.toMillis(keepalive) : Long.MAX_VALUE;
+            this.updated = now;
+            this.expiry = Math.min(newExpiry, validityDeadline);
+        }
+
+        boolean isExpired(long now)
+        {
+            return now >= expiry;
+        }
+    }
+
+    /**
+     * 可以调整许可数量的信号量，调小时已经发出的许可在归还后不再发出
+     */
+    private static class ResizableSemaphore extends Semaphore
+    {
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore(int permits)
+        {
+            super(permits);
+        }
+
+        void resize(int delta)
+        {
+            if (delta > 0)
+            {
+                release(delta);
+            }
+            else if (delta < 0)
+            {
+                reducePermits(-delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package xin.tomdonkey.util.http.common.deadline;
+
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import xin.tomdonkey.util.http.common.exception.DeadlineExceededException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次调用的截止时间，覆盖限流等待，连接租用，所有重试及响应体的读取
+ *
+ * 截止时间保存在请求上下文中：
+ * 每次执行（包括重试）之前，interceptor()将连接租用，连接与读取超时缩短为不超过剩余时间，已经超过截止时间时抛出DeadlineExceededException
+ * 重试处理在剩余时间不足以完成退避等待时不再重试
+ * 超时只限制单次的阻塞，截止时间到达时由onExpiry注册的动作（如中止请求）结束仍在进行的请求或响应体的读取
+ *
+ * 每个Deadline只用于一次调用，调用结束后须调用cancel取消尚未执行的动作
+ *
+ * @author guolinyuan
+ */
+public class Deadline
+{
+    /**
+     * 请求上下文中保存截止时间的属性
+     */
+    public static final String CONTEXT_ATTRIBUTE = "xin.tomdonkey.util.http.deadline";
+
+    private final long deadlineNanos;
+
+    private final List<ScheduledFuture<?>> timers = new ArrayList<>(2);
+    private boolean cancelled = false;
+
+    private Deadline(long deadlineNanos)
+    {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从现在开始经过timeout后到期的截止时间
+     *
+     * @throws IllegalArgumentException timeout不大于0
+     */
+    public static Deadline after(long timeout, TimeUnit unit)
+    {
+        if (timeout <= 0)
+        {
+            throw new IllegalArgumentException("截止时间必须大于0：" + timeout);
+        }
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * 剩余时间，单位ns，已经到期时不大于0
+     */
+    public long remainingNanos()
+    {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * 剩余时间，单位ms，不足1ms的部分舍去，已经到期时不大于0
+     */
+    public long remainingMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean isExpired()
+    {
+        return remainingNanos() <= 0;
+    }
+
+    /**
+     * 截止时间到达时执行action，已经到期时立即在当前线程执行，调用cancel后不再执行
+     */
+    public synchronized void onExpiry(Runnable action)
+    {
+        if (cancelled)
+        {
+            return;
+        }
+        long remaining = remainingNanos();
+        if (remaining <= 0)
+        {
+            action.run();
+            return;
+        }
+        timers.add(Timer.INSTANCE.schedule(action, remaining, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * 调用结束，取消尚未执行的动作
+     */
+    public synchronized void cancel()
+    {
+        cancelled = true;
+        timers.forEach(timer -> timer.cancel(false));
+        timers.clear();
+    }
+
+    /**
+     * 将截止时间保存到请求上下文中
+     */
+    public void bind(HttpContext context)
+    {
+        context.setAttribute(CONTEXT_ATTRIBUTE, this);
+    }
+
+    /**
+     * 请求上下文中的截止时间
+     *
+     * @return 截止时间，不是带截止时间的调用时返回null
+     */
+    public static Deadline get(HttpContext context)
+    {
+        Object deadline = context.getAttribute(CONTEXT_ATTRIBUTE);
+        return deadline instanceof Deadline ? (Deadline) deadline : null;
+    }
+
+    /**
+     * 每次执行之前按剩余时间缩短请求配置中的超时，已经超过截止时间时抛出DeadlineExceededException
+     * 须加入客户端的请求拦截器，执行链在每次执行（包括重试）时都会调用
+     */
+    public static HttpRequestInterceptor interceptor()
+    {
+        return (request, context) ->
+        {
+            Deadline deadline = get(context);
+            if (deadline == null)
+            {
+                return;
+            }
+            long remaining = deadline.remainingMillis();
+            if (remaining <= 0)
+            {
+                throw new DeadlineExceededException("超过截止时间，不再发送请求：" + request.getRequestLine());
+            }
+            HttpClientContext clientContext = HttpClientContext.adapt(context);
+            clientContext.setRequestConfig(shrink(clientContext.getRequestConfig(), remaining));
+        };
+    }
+
+    /**
+     * 连接租用，连接与读取超时均不超过remaining，原有的超时为0或负数（不限制）时使用remaining
+     */
+    static RequestConfig shrink(RequestConfig config, long remaining)
+    {
+        int limit = (int) Math.min(remaining, Integer.MAX_VALUE);
+        return RequestConfig.copy(config)
+                .setConnectionRequestTimeout(shrink(config.getConnectionRequestTimeout(), limit))
+                .setConnectTimeout(shrink(config.getConnectTimeout(), limit))
+                .setSocketTimeout(shrink(config.getSocketTimeout(), limit))
+                .build();
+    }
+
+    private static int shrink(int timeout, int limit)
+    {
+        return timeout > 0 ? Math.min(timeout, limit) : limit;
+    }
+
+    /**
+     * 所有截止时间共用的定时器，按需创建，使用守护线程
+     */
+    private static class Timer
+    {
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, r ->
+        {
+            Thread thread = new Thread(r, "httpclient-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static
+        {
+            //大部分调用在截止时间之前结束，取消的任务立即移出队列
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package xin.tomdonkey.util.http.common.dns;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 带缓存的域名解析，同步与异步连接池建立新连接时使用
+ *
+ * 解析成功的结果缓存ttl，解析失败（UnknownHostException）的结果缓存negativeTtl，期间直接抛出相同的异常
+ * 缓存的结果经过ttl的80%后被访问时，在后台线程中提前刷新，请求不会等待到期后的同步解析
+ * 后台刷新失败时继续使用原有的结果，直到其过期
+ *
+ * 域名有多个地址（A/AAAA记录）时，每次返回的地址数组依次轮转
+ * 连接池按数组顺序尝试建立连接，新连接因此轮流落在各个地址上，而不是全部连接到第一个地址
+ *
+ * 注意JVM自身也会缓存解析结果（networkaddress.cache.ttl），ttl小于JVM的缓存时间时刷新得到的仍是JVM缓存的结果
+ *
+ * @author guolinyuan
+ */
+public class CachingDnsResolver implements DnsResolver, DisposableBean
+{
+    private static Logger logger = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+    /**
+     * 经过ttl的此比例后，访问时触发后台刷新
+     */
+    private static final double REFRESH_AHEAD = 0.8;
+
+    private final DnsResolver delegate;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private ExecutorService refresher;
+
+    /**
+     * @param ttl 解析成功的结果的缓存时间，单位s
+     * @param negativeTtl 解析失败的结果的缓存时间，单位s，为0时不缓存失败的结果
+     */
+    public CachingDnsResolver(long ttl, long negativeTtl)
+    {
+        this(SystemDefaultDnsResolver.INSTANCE, ttl, negativeTtl);
+    }
+
+    /**
+     * @param delegate 实际执行解析的DnsResolver
+     * @param ttl 解析成功的结果的缓存时间，单位s
+     * @param negativeTtl 解析失败的结果的缓存时间，单位s，为0时不缓存失败的结果
+     */
+    public CachingDnsResolver(DnsResolver delegate, long ttl, long negativeTtl)
+    {
+        if (ttl <= 0 || negativeTtl < 0)
+        {
+            throw new IllegalArgumentException("域名解析的缓存时间不合法：ttl=" + ttl + "，negativeTtl=" + negativeTtl);
+        }
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttl);
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtl);
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException
+    {
+        String key = host.toLowerCase(Locale.ROOT);
+        long now = System.nanoTime();
+        Entry entry = cache.get(key);
+        if (entry == null || now - entry.expiresAt >= 0)
+        {
+            entry = lookup(key, host);
+        }
+        else if (now - entry.refreshAt >= 0 && entry.refreshing.compareAndSet(false, true))
+        {
+            refreshAsync(key, host);
+        }
+        return entry.addresses();
+    }
+
+    /**
+     * 清除缓存，之后的解析重新查询
+     */
+    public void clear()
+    {
+        cache.clear();
+    }
+
+    /**
+     * 缓存的域名数，包括解析失败的域名
+     */
+    public int size()
+    {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized void destroy()
+    {
+        if (refresher != null)
+        {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    /**
+     * 同步解析并缓存结果，缓存过期时由请求线程调用
+     */
+    private Entry lookup(String key, String host)
+    {
+        Entry entry;
+        try
+        {
+            entry = new Entry(delegate.resolve(host), null, ttlNanos);
+        }
+        catch (UnknownHostException e)
+        {
+            entry = new Entry(null, e, negativeTtlNanos);
+        }
+        if (entry.error == null || negativeTtlNanos > 0)
+        {
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    private void refreshAsync(String key, String host)
+    {
+        try
+        {
+            refresher().execute(() ->
+            {
+                try
+                {
+                    cache.put(key, new Entry(delegate.resolve(host), null, ttlNanos));
+                    logger.debug("域名解析已刷新：" + host);
+                }
+                catch (UnknownHostException e)
+                {
+                    //刷新失败时继续使用原有的结果，直到其过期
+                    logger.debug("域名解析刷新失败，继续使用缓存的结果：" + host, e);
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("刷新域名解析时发生异常：" + host, e);
+                }
+                finally
+                {
+                    Entry current = cache.get(key);
+                    if (current != null)
+                    {
+                        current.refreshing.set(false);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.debug("刷新线程已关闭，不再刷新域名解析：" + host);
+        }
+    }
+
+    private synchronized ExecutorService refresher()
+    {
+        if (refresher == null)
+        {
+            refresher = Executors.newSingleThreadExecutor(r ->
+            {
+                Thread thread = new Thread(r, "httpclient-dns-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refresher;
+    }
+
+    /**
+     * 缓存的解析结果，error不为null时为解析失败的结果
+     */
+    private static class Entry
+    {
+        private final InetAddress[] addresses;
+        private final UnknownHostException error;
+        private final long expiresAt;
+        private final long refreshAt;
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(InetAddress[] addresses, UnknownHostException error, long ttlNanos)
+        {
+            long now = System.nanoTime();
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = now + ttlNanos;
+            this.refreshAt = error == null ? now + (long) (ttlNanos * REFRESH_AHEAD) : expiresAt;
+        }
+
+        /**
+         * 轮转后的地址数组副本，每次调用的第一个地址依次后移
+         */
+        InetAddress[] addresses() throws UnknownHostException
+        {
+            if (error != null)
+            {
+                UnknownHostException copy = new UnknownHostException(error.getMessage());
+                copy.initCause(error);
+                throw copy;
+            }
+            int length = addresses.length;
+            if (length <= 1)
+            {
+                return addresses.clone();
+            }
+            int start = Math.floorMod(cursor.getAndIncrement(), length);
+            InetAddress[] rotated = new InetAddress[length];
+            System.arraycopy(addresses, start, rotated, 0, length - start);
+            System.arraycopy(addresses, 0, rotated, length - start, start);
+            return rotated;
+        }
+    }
+}
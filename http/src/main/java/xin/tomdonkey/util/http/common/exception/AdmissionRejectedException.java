@@ -0,0 +1,16 @@
+package xin.tomdonkey.util.http.common.exception;
+
+/**
+ * 启用了准入控制，路由进行中的请求数已达到并发限制，且等待队列已满（或等待超时），请求被拒绝
+ *
+ * @author guolinyuan
+ */
+public class AdmissionRejectedException extends RequestRejectedException
+{
+    private static final long serialVersionUID = 1L;
+
+    public AdmissionRejectedException(String route)
+    {
+        super(route, "路由的并发已满，请求被准入控制拒绝：" + route);
+    }
+}
@@ -0,0 +1,16 @@
+package xin.tomdonkey.util.http.common.exception;
+
+/**
+ * 路由的熔断器处于打开状态，或处于半开状态且探测请求的名额已满，请求被快速失败
+ *
+ * @author guolinyuan
+ */
+public class CircuitBreakerOpenException extends RequestRejectedException
+{
+    private static final long serialVersionUID = 1L;
+
+    public CircuitBreakerOpenException(String route)
+    {
+        super(route, "熔断器已打开，请求被快速失败：" + route);
+    }
+}
@@ -0,0 +1,19 @@
+package xin.tomdonkey.util.http.common.exception;
+
+import java.io.InterruptedIOException;
+
+/**
+ * 带截止时间的请求在发送（或重试）之前已经超过截止时间
+ * 继承InterruptedIOException，重试处理不会重试此异常
+ *
+ * @author guolinyuan
+ */
+public class DeadlineExceededException extends InterruptedIOException
+{
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message)
+    {
+        super(message);
+    }
+}
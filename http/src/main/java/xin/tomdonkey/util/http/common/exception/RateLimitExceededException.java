@@ -0,0 +1,16 @@
+package xin.tomdonkey.util.http.common.exception;
+
+/**
+ * 路由配置了限流，且按限流方式无法获得许可，请求被拒绝
+ *
+ * @author guolinyuan
+ */
+public class RateLimitExceededException extends RequestRejectedException
+{
+    private static final long serialVersionUID = 1L;
+
+    public RateLimitExceededException(String route)
+    {
+        super(route, "超过路由的限流，请求被拒绝：" + route);
+    }
+}
@@ -0,0 +1,31 @@
+package xin.tomdonkey.util.http.common.exception;
+
+/**
+ * 请求在发送之前被客户端拒绝，请求没有到达远程服务，也没有占用连接
+ * 熔断，限流等客户端保护机制拒绝请求时抛出其子类
+ *
+ * 同步的请求方法在请求被拒绝时与其他异常一样返回null并打印日志，sendSynHttpRequestOrThrow抛出此异常
+ * 异步的请求方法以此异常异常完成，批量请求将其记录在对应的结果中
+ *
+ * @author guolinyuan
+ */
+public class RequestRejectedException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String route;
+
+    public RequestRejectedException(String route, String message)
+    {
+        super(message);
+        this.route = route;
+    }
+
+    /**
+     * 被拒绝的请求所在的路由，格式为host:port
+     */
+    public String getRoute()
+    {
+        return route;
+    }
+}
@@ -0,0 +1,202 @@
+package xin.tomdonkey.util.http.common.hedge;
+
+import org.springframework.beans.factory.DisposableBean;
+import xin.tomdonkey.util.http.common.metrics.Histogram;
+import xin.tomdonkey.util.http.common.retry.RetryBudget;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对冲请求的策略
+ *
+ * 幂等的GET请求在delay内没有收到响应时，在另一个连接上发送一个相同的请求，先收到的响应被使用，另一个请求被中止
+ * 少数慢副本造成的长尾延迟因此被截断，代价是少量额外的请求
+ *
+ * delay按路由观察到的延迟百分位数（如p95）计算，样本不足时使用固定的延迟
+ * 观察窗口按样本数轮换，最近的WINDOW_SAMPLES个请求决定延迟，下游的延迟变化后延迟随之调整
+ * 对冲请求的数量受独立的预算限制，不超过请求数的固定比例，下游整体变慢时对冲不会成倍放大压力
+ *
+ * @author guolinyuan
+ */
+public class HedgingPolicy implements DisposableBean
+{
+    /**
+     * 观察窗口的样本数
+     */
+    static final int WINDOW_SAMPLES = 1000;
+
+    /**
+     * 按百分位数计算延迟所需的最少样本数
+     */
+    static final int MIN_SAMPLES = 100;
+
+    private final boolean enabled;
+    private final long delayNanos;
+    private final long minDelayNanos;
+    private final double percentile;
+    private final RetryBudget budget;
+
+    private final ConcurrentHashMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService timer;
+    private ExecutorService executor;
+
+    /**
+     * @param enabled 是否启用对冲请求
+     * @param delay 样本不足时发送对冲请求的延迟，单位ms
+     * @param minDelay 按百分位数计算的延迟的下限，单位ms
+     * @param percentile 计算延迟使用的百分位数，单位%，不大于0时总是使用固定的延迟
+     * @param budget 对冲请求的预算
+     */
+    public HedgingPolicy(boolean enabled, long delay, long minDelay, double percentile, RetryBudget budget)
+    {
+        this.enabled = enabled;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelay);
+        this.percentile = percentile / 100;
+        this.budget = budget;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * 路由当前发送对冲请求的延迟
+     *
+     * @param route 路由名，格式为host:port
+     * @return 延迟，单位ns
+     */
+    public long delayNanos(String route)
+    {
+        if (percentile <= 0)
+        {
+            return delayNanos;
+        }
+        LatencyWindow window = windows.get(route);
+        long observed = window == null ? -1 : window.percentile(percentile);
+        return observed < 0 ? delayNanos : Math.max(minDelayNanos, observed);
+    }
+
+    /**
+     * 记录一次收到响应的耗时
+     *
+     * @param route 路由名，格式为host:port
+     * @param nanos 从发送请求到收到响应头的耗时，单位ns
+     */
+    public void record(String route, long nanos)
+    {
+        windows.computeIfAbsent(route, k -> new LatencyWindow()).record(nanos);
+    }
+
+    /**
+     * 可以对冲的请求发送前调用，为预算增加额度
+     */
+    public void onRequest()
+    {
+        budget.deposit();
+    }
+
+    /**
+     * 尝试使用一次对冲请求的额度
+     */
+    public boolean tryHedge()
+    {
+        return budget.tryWithdraw();
+    }
+
+    /**
+     * 到达延迟时触发对冲的定时线程，第一次使用时创建
+     */
+    public synchronized ScheduledExecutorService getTimer()
+    {
+        if (timer == null)
+        {
+            timer = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "httpclient-hedge-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * 发送对冲请求的线程池，对冲请求是阻塞的同步请求，线程数随同时进行中的对冲请求数伸缩
+     */
+    public synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newCachedThreadPool(r ->
+            {
+                Thread thread = new Thread(r, "httpclient-hedge");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    @Override
+    public synchronized void destroy()
+    {
+        if (timer != null)
+        {
+            timer.shutdownNow();
+            timer = null;
+        }
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 按样本数轮换的延迟观察窗口
+     * 当前窗口满WINDOW_SAMPLES个样本后成为上一个窗口，百分位数优先取自完整的上一个窗口
+     */
+    private static class LatencyWindow
+    {
+        private volatile Histogram current = new Histogram();
+        private volatile Histogram previous;
+
+        void record(long nanos)
+        {
+            Histogram histogram = current;
+            histogram.record(nanos);
+            if (histogram.getCount() >= WINDOW_SAMPLES)
+            {
+                synchronized (this)
+                {
+                    if (current == histogram)
+                    {
+                        previous = histogram;
+                        current = new Histogram();
+                    }
+                }
+            }
+        }
+
+        long percentile(double quantile)
+        {
+            Histogram histogram = previous;
+            if (histogram == null)
+            {
+                histogram = current;
+                if (histogram.getCount() < MIN_SAMPLES)
+                {
+                    return -1;
+                }
+            }
+            return histogram.getPercentile(quantile);
+        }
+    }
+}
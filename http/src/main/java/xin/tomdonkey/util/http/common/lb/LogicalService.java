@@ -0,0 +1,233 @@
+package xin.tomdonkey.util.http.common.lb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 逻辑服务：一个服务名对应多个基础地址，每次请求按负载均衡策略选择其中一个实例
+ *
+ * 负载均衡使用两次随机选择（power of two choices）：随机取两个可用的实例，选择负载较低的一个
+ * 比每次选择全局最优的实例更不容易让所有调用方同时涌向同一个实例
+ * LEAST_OUTSTANDING：负载为进行中的请求数
+ * EWMA：负载为响应耗时的EWMA乘以(进行中的请求数 + 1)，变慢的实例会自动少分到请求
+ * EWMA在读取时按距上一个样本的时间衰减，没有样本的实例以其他实例的平均值作为初始值
+ *
+ * 被动摘除：实例连续失败（io异常或5xx响应）达到ejectAfterFailures次后被摘除ejectionTime，期间不再分配请求
+ * 被摘除的实例不超过总数的maxEjectedPercent，所有实例均不可用时忽略摘除状态，仍然在全部实例中选择
+ *
+ * @author guolinyuan
+ */
+public class LogicalService
+{
+    public enum Strategy
+    {
+        LEAST_OUTSTANDING, EWMA;
+
+        /**
+         * 解析least-outstanding与ewma，不区分大小写
+         *
+         * @throws IllegalArgumentException 无法识别的策略
+         */
+        public static Strategy parse(String value)
+        {
+            String strategy = value.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "");
+            switch (strategy)
+            {
+                case "leastoutstanding":
+                    return LEAST_OUTSTANDING;
+                case "ewma":
+                    return EWMA;
+                default:
+                    throw new IllegalArgumentException("负载均衡策略只能为least-outstanding或ewma：" + value);
+            }
+        }
+    }
+
+    private final String name;
+    private final List<ServiceInstance> instances;
+    private final Strategy strategy;
+    private final Settings settings;
+
+    public LogicalService(String name, List<String> baseUrls, Strategy strategy, Settings settings)
+    {
+        List<ServiceInstance> instances = new ArrayList<>();
+        if (baseUrls != null)
+        {
+            for (String url : baseUrls)
+            {
+                if (!url.trim().isEmpty())
+                {
+                    instances.add(new ServiceInstance(url));
+                }
+            }
+        }
+        if (instances.isEmpty())
+        {
+            throw new IllegalArgumentException("逻辑服务至少需要一个地址：" + name);
+        }
+        this.name = name;
+        this.instances = Collections.unmodifiableList(instances);
+        this.strategy = strategy;
+        this.settings = settings;
+    }
+
+    /**
+     * 按负载均衡策略选择一个实例，并将其进行中的请求数加一
+     * 请求完成后必须调用onComplete
+     */
+    public ServiceInstance choose()
+    {
+        List<ServiceInstance> candidates = available();
+        ServiceInstance chosen;
+        if (candidates.size() == 1)
+        {
+            chosen = candidates.get(0);
+        }
+        else
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(candidates.size());
+            int second = random.nextInt(candidates.size() - 1);
+            if (second >= first)
+            {
+                second++;
+            }
+            ServiceInstance a = candidates.get(first);
+            ServiceInstance b = candidates.get(second);
+            long now = System.nanoTime();
+            chosen = load(b, now) < load(a, now) ? b : a;
+        }
+        chosen.onStart();
+        return chosen;
+    }
+
+    /**
+     * 请求完成后调用，记录耗时与结果，连续失败达到阈值时摘除实例
+     *
+     * @param nanos 从发送请求到收到响应头的耗时，单位ns
+     * @param failure 请求是否失败
+     * @return 实例是否因此被摘除
+     */
+    public boolean onComplete(ServiceInstance instance, long nanos, boolean failure)
+    {
+        int failures = instance.onComplete(nanos, failure, settings.ewmaDecayNanos);
+        if (failures < settings.ejectAfterFailures || instance.isEjected())
+        {
+            return false;
+        }
+        synchronized (this)
+        {
+            long ejected = instances.stream().filter(ServiceInstance::isEjected).count();
+            if ((ejected + 1) * 100 > (long) settings.maxEjectedPercent * instances.size())
+            {
+                return false;
+            }
+            instance.eject(settings.ejectionNanos);
+            return true;
+        }
+    }
+
+    /**
+     * 请求没有发出（如被熔断或限流拒绝，或者构造请求失败）时调用，只减少进行中的请求数，不记录结果
+     */
+    public void release(ServiceInstance instance)
+    {
+        instance.release();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public Strategy getStrategy()
+    {
+        return strategy;
+    }
+
+    public List<ServiceInstance> getInstances()
+    {
+        return instances;
+    }
+
+    private List<ServiceInstance> available()
+    {
+        List<ServiceInstance> available = new ArrayList<>(instances.size());
+        for (ServiceInstance instance : instances)
+        {
+            if (!instance.isEjected())
+            {
+                available.add(instance);
+            }
+        }
+        return available.isEmpty() ? instances : available;
+    }
+
+    private double load(ServiceInstance instance, long now)
+    {
+        if (strategy == Strategy.LEAST_OUTSTANDING)
+        {
+            return instance.getOutstanding();
+        }
+        double ewma = instance.getEwma(now, settings.ewmaDecayNanos);
+        if (ewma < 0)
+        {
+            //新实例以平均值作为初始值，不会因为耗时为0而涌入所有请求
+            ewma = meanEwma(now);
+        }
+        //所有实例均没有样本时，退化为比较进行中的请求数
+        return ewma < 0 ? instance.getOutstanding() : ewma * (instance.getOutstanding() + 1);
+    }
+
+    /**
+     * 有样本的实例衰减后EWMA的平均值，均没有样本时返回-1
+     */
+    private double meanEwma(long now)
+    {
+        double sum = 0;
+        int count = 0;
+        for (ServiceInstance instance : instances)
+        {
+            double ewma = instance.getEwma(now, settings.ewmaDecayNanos);
+            if (ewma >= 0)
+            {
+                sum += ewma;
+                count++;
+            }
+        }
+        return count == 0 ? -1 : sum / count;
+    }
+
+    /**
+     * 被动摘除与EWMA的参数，所有逻辑服务共用
+     */
+    public static class Settings
+    {
+        private final int ejectAfterFailures;
+        private final long ejectionNanos;
+        private final int maxEjectedPercent;
+        private final long ewmaDecayNanos;
+
+        /**
+         * @param ejectAfterFailures 连续失败多少次后摘除实例
+         * @param ejectionTime 摘除的基础时间，单位ms
+         * @param maxEjectedPercent 同时被摘除的实例占总数的最大百分比
+         * @param ewmaDecay EWMA的时间常数，单位ms
+         */
+        public Settings(int ejectAfterFailures, long ejectionTime, int maxEjectedPercent, long ewmaDecay)
+        {
+            if (ejectAfterFailures <= 0 || ewmaDecay <= 0)
+            {
+                throw new IllegalArgumentException("摘除的连续失败次数与EWMA的时间常数必须大于0");
+            }
+            this.ejectAfterFailures = ejectAfterFailures;
+            this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionTime);
+            this.maxEjectedPercent = maxEjectedPercent;
+            this.ewmaDecayNanos = TimeUnit.MILLISECONDS.toNanos(ewmaDecay);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package xin.tomdonkey.util.http.common.lb;
+
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 逻辑服务的一个实例，即一个基础地址
+ * 记录进行中的请求数，响应耗时的指数加权移动平均（EWMA），以及被动摘除的状态
+ *
+ * @author guolinyuan
+ */
+public class ServiceInstance
+{
+    private final String baseUrl;
+    private final String route;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * 响应耗时的EWMA，单位ns，没有样本时为0
+     */
+    private double ewma;
+    private long lastSample;
+
+    private int consecutiveFailures;
+    private int ejections;
+
+    /**
+     * 摘除结束的时间，System.nanoTime()，未被摘除时为0
+     */
+    private volatile long ejectedUntil;
+
+    /**
+     * @param baseUrl 基础地址，如 http://10.0.0.1:8080/api，末尾的/会被去掉
+     */
+    public ServiceInstance(String baseUrl)
+    {
+        String url = baseUrl.trim();
+        while (url.endsWith("/"))
+        {
+            url = url.substring(0, url.length() - 1);
+        }
+        this.baseUrl = url;
+        this.route = HttpClientMetrics.routeName(URI.create(url));
+    }
+
+    /**
+     * 拼接基础地址与路径
+     *
+     * @param path 以/开头的路径，可以带查询参数，不以/开头时自动补上
+     */
+    public String resolve(String path)
+    {
+        if (path == null || path.isEmpty())
+        {
+            return baseUrl;
+        }
+        return path.startsWith("/") ? baseUrl + path : baseUrl + "/" + path;
+    }
+
+    public String getBaseUrl()
+    {
+        return baseUrl;
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    public int getOutstanding()
+    {
+        return outstanding.get();
+    }
+
+    public synchronized double getEwma()
+    {
+        return ewma;
+    }
+
+    /**
+     * 按距上一个样本的时间衰减后的EWMA，没有新样本时逐渐趋近于0
+     * 变慢后分不到请求的实例不会一直保持较高的负载，一段时间后会重新分到请求以更新耗时
+     *
+     * @param now 当前时间，System.nanoTime()
+     * @param decayNanos EWMA的时间常数
+     * @return 衰减后的EWMA，单位ns，没有样本时返回-1
+     */
+    synchronized double getEwma(long now, long decayNanos)
+    {
+        if (lastSample == 0)
+        {
+            return -1;
+        }
+        return ewma * Math.exp(-(double) Math.max(0, now - lastSample) / decayNanos);
+    }
+
+    /**
+     * 是否处于摘除状态
+     */
+    public boolean isEjected()
+    {
+        long until = ejectedUntil;
+        return until != 0 && System.nanoTime() - until < 0;
+    }
+
+    void onStart()
+    {
+        outstanding.incrementAndGet();
+    }
+
+    void release()
+    {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * 请求完成，更新EWMA与连续失败数
+     *
+     * @param decayNanos EWMA的时间常数，距上一个样本的时间越长，旧的平均值权重越小
+     * @return 本次请求后连续失败的次数
+     */
+    synchronized int onComplete(long nanos, boolean failure, long decayNanos)
+    {
+        outstanding.decrementAndGet();
+        long now = System.nanoTime();
+        if (lastSample == 0)
+        {
+            ewma = nanos;
+        }
+        else
+        {
+            double weight = Math.exp(-(double) Math.max(0, now - lastSample) / decayNanos);
+            ewma = ewma * weight + nanos * (1 - weight);
+        }
+        lastSample = now;
+        if (failure)
+        {
+            return ++consecutiveFailures;
+        }
+        consecutiveFailures = 0;
+        ejections = 0;
+        return 0;
+    }
+
+    /**
+     * 摘除实例，连续被摘除时摘除时间成倍增加，不超过baseNanos的8倍
+     */
+    synchronized void eject(long baseNanos)
+    {
+        ejections = Math.min(ejections + 1, 8);
+        consecutiveFailures = 0;
+        ejectedUntil = System.nanoTime() + baseNanos * ejections;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ServiceInstance{" + baseUrl + ", outstanding=" + outstanding.get() + ", ejected=" + isEjected() + "}";
+    }
+}
@@ -0,0 +1,44 @@
+package xin.tomdonkey.util.http.common.lb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * httpclient.services.服务名.* 下的配置，如：
+ * httpclient.services.user.urls=http://10.0.0.1:8080,http://10.0.0.2:8080
+ * httpclient.services.user.strategy=ewma
+ *
+ * @author guolinyuan
+ */
+public class ServiceProperties
+{
+    /**
+     * 服务各个实例的基础地址
+     */
+    private List<String> urls = new ArrayList<>();
+
+    /**
+     * 负载均衡策略，least-outstanding或ewma
+     */
+    private String strategy = "least-outstanding";
+
+    public List<String> getUrls()
+    {
+        return urls;
+    }
+
+    public void setUrls(List<String> urls)
+    {
+        this.urls = urls;
+    }
+
+    public String getStrategy()
+    {
+        return strategy;
+    }
+
+    public void setStrategy(String strategy)
+    {
+        this.strategy = strategy;
+    }
+}
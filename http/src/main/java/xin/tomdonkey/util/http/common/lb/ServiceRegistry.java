@@ -0,0 +1,68 @@
+package xin.tomdonkey.util.http.common.lb;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按服务名管理逻辑服务，由httpclient.services.*的配置创建
+ *
+ * @author guolinyuan
+ */
+public class ServiceRegistry
+{
+    private static Logger logger = LoggerFactory.getLogger(ServiceRegistry.class);
+
+    private final Map<String, LogicalService> services;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * @param properties 服务名到配置的映射
+     * @param settings 所有服务共用的摘除与EWMA参数
+     * @throws IllegalArgumentException 配置不合法
+     */
+    public ServiceRegistry(Map<String, ServiceProperties> properties, LogicalService.Settings settings, HttpClientMetrics metrics)
+    {
+        Map<String, LogicalService> services = new LinkedHashMap<>();
+        properties.forEach((name, service) -> services.put(name,
+                new LogicalService(name, service.getUrls(), LogicalService.Strategy.parse(service.getStrategy()), settings)));
+        this.services = Collections.unmodifiableMap(services);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取逻辑服务
+     *
+     * @return 逻辑服务，未配置时返回null
+     */
+    public LogicalService get(String name)
+    {
+        return services.get(name);
+    }
+
+    /**
+     * 记录请求结果，实例被摘除时打印日志并记录度量
+     *
+     * @see LogicalService#onComplete(ServiceInstance, long, boolean)
+     */
+    public void onComplete(LogicalService service, ServiceInstance instance, long nanos, boolean failure)
+    {
+        if (service.onComplete(instance, nanos, failure))
+        {
+            logger.warn("服务实例连续失败，暂时摘除：" + service.getName() + " " + instance.getBaseUrl());
+            metrics.increment(HttpClientMetrics.SERVICE_INSTANCE_EJECTED, instance.getRoute(), 1);
+        }
+    }
+
+    /**
+     * 所有逻辑服务
+     */
+    public Map<String, LogicalService> getServices()
+    {
+        return services;
+    }
+}
@@ -0,0 +1,226 @@
+package xin.tomdonkey.util.http.common.limit;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁的令牌桶限流器
+ *
+ * 令牌桶以permitsPerSecond的速率生成许可，最多积攒burst个，空闲一段时间后允许burst个请求的突发
+ * 实现上不保存令牌数，只保存下一个许可可用的理论时间，获取许可时以CAS推进该时间，因此没有锁也没有后台线程
+ *
+ * 获取许可有三种方式：
+ * 阻塞直到获得许可（acquire），立即失败（tryAcquire），以及在超时时间内预约许可（tryAcquire(timeout, unit)）
+ * 预约成功的请求按预约的时间依次放行，请求被平滑地分散开，而不是在每秒开始时集中发出
+ *
+ * @author guolinyuan
+ */
+public class RateLimiter
+{
+    /**
+     * 获取不到许可时的处理方式
+     */
+    public enum Mode
+    {
+        /**
+         * 阻塞直到获得许可
+         */
+        BLOCK,
+
+        /**
+         * 立即失败
+         */
+        FAIL_FAST,
+
+        /**
+         * 在超时时间内可以获得许可时等待，否则立即失败
+         */
+        TIMEOUT;
+
+        /**
+         * 解析block，failfast，timeout，不区分大小写
+         *
+         * @throws IllegalArgumentException 无法识别的方式
+         */
+        public static Mode parse(String value)
+        {
+            String mode = value.trim().toLowerCase(Locale.ROOT).replace("_", "").replace("-", "");
+            switch (mode)
+            {
+                case "block":
+                    return BLOCK;
+                case "failfast":
+                    return FAIL_FAST;
+                case "timeout":
+                    return TIMEOUT;
+                default:
+                    throw new IllegalArgumentException("限流方式只能为block，failfast或timeout：" + value);
+            }
+        }
+    }
+
+    private final double permitsPerSecond;
+    private final int burst;
+
+    /**
+     * 生成一个许可的间隔，单位ns
+     */
+    private final long intervalNanos;
+
+    /**
+     * 桶满时可以提前使用的时间，即burst - 1个许可的间隔
+     */
+    private final long toleranceNanos;
+
+    /**
+     * 下一个许可可用的理论时间，System.nanoTime()，不晚于当前时间时桶是满的
+     */
+    private final AtomicLong nextFree;
+
+    /**
+     * @param permitsPerSecond 每秒生成的许可数，可以小于1
+     * @param burst 最多积攒的许可数，即允许的突发请求数
+     */
+    public RateLimiter(double permitsPerSecond, int burst)
+    {
+        if (permitsPerSecond <= 0 || burst <= 0)
+        {
+            throw new IllegalArgumentException("限流的每秒许可数与突发数必须大于0");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.nextFree = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 预约一个许可
+     * 需要等待的时间不超过maxWaitNanos时预约成功，调用方需要等待返回的时间后才能使用许可
+     * 超过时不预约，不消耗许可
+     *
+     * @param maxWaitNanos 愿意等待的最长时间，单位ns，0表示不等待
+     * @return 需要等待的时间，单位ns，0表示可以立即使用，-1表示预约失败
+     */
+    public long reserve(long maxWaitNanos)
+    {
+        while (true)
+        {
+            long now = System.nanoTime();
+            long next = nextFree.get();
+            long start = next - now > 0 ? next : now;
+            long wait = start - toleranceNanos - now;
+            if (wait < 0)
+            {
+                wait = 0;
+            }
+            if (wait > maxWaitNanos)
+            {
+                return -1;
+            }
+            if (nextFree.compareAndSet(next, start + intervalNanos))
+            {
+                return wait;
+            }
+        }
+    }
+
+    /**
+     * 阻塞直到获得许可
+     *
+     * @return 是否获得许可，等待时线程被中断时返回false，许可不会归还
+     */
+    public boolean acquire()
+    {
+        return pause(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * 立即获取许可，不等待
+     *
+     * @return 是否获得许可
+     */
+    public boolean tryAcquire()
+    {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * 在超时时间内可以获得许可时，等待并获得许可，否则立即返回
+     *
+     * @return 是否获得许可
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit)
+    {
+        long wait = reserve(unit.toNanos(timeout));
+        return wait >= 0 && pause(wait);
+    }
+
+    /**
+     * 按方式获取许可
+     *
+     * @param timeout 方式为TIMEOUT时的超时时间
+     * @return 是否获得许可
+     */
+    public boolean acquire(Mode mode, long timeout, TimeUnit unit)
+    {
+        switch (mode)
+        {
+            case BLOCK:
+                return acquire();
+            case FAIL_FAST:
+                return tryAcquire();
+            default:
+                return tryAcquire(timeout, unit);
+        }
+    }
+
+    public double getPermitsPerSecond()
+    {
+        return permitsPerSecond;
+    }
+
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    /**
+     * 当前可以立即使用的许可数，只用于观察
+     */
+    public int getAvailablePermits()
+    {
+        long ahead = nextFree.get() - System.nanoTime();
+        if (ahead <= 0)
+        {
+            return burst;
+        }
+        return ahead > toleranceNanos ? 0 : (int) ((toleranceNanos - ahead) / intervalNanos + 1);
+    }
+
+    /**
+     * 等待预约的许可，wait为-1时表示预约失败
+     */
+    static boolean pause(long wait)
+    {
+        if (wait < 0)
+        {
+            return false;
+        }
+        long deadline = System.nanoTime() + wait;
+        long remaining = wait;
+        while (remaining > 0)
+        {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted())
+            {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        return true;
+    }
+}
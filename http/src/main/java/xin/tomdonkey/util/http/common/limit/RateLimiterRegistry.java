@@ -0,0 +1,201 @@
+package xin.tomdonkey.util.http.common.limit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import xin.tomdonkey.util.http.common.config.RouteSpecs;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按路由配置的限流器
+ * 配置格式为 地址=每秒请求数:突发数:限流方式，逗号分隔，后两项可以省略，如：
+ * https://partner.example.com=20,http://quota.example.com:8080=5:10:failfast
+ *
+ * 突发数省略时为每秒请求数（至少为1），限流方式省略时使用默认的限流方式
+ * 未配置的路由不限流
+ *
+ * @author guolinyuan
+ */
+public class RateLimiterRegistry implements DisposableBean
+{
+    private static Logger logger = LoggerFactory.getLogger(RateLimiterRegistry.class);
+
+    private final Map<String, RateLimiter> limiters;
+    private final Map<String, RateLimiter.Mode> modes;
+    private final long timeoutNanos;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * 异步请求等待许可时用于延迟发送的线程，第一次需要延迟时创建
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param spec 按路由的限流配置，为空时不限流
+     * @param defaultMode 默认的限流方式
+     * @param timeout 限流方式为TIMEOUT时愿意等待的最长时间，单位ms
+     * @throws IllegalArgumentException 配置格式不合法
+     */
+    public RateLimiterRegistry(String spec, RateLimiter.Mode defaultMode, long timeout, HttpClientMetrics metrics)
+    {
+        Map<String, RateLimiter> limiters = new LinkedHashMap<>();
+        Map<String, RateLimiter.Mode> modes = new LinkedHashMap<>();
+        RouteSpecs.parseSpec(spec).forEach((url, value) ->
+        {
+            String route = key(RouteSpecs.toRoute(url).getTargetHost().toHostString());
+            String[] parts = value.split(":");
+            try
+            {
+                double permitsPerSecond = Double.parseDouble(parts[0].trim());
+                int burst = parts.length > 1 && !parts[1].trim().isEmpty()
+                        ? Integer.parseInt(parts[1].trim()) : Math.max(1, (int) permitsPerSecond);
+                limiters.put(route, new RateLimiter(permitsPerSecond, burst));
+                modes.put(route, parts.length > 2 ? RateLimiter.Mode.parse(parts[2]) : defaultMode);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("限流配置的格式应为 地址=每秒请求数:突发数:限流方式：" + url + "=" + value, e);
+            }
+        });
+        this.limiters = Collections.unmodifiableMap(limiters);
+        this.modes = Collections.unmodifiableMap(modes);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 获取路由的限流器
+     *
+     * @param route 路由名，格式为host:port
+     * @return 限流器，路由未配置限流时返回null
+     */
+    public RateLimiter get(String route)
+    {
+        return limiters.isEmpty() ? null : limiters.get(key(route));
+    }
+
+    /**
+     * 按路由配置的限流方式预约许可，不等待
+     *
+     * @param route 路由名，格式为host:port
+     * @return 需要等待的时间，单位ns，0表示可以立即发送（包括未配置限流的路由），-1表示请求被拒绝
+     */
+    public long reserve(String route)
+    {
+        return reserve(route, Long.MAX_VALUE);
+    }
+
+    /**
+     * 同reserve(String)，但等待时间不超过maxWait，用于带截止时间的调用
+     *
+     * @param maxWait 最长等待时间，单位ns
+     */
+    public long reserve(String route, long maxWait)
+    {
+        RateLimiter limiter = get(route);
+        if (limiter == null)
+        {
+            return 0;
+        }
+        long wait;
+        switch (modes.get(key(route)))
+        {
+            case BLOCK:
+                wait = limiter.reserve(Math.max(0, maxWait));
+                break;
+            case FAIL_FAST:
+                wait = limiter.reserve(0);
+                break;
+            default:
+                wait = limiter.reserve(Math.max(0, Math.min(timeoutNanos, maxWait)));
+                break;
+        }
+        if (wait < 0)
+        {
+            metrics.increment(HttpClientMetrics.RATE_LIMIT_REJECTED, route, 1);
+        }
+        else if (wait > 0)
+        {
+            metrics.recordTime(HttpClientMetrics.RATE_LIMIT_WAIT, route, wait);
+        }
+        return wait;
+    }
+
+    /**
+     * 按路由配置的限流方式获取许可，需要等待时阻塞当前线程
+     *
+     * @param route 路由名，格式为host:port
+     * @return 是否获得许可，请求被拒绝或等待时线程被中断时返回false
+     */
+    public boolean acquire(String route)
+    {
+        return RateLimiter.pause(reserve(route));
+    }
+
+    /**
+     * 同acquire(String)，但等待时间不超过maxWait
+     *
+     * @param maxWait 最长等待时间，单位ns
+     */
+    public boolean acquire(String route, long maxWait)
+    {
+        return RateLimiter.pause(reserve(route, maxWait));
+    }
+
+    /**
+     * 在等待预约的许可后执行task，用于不阻塞调用线程的异步请求
+     *
+     * @param delay 等待的时间，单位ns
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay)
+    {
+        return scheduler().schedule(task, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 所有配置了限流的路由及其限流器
+     */
+    public Map<String, RateLimiter> getLimiters()
+    {
+        return limiters;
+    }
+
+    @Override
+    public synchronized void destroy()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private synchronized ScheduledExecutorService scheduler()
+    {
+        if (scheduler == null)
+        {
+            logger.debug("创建异步请求的限流调度线程");
+            scheduler = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread thread = new Thread(r, "httpclient-rate-limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    private static String key(String route)
+    {
+        return route.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,93 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以2的幂为桶边界的无锁直方图，记录一次只需要几次LongAdder累加
+ * 百分位数的精度为所在桶的上界，即误差不超过2倍，足以用于定位延迟来源
+ *
+ * @author guolinyuan
+ */
+public class Histogram
+{
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram()
+    {
+        for (int i = 0; i < buckets.length; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+        //value落在[2^i, 2^(i+1))区间时计入第i个桶
+        buckets[value == 0 ? 0 : 63 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getSum()
+    {
+        return sum.sum();
+    }
+
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    public double getMean()
+    {
+        long c = getCount();
+        return c == 0 ? 0 : (double) getSum() / c;
+    }
+
+    /**
+     * 获取百分位数的近似值
+     *
+     * @param quantile 0到1之间的百分位，如0.99
+     * @return 该百分位所在桶的上界
+     */
+    public long getPercentile(double quantile)
+    {
+        long total = getCount();
+        if (total == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            seen += buckets[i].sum();
+            if (seen >= rank)
+            {
+                return Math.min(i == 63 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Histogram{count=" + getCount() + ", mean=" + getMean() + ", p50=" + getPercentile(0.5)
+                + ", p99=" + getPercentile(0.99) + ", max=" + getMax() + "}";
+    }
+}
@@ -0,0 +1,267 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import org.apache.http.conn.routing.RouteInfo;
+
+import java.net.URI;
+import java.util.function.Supplier;
+
+/**
+ * HttpClient的度量记录接口，屏蔽具体的度量实现
+ * 默认使用内存中的SimpleHttpClientMetrics，classpath中存在Micrometer时使用MicrometerHttpClientMetrics
+ *
+ * 实现类的每次记录都会出现在请求的主路径上，必须保证足够轻量且线程安全
+ *
+ * @author guolinyuan
+ */
+public interface HttpClientMetrics
+{
+    /**
+     * 等待连接池分配连接的耗时
+     */
+    String LEASE = "httpclient.lease";
+
+    /**
+     * 建立TCP连接（及TLS握手）的耗时
+     */
+    String CONNECT = "httpclient.connect";
+
+    /**
+     * 从开始发送请求到收到响应头的耗时
+     */
+    String TTFB = "httpclient.ttfb";
+
+    /**
+     * 读取响应体的耗时
+     */
+    String BODY_READ = "httpclient.body.read";
+
+    /**
+     * 将响应体转换为String，json或对象的耗时
+     */
+    String DECODE = "httpclient.decode";
+
+    /**
+     * 连接池中已被租用的连接数
+     */
+    String POOL_LEASED = "httpclient.pool.leased";
+
+    /**
+     * 连接池中正在等待连接的请求数
+     */
+    String POOL_PENDING = "httpclient.pool.pending";
+
+    /**
+     * 连接池中可用的空闲连接数
+     */
+    String POOL_AVAILABLE = "httpclient.pool.available";
+
+    /**
+     * 缓存命中，未访问远程服务
+     */
+    String CACHE_HIT = "httpclient.cache.hit";
+
+    /**
+     * 缓存未命中
+     */
+    String CACHE_MISS = "httpclient.cache.miss";
+
+    /**
+     * 缓存过期后经过条件请求验证，仍然使用缓存的响应
+     */
+    String CACHE_VALIDATED = "httpclient.cache.validated";
+
+    /**
+     * 缓存条目因容量限制被淘汰
+     */
+    String CACHE_EVICTION = "httpclient.cache.eviction";
+
+    /**
+     * 缓存在堆内存中占用的字节数
+     */
+    String CACHE_HEAP_BYTES = "httpclient.cache.heap.bytes";
+
+    /**
+     * 缓存在磁盘上占用的字节数
+     */
+    String CACHE_DISK_BYTES = "httpclient.cache.disk.bytes";
+
+    /**
+     * 发生的重试次数，包含io异常与429/503响应的重试
+     */
+    String RETRY = "httpclient.retry";
+
+    /**
+     * 因重试预算耗尽而放弃的重试次数
+     */
+    String RETRY_BUDGET_EXHAUSTED = "httpclient.retry.budget.exhausted";
+
+    /**
+     * 熔断器切换为打开状态的次数
+     */
+    String BREAKER_OPENED = "httpclient.breaker.opened";
+
+    /**
+     * 熔断器由半开状态恢复为关闭状态的次数
+     */
+    String BREAKER_CLOSED = "httpclient.breaker.closed";
+
+    /**
+     * 被熔断器快速失败的请求数
+     */
+    String BREAKER_REJECTED = "httpclient.breaker.rejected";
+
+    /**
+     * 等待限流许可的耗时，只记录需要等待的请求
+     */
+    String RATE_LIMIT_WAIT = "httpclient.ratelimit.wait";
+
+    /**
+     * 因超过限流被拒绝的请求数
+     */
+    String RATE_LIMIT_REJECTED = "httpclient.ratelimit.rejected";
+
+    /**
+     * 同步请求获取准入许可的耗时，包括在等待队列中的时间
+     */
+    String ADMISSION_WAIT = "httpclient.admission.wait";
+
+    /**
+     * 因并发已满且等待队列已满（或等待超时）被准入控制拒绝的请求数
+     */
+    String ADMISSION_REJECTED = "httpclient.admission.rejected";
+
+    /**
+     * 发送的对冲请求数
+     */
+    String HEDGE = "httpclient.hedge";
+
+    /**
+     * 对冲请求先于原始请求收到响应的次数
+     */
+    String HEDGE_WON = "httpclient.hedge.won";
+
+    /**
+     * 逻辑服务的实例因连续失败被摘除的次数，按实例的路由记录
+     */
+    String SERVICE_INSTANCE_EJECTED = "httpclient.service.instance.ejected";
+
+    /**
+     * 带截止时间的调用到达截止时间时仍未结束，进行中的请求被中止的次数
+     */
+    String DEADLINE_EXCEEDED = "httpclient.deadline.exceeded";
+
+    /**
+     * 经过压缩的请求体，压缩前的字节数
+     */
+    String REQUEST_BYTES_UNCOMPRESSED = "httpclient.request.bytes.uncompressed";
+
+    /**
+     * 经过压缩的请求体，压缩后实际发送的字节数
+     */
+    String REQUEST_BYTES_COMPRESSED = "httpclient.request.bytes.compressed";
+
+    /**
+     * 经过压缩的响应体，实际接收的字节数
+     */
+    String RESPONSE_BYTES_COMPRESSED = "httpclient.response.bytes.compressed";
+
+    /**
+     * 经过压缩的响应体，解压后的字节数
+     */
+    String RESPONSE_BYTES_UNCOMPRESSED = "httpclient.response.bytes.uncompressed";
+
+    /**
+     * 无法获知路由时使用的路由名
+     */
+    String UNKNOWN_ROUTE = "unknown";
+
+    /**
+     * 默认客户端连接池的连接池名，命名的客户端配置使用配置名
+     */
+    String DEFAULT_POOL = "default";
+
+    /**
+     * 不做任何记录的实现
+     */
+    HttpClientMetrics NOOP = new HttpClientMetrics()
+    {
+        @Override
+        public void recordTime(String name, String route, long nanos)
+        {
+        }
+
+        @Override
+        public void increment(String name, String route, long amount)
+        {
+        }
+
+        @Override
+        public void gauge(String name, Supplier<Number> supplier)
+        {
+        }
+    };
+
+    /**
+     * 记录一次耗时，以直方图的方式统计
+     *
+     * @param name 度量名
+     * @param route 路由名，通常为host:port
+     * @param nanos 耗时，单位ns
+     */
+    void recordTime(String name, String route, long nanos);
+
+    /**
+     * 计数器累加
+     *
+     * @param name 度量名
+     * @param route 路由名，通常为host:port
+     * @param amount 累加的数量
+     */
+    void increment(String name, String route, long amount);
+
+    /**
+     * 注册一个瞬时值，在读取度量时才调用supplier获取
+     *
+     * @param name 度量名
+     * @param supplier 瞬时值的提供者
+     */
+    void gauge(String name, Supplier<Number> supplier);
+
+    /**
+     * 注册一个连接池的瞬时值，连接池名用于区分默认客户端与各个命名的客户端配置的连接池
+     * 默认实现将连接池名拼接在度量名之后，作为一个独立的瞬时值注册
+     *
+     * @param name 度量名
+     * @param pool 连接池名，默认客户端为DEFAULT_POOL，命名的客户端配置为配置名
+     * @param supplier 瞬时值的提供者
+     */
+    default void gauge(String name, String pool, Supplier<Number> supplier)
+    {
+        gauge(name + "." + pool, supplier);
+    }
+
+    /**
+     * 获取用于度量的路由名
+     */
+    static String routeName(RouteInfo route)
+    {
+        return route == null ? UNKNOWN_ROUTE : route.getTargetHost().toHostString();
+    }
+
+    /**
+     * 根据请求地址获取用于度量的路由名，未指定端口时使用协议的默认端口，与routeName(RouteInfo)一致
+     */
+    static String routeName(URI uri)
+    {
+        if (uri == null || uri.getHost() == null)
+        {
+            return UNKNOWN_ROUTE;
+        }
+        int port = uri.getPort();
+        if (port < 0)
+        {
+            port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        }
+        return uri.getHost() + ":" + port;
+    }
+}
@@ -0,0 +1,108 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 记录连接租用等待耗时与建立连接耗时的连接池包装，其余操作直接委托给被包装的连接池
+ *
+ * @author guolinyuan
+ */
+public class InstrumentedHttpClientConnectionManager implements HttpClientConnectionManager
+{
+    private final HttpClientConnectionManager delegate;
+    private final HttpClientMetrics metrics;
+
+    public InstrumentedHttpClientConnectionManager(HttpClientConnectionManager delegate, HttpClientMetrics metrics)
+    {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state)
+    {
+        final ConnectionRequest request = delegate.requestConnection(route, state);
+        final String routeName = HttpClientMetrics.routeName(route);
+        return new ConnectionRequest()
+        {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException
+            {
+                long start = System.nanoTime();
+                try
+                {
+                    return request.get(timeout, tunit);
+                }
+                finally
+                {
+                    metrics.recordTime(HttpClientMetrics.LEASE, routeName, System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public boolean cancel()
+            {
+                return request.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            delegate.connect(conn, route, connectTimeout, context);
+        }
+        finally
+        {
+            metrics.recordTime(HttpClientMetrics.CONNECT, HttpClientMetrics.routeName(route), System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit)
+    {
+        delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException
+    {
+        delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException
+    {
+        delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit tunit)
+    {
+        delegate.closeIdleConnections(idletime, tunit);
+    }
+
+    @Override
+    public void closeExpiredConnections()
+    {
+        delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown()
+    {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,41 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+
+/**
+ * 记录从开始发送请求到收到响应头（time-to-first-byte）耗时的请求执行器
+ *
+ * @author guolinyuan
+ */
+public class InstrumentedHttpRequestExecutor extends HttpRequestExecutor
+{
+    private final HttpClientMetrics metrics;
+
+    public InstrumentedHttpRequestExecutor(HttpClientMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return super.execute(request, conn, context);
+        }
+        finally
+        {
+            String routeName = HttpClientMetrics.routeName(HttpClientContext.adapt(context).getHttpRoute());
+            metrics.recordTime(HttpClientMetrics.TTFB, routeName, System.nanoTime() - start);
+        }
+    }
+}
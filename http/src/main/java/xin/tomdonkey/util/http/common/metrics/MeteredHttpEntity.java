@@ -0,0 +1,131 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 记录响应体读取耗时的实体包装，只累计在read调用中花费的时间
+ * 响应流读取到末尾或被关闭时记录一次body-read耗时
+ *
+ * 响应的转换方法通过此实体获知路由名，记录decode耗时
+ *
+ * @author guolinyuan
+ */
+public class MeteredHttpEntity extends HttpEntityWrapper
+{
+    private final String route;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * 在read调用中累计花费的时间，单位ns
+     */
+    private volatile long readNanos = 0;
+
+    private boolean recorded = false;
+
+    public MeteredHttpEntity(HttpEntity wrappedEntity, String route, HttpClientMetrics metrics)
+    {
+        super(wrappedEntity);
+        this.route = route;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 将响应实体包装为MeteredHttpEntity的响应拦截器
+     * 应当作为最后一个拦截器添加，以便包含解压缩等其他拦截器的处理
+     */
+    public static HttpResponseInterceptor interceptor(HttpClientMetrics metrics)
+    {
+        return (response, context) ->
+        {
+            HttpEntity entity = response.getEntity();
+            if (entity != null)
+            {
+                String route = HttpClientMetrics.routeName(HttpClientContext.adapt(context).getHttpRoute());
+                response.setEntity(new MeteredHttpEntity(entity, route, metrics));
+            }
+        };
+    }
+
+    @Override
+    public InputStream getContent() throws IOException
+    {
+        return new FilterInputStream(super.getContent())
+        {
+            @Override
+            public int read() throws IOException
+            {
+                long start = System.nanoTime();
+                int b = super.read();
+                onRead(start, b == -1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                long start = System.nanoTime();
+                int n = super.read(b, off, len);
+                onRead(start, n == -1);
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    recordRead();
+                }
+            }
+        };
+    }
+
+    /**
+     * 记录一次转换耗时，转换过程中读取响应流的时间不计入
+     *
+     * @param startNanos 开始转换时的System.nanoTime()
+     */
+    public void recordDecode(long startNanos)
+    {
+        metrics.recordTime(HttpClientMetrics.DECODE, route, Math.max(0, System.nanoTime() - startNanos - readNanos));
+    }
+
+    public String getRoute()
+    {
+        return route;
+    }
+
+    public long getReadNanos()
+    {
+        return readNanos;
+    }
+
+    private void onRead(long start, boolean eof)
+    {
+        readNanos += System.nanoTime() - start;
+        if (eof)
+        {
+            recordRead();
+        }
+    }
+
+    private synchronized void recordRead()
+    {
+        if (!recorded)
+        {
+            recorded = true;
+            metrics.recordTime(HttpClientMetrics.BODY_READ, route, readNanos);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 将度量发布到Micrometer的实现，路由名作为route标签，连接池名作为pool标签
+ * Timer与Counter按 度量名 -> 路由名 缓存，避免每次记录都在MeterRegistry中查找
+ *
+ * @author guolinyuan
+ */
+public class MicrometerHttpClientMetrics implements HttpClientMetrics
+{
+    private final MeterRegistry registry;
+    private final Map<String, Map<String, Timer>> timers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Counter>> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Micrometer的Gauge只弱引用被观测的对象，此处保持强引用以免被回收
+     */
+    private final List<Supplier<Number>> gauges = new CopyOnWriteArrayList<>();
+
+    public MicrometerHttpClientMetrics(MeterRegistry registry)
+    {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordTime(String name, String route, long nanos)
+    {
+        timers.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, k -> Timer.builder(name)
+                        .tag("route", route)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void increment(String name, String route, long amount)
+    {
+        counters.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, k -> Counter.builder(name)
+                        .tag("route", route)
+                        .register(registry))
+                .increment(amount);
+    }
+
+    @Override
+    public void gauge(String name, Supplier<Number> supplier)
+    {
+        gauges.add(supplier);
+        Gauge.builder(name, supplier, s -> s.get().doubleValue()).register(registry);
+    }
+
+    @Override
+    public void gauge(String name, String pool, Supplier<Number> supplier)
+    {
+        gauges.add(supplier);
+        Gauge.builder(name, supplier, s -> s.get().doubleValue())
+                .tag("pool", pool)
+                .register(registry);
+    }
+}
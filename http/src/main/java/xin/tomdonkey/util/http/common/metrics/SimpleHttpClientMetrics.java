@@ -0,0 +1,86 @@
+package xin.tomdonkey.util.http.common.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 基于内存的度量实现，classpath中没有Micrometer时默认使用
+ * 按 度量名 -> 路由名 两级分别保存直方图与计数器，记录时不产生额外的对象
+ *
+ * @author guolinyuan
+ */
+public class SimpleHttpClientMetrics implements HttpClientMetrics
+{
+    private final Map<String, Map<String, Histogram>> timers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> counters = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Supplier<Number>>> poolGauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordTime(String name, String route, long nanos)
+    {
+        timers.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, k -> new Histogram())
+                .record(nanos);
+    }
+
+    @Override
+    public void increment(String name, String route, long amount)
+    {
+        counters.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(route, k -> new LongAdder())
+                .add(amount);
+    }
+
+    @Override
+    public void gauge(String name, Supplier<Number> supplier)
+    {
+        gauges.put(name, supplier);
+    }
+
+    @Override
+    public void gauge(String name, String pool, Supplier<Number> supplier)
+    {
+        poolGauges.computeIfAbsent(name, k -> new ConcurrentHashMap<>()).put(pool, supplier);
+    }
+
+    /**
+     * 获取指定度量各个路由的耗时直方图，单位ns
+     */
+    public Map<String, Histogram> getTimers(String name)
+    {
+        return Collections.unmodifiableMap(timers.getOrDefault(name, Collections.emptyMap()));
+    }
+
+    /**
+     * 获取指定度量在指定路由上的计数
+     */
+    public long getCount(String name, String route)
+    {
+        LongAdder adder = counters.getOrDefault(name, Collections.emptyMap()).get(route);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    /**
+     * 获取瞬时值，未注册时返回null
+     */
+    public Number getGauge(String name)
+    {
+        Supplier<Number> supplier = gauges.get(name);
+        return supplier == null ? null : supplier.get();
+    }
+
+    /**
+     * 获取指定连接池的瞬时值，未注册时返回null
+     *
+     * @param pool 连接池名，默认客户端为DEFAULT_POOL，命名的客户端配置为配置名
+     */
+    public Number getGauge(String name, String pool)
+    {
+        Supplier<Number> supplier = poolGauges.getOrDefault(name, Collections.emptyMap()).get(pool);
+        return supplier == null ? null : supplier.get();
+    }
+}
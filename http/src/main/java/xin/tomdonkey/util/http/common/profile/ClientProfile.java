@@ -0,0 +1,119 @@
+package xin.tomdonkey.util.http.common.profile;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xin.tomdonkey.util.http.common.config.ConnectionEvictor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 一个命名的客户端配置：独立的同步与异步连接池，客户端，超时，重试策略与keep-alive
+ * 不同配置之间不共用连接，一个配置的连接耗尽不会影响其他配置及默认客户端
+ *
+ * @author guolinyuan
+ */
+public class ClientProfile implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ClientProfile.class);
+
+    private final String name;
+    private final CloseableHttpClient client;
+    private final HttpClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient asyncClient;
+    private final PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private final RequestConfig requestConfig;
+    private final ConnectionEvictor evictor;
+    private final ConnectionEvictor asyncEvictor;
+
+    /**
+     * 创建后即启动两个连接池的后台回收器，异步客户端须已启动
+     *
+     * @param evictInterval 回收的执行间隔，单位s
+     * @param maxIdleTime 连接的最大空闲时间，单位s
+     */
+    public ClientProfile(String name, CloseableHttpClient client, HttpClientConnectionManager connectionManager,
+                         CloseableHttpAsyncClient asyncClient, PoolingNHttpClientConnectionManager asyncConnectionManager,
+                         RequestConfig requestConfig, long evictInterval, long maxIdleTime)
+    {
+        this.name = name;
+        this.client = client;
+        this.connectionManager = connectionManager;
+        this.asyncClient = asyncClient;
+        this.asyncConnectionManager = asyncConnectionManager;
+        this.requestConfig = requestConfig;
+        this.evictor = new ConnectionEvictor(connectionManager, evictInterval, maxIdleTime);
+        this.evictor.start();
+        this.asyncEvictor = new ConnectionEvictor(asyncConnectionManager, evictInterval, maxIdleTime);
+        this.asyncEvictor.start();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public CloseableHttpClient getClient()
+    {
+        return client;
+    }
+
+    public HttpClientConnectionManager getConnectionManager()
+    {
+        return connectionManager;
+    }
+
+    public CloseableHttpAsyncClient getAsyncClient()
+    {
+        return asyncClient;
+    }
+
+    public PoolingNHttpClientConnectionManager getAsyncConnectionManager()
+    {
+        return asyncConnectionManager;
+    }
+
+    public RequestConfig getRequestConfig()
+    {
+        return requestConfig;
+    }
+
+    /**
+     * 停止回收器，关闭客户端及其连接池
+     */
+    @Override
+    public void close()
+    {
+        evictor.shutdown();
+        asyncEvictor.shutdown();
+        try
+        {
+            client.close();
+        }
+        catch (IOException e)
+        {
+            logger.error("关闭客户端配置" + name + "的同步客户端时发生异常", e);
+        }
+        try
+        {
+            asyncClient.close();
+        }
+        catch (IOException e)
+        {
+            logger.error("关闭客户端配置" + name + "的异步客户端时发生异常", e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        Object pool = connectionManager instanceof ConnPoolControl ? ((ConnPoolControl<?>) connectionManager).getTotalStats() : connectionManager;
+        return "ClientProfile{" + name + ", pool=" + pool + "}";
+    }
+}
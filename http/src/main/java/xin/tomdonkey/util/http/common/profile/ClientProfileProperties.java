@@ -0,0 +1,207 @@
+package xin.tomdonkey.util.http.common.profile;
+
+/**
+ * httpclient.profiles.配置名.* 下的配置，如：
+ * httpclient.profiles.batch.connMaxTotal=20
+ * httpclient.profiles.batch.socketTimeout=60000
+ * 未配置的项（为null）使用httpclient.config.*中同名的默认配置
+ *
+ * @author guolinyuan
+ */
+public class ClientProfileProperties
+{
+    /**
+     * 连接池最大连接数
+     */
+    private Integer connMaxTotal;
+
+    /**
+     * 每个路由的最大连接数
+     */
+    private Integer maxPerRoute;
+
+    /**
+     * 按路由覆盖的最大连接数，格式同httpclient.config.routeMaxPerRoute，不继承默认配置
+     */
+    private String routeMaxPerRoute;
+
+    /**
+     * 连接存活时间，单位s
+     */
+    private Integer timeToLive;
+
+    /**
+     * 服务端未指定Keep-Alive时连接的保持时间，单位s
+     */
+    private Integer keepAliveTime;
+
+    /**
+     * 连接超时时间，单位ms
+     */
+    private Integer connectTimeout;
+
+    /**
+     * 从连接池获取连接的超时时间，单位ms
+     */
+    private Integer connectRequestTimeout;
+
+    /**
+     * sock超时时间，单位ms
+     */
+    private Integer socketTimeout;
+
+    /**
+     * 最大执行次数，包含第一次请求
+     */
+    private Integer retryTime;
+
+    /**
+     * 重试的基础退避时间，单位ms
+     */
+    private Long retryBaseDelay;
+
+    /**
+     * 重试的最大退避时间，单位ms
+     */
+    private Long retryMaxDelay;
+
+    /**
+     * 按路由覆盖的重试策略，格式同httpclient.config.routeRetryPolicy，不继承默认配置
+     */
+    private String routeRetryPolicy;
+
+    /**
+     * 异步客户端的IO线程数
+     */
+    private Integer ioThreadCount;
+
+    public Integer getConnMaxTotal()
+    {
+        return connMaxTotal;
+    }
+
+    public void setConnMaxTotal(Integer connMaxTotal)
+    {
+        this.connMaxTotal = connMaxTotal;
+    }
+
+    public Integer getMaxPerRoute()
+    {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(Integer maxPerRoute)
+    {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public String getRouteMaxPerRoute()
+    {
+        return routeMaxPerRoute;
+    }
+
+    public void setRouteMaxPerRoute(String routeMaxPerRoute)
+    {
+        this.routeMaxPerRoute = routeMaxPerRoute;
+    }
+
+    public Integer getTimeToLive()
+    {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Integer timeToLive)
+    {
+        this.timeToLive = timeToLive;
+    }
+
+    public Integer getKeepAliveTime()
+    {
+        return keepAliveTime;
+    }
+
+    public void setKeepAliveTime(Integer keepAliveTime)
+    {
+        this.keepAliveTime = keepAliveTime;
+    }
+
+    public Integer getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Integer connectTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Integer getConnectRequestTimeout()
+    {
+        return connectRequestTimeout;
+    }
+
+    public void setConnectRequestTimeout(Integer connectRequestTimeout)
+    {
+        this.connectRequestTimeout = connectRequestTimeout;
+    }
+
+    public Integer getSocketTimeout()
+    {
+        return socketTimeout;
+    }
+
+    public void setSocketTimeout(Integer socketTimeout)
+    {
+        this.socketTimeout = socketTimeout;
+    }
+
+    public Integer getRetryTime()
+    {
+        return retryTime;
+    }
+
+    public void setRetryTime(Integer retryTime)
+    {
+        this.retryTime = retryTime;
+    }
+
+    public Long getRetryBaseDelay()
+    {
+        return retryBaseDelay;
+    }
+
+    public void setRetryBaseDelay(Long retryBaseDelay)
+    {
+        this.retryBaseDelay = retryBaseDelay;
+    }
+
+    public Long getRetryMaxDelay()
+    {
+        return retryMaxDelay;
+    }
+
+    public void setRetryMaxDelay(Long retryMaxDelay)
+    {
+        this.retryMaxDelay = retryMaxDelay;
+    }
+
+    public String getRouteRetryPolicy()
+    {
+        return routeRetryPolicy;
+    }
+
+    public void setRouteRetryPolicy(String routeRetryPolicy)
+    {
+        this.routeRetryPolicy = routeRetryPolicy;
+    }
+
+    public Integer getIoThreadCount()
+    {
+        return ioThreadCount;
+    }
+
+    public void setIoThreadCount(Integer ioThreadCount)
+    {
+        this.ioThreadCount = ioThreadCount;
+    }
+}
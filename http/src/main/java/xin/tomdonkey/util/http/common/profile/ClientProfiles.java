@@ -0,0 +1,47 @@
+package xin.tomdonkey.util.http.common.profile;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按名称管理由httpclient.profiles.*创建的客户端配置，随容器关闭
+ *
+ * @see xin.tomdonkey.util.http.common.utils.HttpUtil#profile(String)
+ * @author guolinyuan
+ */
+public class ClientProfiles implements DisposableBean
+{
+    private final Map<String, ClientProfile> profiles;
+
+    public ClientProfiles(Map<String, ClientProfile> profiles)
+    {
+        this.profiles = Collections.unmodifiableMap(new LinkedHashMap<>(profiles));
+    }
+
+    /**
+     * 获取客户端配置
+     *
+     * @return 客户端配置，未配置时返回null
+     */
+    public ClientProfile get(String name)
+    {
+        return profiles.get(name);
+    }
+
+    /**
+     * 所有客户端配置
+     */
+    public Map<String, ClientProfile> getProfiles()
+    {
+        return profiles;
+    }
+
+    @Override
+    public void destroy()
+    {
+        profiles.values().forEach(ClientProfile::close);
+    }
+}
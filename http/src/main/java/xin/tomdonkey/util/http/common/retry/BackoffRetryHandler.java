@@ -0,0 +1,181 @@
+package xin.tomdonkey.util.http.common.retry;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xin.tomdonkey.util.http.common.deadline.Deadline;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+
+/**
+ * 带指数退避与重试预算的io异常重试处理
+ *
+ * 可以重试的异常：
+ * 连接超时（ConnectTimeoutException），请求尚未到达服务端
+ * 服务端未响应即关闭连接（NoHttpResponseException），通常是连接池中的连接已被服务端关闭
+ * 其他io异常中，幂等的请求，或请求尚未发送完毕的请求
+ *
+ * 不重试的异常：
+ * 读取超时（SocketTimeoutException）等其他InterruptedIOException，请求已经到达服务端，下游变慢时重试只会加重其负担
+ * 未知主机（UnknownHostException），SSL异常（SSLException）
+ *
+ * 重试前按路由的策略退避随机的时间，并从客户端共用的重试预算中扣除额度，预算耗尽时不再重试
+ * 带截止时间的调用，剩余时间不足以完成退避等待时不再重试
+ *
+ * 最大执行次数按一次调用的总执行次数计算，与429/503的重试共用
+ * RetryExec被ServiceUnavailableRetryExec包装，每次429/503重试都会重新开始计数，因此不使用其传入的executionCount，
+ * 而是由attemptInterceptor在请求上下文中记录实际的执行次数
+ *
+ * @author guolinyuan
+ */
+public class BackoffRetryHandler implements HttpRequestRetryHandler
+{
+    private static Logger logger = LoggerFactory.getLogger(BackoffRetryHandler.class);
+
+    /**
+     * 请求上下文中记录本次调用已经执行次数的属性，包括io异常与429/503的重试
+     */
+    public static final String ATTEMPTS_ATTRIBUTE = "xin.tomdonkey.util.http.attempts";
+
+    private final RetryPolicy.Routes policies;
+    private final RetryBudget budget;
+    private final HttpClientMetrics metrics;
+
+    public BackoffRetryHandler(RetryPolicy.Routes policies, RetryBudget budget, HttpClientMetrics metrics)
+    {
+        this.policies = policies;
+        this.budget = budget;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 记录执行次数，并为重试预算记录请求数的请求拦截器，同一次调用中的重试不重复计入请求数
+     * 每次执行（包括每次重试）都会经过请求拦截器
+     */
+    public static HttpRequestInterceptor attemptInterceptor(RetryBudget budget)
+    {
+        return (request, context) ->
+        {
+            int attempts = attempts(context) + 1;
+            context.setAttribute(ATTEMPTS_ATTRIBUTE, attempts);
+            if (attempts == 1)
+            {
+                budget.deposit();
+            }
+        };
+    }
+
+    /**
+     * 本次调用已经执行的次数，包括io异常与429/503的重试
+     */
+    static int attempts(HttpContext context)
+    {
+        Object attempts = context.getAttribute(ATTEMPTS_ATTRIBUTE);
+        return attempts instanceof Integer ? (Integer) attempts : 0;
+    }
+
+    @Override
+    public boolean retryRequest(IOException exception, int executionCount, HttpContext context)
+    {
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        RetryPolicy policy = policies.forRoute(clientContext.getHttpRoute());
+        int attempts = Math.max(executionCount, attempts(context));
+        if (attempts >= policy.getMaxAttempts() || !isRetryable(exception, clientContext))
+        {
+            return false;
+        }
+
+        String route = HttpClientMetrics.routeName(clientContext.getHttpRoute());
+        long delay = policy.backoff(attempts);
+        if (!withinDeadline(context, delay))
+        {
+            logger.debug("剩余时间不足以退避" + delay + "ms后重试，放弃重试：" + route);
+            return false;
+        }
+        if (!budget.tryWithdraw())
+        {
+            logger.warn("重试预算已耗尽，放弃重试：" + route);
+            metrics.increment(HttpClientMetrics.RETRY_BUDGET_EXHAUSTED, route, 1);
+            return false;
+        }
+
+        logger.debug("第" + attempts + "次执行发生io异常，" + delay + "ms后重试：" + route, exception);
+        if (!sleep(delay))
+        {
+            return false;
+        }
+        metrics.increment(HttpClientMetrics.RETRY, route, 1);
+        return true;
+    }
+
+    private static boolean isRetryable(IOException exception, HttpClientContext context)
+    {
+        // 连接超时，请求尚未发送
+        if (exception instanceof ConnectTimeoutException)
+        {
+            return true;
+        }
+        // 服务端断掉客户端的连接异常
+        if (exception instanceof NoHttpResponseException)
+        {
+            return true;
+        }
+        // 读取超时等，请求已经到达服务端，不重试
+        if (exception instanceof InterruptedIOException)
+        {
+            return false;
+        }
+        // Unknown host
+        if (exception instanceof UnknownHostException)
+        {
+            return false;
+        }
+        // SSL handshake exception
+        if (exception instanceof SSLException)
+        {
+            return false;
+        }
+        // 幂等的请求，或尚未发送完毕的请求可以重试
+        return !(context.getRequest() instanceof HttpEntityEnclosingRequest) || !context.isRequestSent();
+    }
+
+    /**
+     * 带截止时间的调用，退避delay之后须仍有剩余时间才重试
+     */
+    static boolean withinDeadline(HttpContext context, long delay)
+    {
+        Deadline deadline = Deadline.get(context);
+        return deadline == null || deadline.remainingMillis() > delay;
+    }
+
+    /**
+     * 在当前线程中等待退避时间，线程被中断时放弃重试
+     */
+    static boolean sleep(long millis)
+    {
+        if (millis <= 0)
+        {
+            return true;
+        }
+        try
+        {
+            Thread.sleep(millis);
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package xin.tomdonkey.util.http.common.retry;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.Date;
+
+/**
+ * 服务端返回429（Too Many Requests）或503（Service Unavailable）时的重试策略
+ *
+ * 响应携带Retry-After时，按其指定的时间等待后重试，Retry-After超过maxRetryAfter时不重试，直接返回响应
+ * 未携带Retry-After时，按路由的重试策略退避随机的时间
+ * 与io异常的重试共用最大执行次数与重试预算，执行次数为一次调用的总执行次数，由BackoffRetryHandler.attemptInterceptor记录
+ * 带截止时间的调用剩余时间不足以完成等待时同样不重试
+ *
+ * 429与503表示服务端没有处理该请求，因此非幂等的请求同样可以重试，但请求体必须可以重复发送
+ *
+ * @author guolinyuan
+ */
+public class RetryAfterRetryStrategy implements ServiceUnavailableRetryStrategy
+{
+    private static Logger logger = LoggerFactory.getLogger(RetryAfterRetryStrategy.class);
+
+    private final RetryPolicy.Routes policies;
+    private final RetryBudget budget;
+    private final HttpClientMetrics metrics;
+    private final long maxRetryAfter;
+
+    /**
+     * ServiceUnavailableRetryExec在同一线程中先调用retryRequest，再调用getRetryInterval获取等待时间
+     */
+    private final ThreadLocal<Long> retryInterval = ThreadLocal.withInitial(() -> 0L);
+
+    /**
+     * @param maxRetryAfter 愿意等待的最长Retry-After，单位ms
+     */
+    public RetryAfterRetryStrategy(RetryPolicy.Routes policies, RetryBudget budget, HttpClientMetrics metrics, long maxRetryAfter)
+    {
+        this.policies = policies;
+        this.budget = budget;
+        this.metrics = metrics;
+        this.maxRetryAfter = maxRetryAfter;
+    }
+
+    @Override
+    public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context)
+    {
+        int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_SERVICE_UNAVAILABLE && status != 429)
+        {
+            return false;
+        }
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        RetryPolicy policy = policies.forRoute(clientContext.getHttpRoute());
+        int attempts = Math.max(executionCount, BackoffRetryHandler.attempts(context));
+        if (attempts >= policy.getMaxAttempts() || !isRepeatable(clientContext))
+        {
+            return false;
+        }
+
+        String route = HttpClientMetrics.routeName(clientContext.getHttpRoute());
+        long delay = retryAfter(response);
+        if (delay > maxRetryAfter)
+        {
+            logger.debug("Retry-After为" + delay + "ms，超过了最长等待时间，不再重试：" + route);
+            return false;
+        }
+        if (delay < 0)
+        {
+            delay = policy.backoff(attempts);
+        }
+        if (!BackoffRetryHandler.withinDeadline(context, delay))
+        {
+            logger.debug("剩余时间不足以等待" + delay + "ms后重试，直接返回响应：" + route);
+            return false;
+        }
+        if (!budget.tryWithdraw())
+        {
+            logger.warn("重试预算已耗尽，放弃重试：" + route);
+            metrics.increment(HttpClientMetrics.RETRY_BUDGET_EXHAUSTED, route, 1);
+            return false;
+        }
+
+        logger.debug("服务端返回" + status + "，" + delay + "ms后重试：" + route);
+        retryInterval.set(delay);
+        metrics.increment(HttpClientMetrics.RETRY, route, 1);
+        return true;
+    }
+
+    @Override
+    public long getRetryInterval()
+    {
+        return retryInterval.get();
+    }
+
+    /**
+     * Retry-After指定的等待时间，支持秒数与HTTP日期两种格式，没有或格式错误时返回-1
+     * 秒数过大，超出long或换算为ms溢出时返回Long.MAX_VALUE，视为超过最长等待时间
+     */
+    static long retryAfter(HttpResponse response)
+    {
+        Header header = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (header == null || header.getValue() == null)
+        {
+            return -1;
+        }
+        String value = header.getValue().trim();
+        try
+        {
+            return Math.max(0, Math.multiplyExact(Long.parseLong(value), 1000L));
+        }
+        catch (ArithmeticException e)
+        {
+            return Long.MAX_VALUE;
+        }
+        catch (NumberFormatException e)
+        {
+            if (value.matches("\\d+"))
+            {
+                return Long.MAX_VALUE;
+            }
+            Date date = DateUtils.parseDate(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    private static boolean isRepeatable(HttpClientContext context)
+    {
+        if (context.getRequest() instanceof HttpEntityEnclosingRequest)
+        {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) context.getRequest()).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package xin.tomdonkey.util.http.common.retry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 客户端级别的重试预算，限制滑动窗口内额外请求（重试）占全部请求的比例
+ * 下游变慢或故障时，大量请求同时失败，重试预算保证重试不会成倍放大对下游的压力
+ *
+ * 窗口内允许的额外请求数为 minPerSecond * windowSeconds + ratio * 窗口内的请求数
+ * minPerSecond保证请求量很小时仍然可以重试
+ *
+ * 窗口按秒分桶，统计是近似的，跨秒切换时可能有少量计数落入相邻的桶
+ *
+ * @author guolinyuan
+ */
+public class RetryBudget
+{
+    private final double ratio;
+    private final long minPerSecond;
+    private final int windowSeconds;
+    private final Bucket[] buckets;
+
+    /**
+     * @param ratio 额外请求占请求数的最大比例，如0.1
+     * @param minPerSecond 每秒至少允许的额外请求数
+     * @param windowSeconds 滑动窗口的长度，单位s
+     */
+    public RetryBudget(double ratio, long minPerSecond, int windowSeconds)
+    {
+        if (ratio < 0 || minPerSecond < 0 || windowSeconds <= 0)
+        {
+            throw new IllegalArgumentException("重试预算的参数不合法：ratio=" + ratio + "，minPerSecond=" + minPerSecond + "，windowSeconds=" + windowSeconds);
+        }
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.windowSeconds = windowSeconds;
+        this.buckets = new Bucket[windowSeconds];
+        for (int i = 0; i < windowSeconds; i++)
+        {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * 记录一次请求（不含重试），每次请求为预算增加ratio个额外请求的额度
+     */
+    public void deposit()
+    {
+        current().deposits.increment();
+    }
+
+    /**
+     * 尝试使用一次额外请求的额度
+     *
+     * @return 窗口内的额度是否足够，足够时额度被扣除
+     */
+    public boolean tryWithdraw()
+    {
+        long now = now();
+        Bucket bucket = current();
+        //额度检查与扣除之间不加锁，高并发时可能略微超出预算
+        if (withdrawals(now) + 1 > allowance(now))
+        {
+            return false;
+        }
+        bucket.withdrawals.increment();
+        return true;
+    }
+
+    /**
+     * 窗口内剩余的额外请求额度
+     */
+    public long getAvailable()
+    {
+        long now = now();
+        return Math.max(0, (long) allowance(now) - withdrawals(now));
+    }
+
+    private double allowance(long now)
+    {
+        long deposits = 0;
+        for (Bucket bucket : buckets)
+        {
+            if (bucket.second > now - windowSeconds)
+            {
+                deposits += bucket.deposits.sum();
+            }
+        }
+        return minPerSecond * windowSeconds + ratio * deposits;
+    }
+
+    private long withdrawals(long now)
+    {
+        long withdrawals = 0;
+        for (Bucket bucket : buckets)
+        {
+            if (bucket.second > now - windowSeconds)
+            {
+                withdrawals += bucket.withdrawals.sum();
+            }
+        }
+        return withdrawals;
+    }
+
+    /**
+     * 当前秒对应的桶，桶属于更早的秒时先清零
+     */
+    private Bucket current()
+    {
+        long now = now();
+        Bucket bucket = buckets[(int) Math.floorMod(now, (long) windowSeconds)];
+        if (bucket.second != now)
+        {
+            synchronized (bucket)
+            {
+                if (bucket.second != now)
+                {
+                    bucket.deposits.reset();
+                    bucket.withdrawals.reset();
+                    bucket.second = now;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private static long now()
+    {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    private static class Bucket
+    {
+        private volatile long second = Long.MIN_VALUE;
+        private final LongAdder deposits = new LongAdder();
+        private final LongAdder withdrawals = new LongAdder();
+    }
+}
@@ -0,0 +1,128 @@
+package xin.tomdonkey.util.http.common.retry;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.RouteInfo;
+import xin.tomdonkey.util.http.common.config.RouteSpecs;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略：最大执行次数与指数退避的参数
+ * 退避使用full jitter，第n次重试前等待 [0, min(maxDelay, baseDelay * 2^(n-1))] 之间的随机时间
+ * 随机的等待时间使同时失败的大量请求不会在同一时刻一起重试
+ *
+ * 可以按路由配置不同的策略，格式为 地址=最大执行次数:基础退避:最大退避，退避单位ms，后两项可以省略，如：
+ * https://slow.example.com=1,http://internal:8080=5:50:1000
+ *
+ * @author guolinyuan
+ */
+public class RetryPolicy
+{
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    /**
+     * @param maxAttempts 最大执行次数，包含第一次请求，为1时不重试
+     * @param baseDelay 基础退避时间，单位ms
+     * @param maxDelay 最大退避时间，单位ms
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay)
+    {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = Math.max(0, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    public long getBaseDelay()
+    {
+        return baseDelay;
+    }
+
+    public long getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    /**
+     * 第executionCount次执行失败后，重试前的退避时间
+     *
+     * @param executionCount 已经执行的次数，从1开始
+     * @return 退避时间，单位ms
+     */
+    public long backoff(int executionCount)
+    {
+        int shift = Math.min(Math.max(executionCount - 1, 0), 30);
+        long cap = baseDelay > (maxDelay >> shift) ? maxDelay : baseDelay << shift;
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * 解析 最大执行次数:基础退避:最大退避 格式的策略，省略的项使用defaults的值
+     *
+     * @throws IllegalArgumentException 格式不合法
+     */
+    public static RetryPolicy parse(String value, RetryPolicy defaults)
+    {
+        String[] parts = value.split(":");
+        try
+        {
+            int maxAttempts = Integer.parseInt(parts[0].trim());
+            long baseDelay = parts.length > 1 ? Long.parseLong(parts[1].trim()) : defaults.baseDelay;
+            long maxDelay = parts.length > 2 ? Long.parseLong(parts[2].trim()) : defaults.maxDelay;
+            return new RetryPolicy(maxAttempts, baseDelay, maxDelay);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("重试策略的格式应为 最大执行次数:基础退避:最大退避：" + value, e);
+        }
+    }
+
+    /**
+     * 默认策略与按路由覆盖的策略
+     */
+    public static class Routes
+    {
+        private final RetryPolicy defaults;
+        private final Map<HttpHost, RetryPolicy> routes;
+
+        /**
+         * @param defaults 默认策略
+         * @param spec 按路由覆盖的策略，为空时所有路由使用默认策略
+         * @throws IllegalArgumentException 配置格式不合法
+         */
+        public Routes(RetryPolicy defaults, String spec)
+        {
+            Map<HttpHost, RetryPolicy> routes = new LinkedHashMap<>();
+            RouteSpecs.parseSpec(spec).forEach((url, value) ->
+                    routes.put(RouteSpecs.toRoute(url).getTargetHost(), parse(value, defaults)));
+            this.defaults = defaults;
+            this.routes = Collections.unmodifiableMap(routes);
+        }
+
+        /**
+         * 请求所在路由的策略，以目标主机匹配，使用代理时同样有效
+         */
+        public RetryPolicy forRoute(RouteInfo route)
+        {
+            if (route == null || routes.isEmpty())
+            {
+                return defaults;
+            }
+            return routes.getOrDefault(route.getTargetHost(), defaults);
+        }
+
+        public RetryPolicy getDefaults()
+        {
+            return defaults;
+        }
+    }
+}
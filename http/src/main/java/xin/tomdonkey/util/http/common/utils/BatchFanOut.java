@@ -0,0 +1,201 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * 基于异步客户端的批量请求扇出，在限定的并发数内同时发送请求，不为每个请求占用线程
+ * 同一路由同时进行中的请求数不超过该路由的连接上限，避免请求在连接池中排队
+ *
+ * 一个请求完成后立刻发送下一个等待中的请求，总耗时接近最慢的若干个请求，而不是所有请求耗时之和
+ *
+ * @author guolinyuan
+ */
+class BatchFanOut<T>
+{
+    private final List<? extends HttpRequestBase> requests;
+    private final Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender;
+    private final Function<HttpResponse, T> converter;
+    private final int concurrency;
+    private final ToIntFunction<HttpRequestBase> routeLimit;
+
+    private final BatchResult<T>[] results;
+    private final CompletableFuture<?>[] futures;
+    private final CountDownLatch latch;
+
+    /**
+     * 按路由分组的等待发送的请求下标，保持输入顺序
+     */
+    private final Map<String, Queue<Integer>> pending = new LinkedHashMap<>();
+    private final Map<String, Integer> routeInFlight = new HashMap<>();
+    private int inFlight = 0;
+    private boolean expired = false;
+
+    /**
+     * @param requests 需要发送的请求
+     * @param sender 发送单个请求
+     * @param converter 响应的转换方法
+     * @param concurrency 整个批量请求同时进行中的最大请求数
+     * @param routeLimit 请求所在路由允许同时进行中的最大请求数
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BatchFanOut(List<? extends HttpRequestBase> requests, Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender,
+                Function<HttpResponse, T> converter, int concurrency, ToIntFunction<HttpRequestBase> routeLimit)
+    {
+        this.requests = requests;
+        this.sender = sender;
+        this.converter = converter;
+        this.concurrency = Math.max(1, concurrency);
+        this.routeLimit = routeLimit;
+        this.results = new BatchResult[requests.size()];
+        this.futures = new CompletableFuture[requests.size()];
+        this.latch = new CountDownLatch(requests.size());
+        for (int i = 0; i < requests.size(); i++)
+        {
+            pending.computeIfAbsent(HttpClientMetrics.routeName(requests.get(i).getURI()), k -> new ArrayDeque<>()).add(i);
+        }
+    }
+
+    /**
+     * 发送所有请求并等待，直到全部完成或超过截止时间
+     * 超过截止时间后，进行中的请求会被中止，未完成的请求以TimeoutException失败
+     *
+     * @return 与输入顺序一致的结果
+     */
+    List<BatchResult<T>> execute(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        dispatch();
+        if (!latch.await(timeout, unit))
+        {
+            expire();
+        }
+        synchronized (this)
+        {
+            return new ArrayList<>(Arrays.asList(results));
+        }
+    }
+
+    /**
+     * 在并发限制内发送等待中的请求
+     */
+    private void dispatch()
+    {
+        List<Integer> toSend = new ArrayList<>();
+        synchronized (this)
+        {
+            for (Map.Entry<String, Queue<Integer>> entry : pending.entrySet())
+            {
+                Queue<Integer> queue = entry.getValue();
+                while (!queue.isEmpty() && inFlight < concurrency)
+                {
+                    int index = queue.peek();
+                    int routeCount = routeInFlight.getOrDefault(entry.getKey(), 0);
+                    if (routeCount >= Math.max(1, routeLimit.applyAsInt(requests.get(index))))
+                    {
+                        break;
+                    }
+                    queue.poll();
+                    routeInFlight.put(entry.getKey(), routeCount + 1);
+                    inFlight++;
+                    toSend.add(index);
+                }
+            }
+            pending.values().removeIf(Queue::isEmpty);
+        }
+
+        //在锁外发送请求
+        for (int index : toSend)
+        {
+            send(index);
+        }
+    }
+
+    private void send(int index)
+    {
+        HttpRequestBase request = requests.get(index);
+        CompletableFuture<HttpResponse> sent;
+        try
+        {
+            sent = sender.apply(request);
+        }
+        catch (RuntimeException e)
+        {
+            //发送时同步抛出的异常（如参数校验，客户端已关闭），立即以该异常完成，归还并发名额
+            if (complete(index, HttpClientMetrics.routeName(request.getURI()), null, e))
+            {
+                dispatch();
+            }
+            return;
+        }
+        synchronized (this)
+        {
+            //保存原始请求的future，取消时可以中止请求并释放连接
+            futures[index] = sent;
+            if (expired)
+            {
+                sent.cancel(true);
+            }
+        }
+        sent.thenApplyAsync(converter).whenComplete((value, e) ->
+        {
+            if (complete(index, HttpClientMetrics.routeName(request.getURI()), value, e))
+            {
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * @return 是否需要继续发送等待中的请求
+     */
+    private synchronized boolean complete(int index, String route, T value, Throwable e)
+    {
+        routeInFlight.merge(route, -1, Integer::sum);
+        inFlight--;
+        if (results[index] != null)
+        {
+            return false;
+        }
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        results[index] = cause == null ? BatchResult.success(value) : BatchResult.failure(cause);
+        latch.countDown();
+        return !expired;
+    }
+
+    /**
+     * 超过截止时间，中止进行中的请求，未完成的请求均以TimeoutException失败
+     */
+    private synchronized void expire()
+    {
+        expired = true;
+        pending.clear();
+        for (int i = 0; i < results.length; i++)
+        {
+            if (results[i] == null)
+            {
+                results[i] = BatchResult.failure(new TimeoutException("超过批量请求的截止时间：" + requests.get(i).getURI()));
+                if (futures[i] != null)
+                {
+                    futures[i].cancel(true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package xin.tomdonkey.util.http.common.utils;
+
+/**
+ * 批量请求中单个请求的结果，成功时携带转换后的值，失败时携带异常
+ * 单个请求的失败不会影响批量请求中的其他请求
+ *
+ * @author guolinyuan
+ */
+public class BatchResult<T>
+{
+    private final T value;
+    private final Throwable exception;
+
+    private BatchResult(T value, Throwable exception)
+    {
+        this.value = value;
+        this.exception = exception;
+    }
+
+    public static <T> BatchResult<T> success(T value)
+    {
+        return new BatchResult<>(value, null);
+    }
+
+    public static <T> BatchResult<T> failure(Throwable exception)
+    {
+        return new BatchResult<>(null, exception);
+    }
+
+    public boolean isSuccess()
+    {
+        return exception == null;
+    }
+
+    /**
+     * 转换后的值，失败时为null，转换失败时同样可能为null
+     */
+    public T getValue()
+    {
+        return value;
+    }
+
+    /**
+     * 失败的原因，成功时为null，超过批量请求的截止时间时为TimeoutException
+     */
+    public Throwable getException()
+    {
+        return exception;
+    }
+
+    @Override
+    public String toString()
+    {
+        return isSuccess() ? "BatchResult{value=" + value + "}" : "BatchResult{exception=" + exception + "}";
+    }
+}
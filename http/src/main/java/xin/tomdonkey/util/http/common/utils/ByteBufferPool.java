@@ -0,0 +1,129 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按容量分级的堆内ByteBuffer池，用于读取响应实体时复用缓冲区，避免每个响应都分配并丢弃一个字节数组
+ *
+ * 容量按2的幂分级，最小MIN_CAPACITY，最大MAX_CAPACITY，每一级最多保留MAX_RETAINED_BYTES字节的空闲缓冲区
+ * 超过最大级别的请求直接分配，归还时丢弃，不会被池长期持有
+ *
+ * 使用堆内缓冲区而不是直接缓冲区，是因为响应流只能读入byte[]，字符串解码也需要byte[]
+ * 使用直接缓冲区反而多一次复制
+ *
+ * @author guolinyuan
+ */
+public class ByteBufferPool
+{
+    /**
+     * 最小的缓冲区容量，4KB
+     */
+    public static final int MIN_CAPACITY = 1 << 12;
+
+    /**
+     * 池化的最大缓冲区容量，4MB
+     */
+    public static final int MAX_CAPACITY = 1 << 22;
+
+    /**
+     * 每一级最多保留的空闲缓冲区字节数
+     */
+    private static final int MAX_RETAINED_BYTES = 1 << 23;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_CAPACITY) - MIN_SHIFT + 1;
+
+    /**
+     * 读取响应实体共用的缓冲池
+     */
+    static final ByteBufferPool SHARED = new ByteBufferPool();
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+    private final AtomicInteger[] freeCount;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool()
+    {
+        free = new ConcurrentLinkedQueue[CLASS_COUNT];
+        freeCount = new AtomicInteger[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++)
+        {
+            free[i] = new ConcurrentLinkedQueue<>();
+            freeCount[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * 获取一个容量不小于minCapacity的空缓冲区，使用完毕后请调用release归还
+     *
+     * @param minCapacity 需要的最小容量
+     * @return position为0，limit为容量的缓冲区
+     */
+    public ByteBuffer acquire(int minCapacity)
+    {
+        if (minCapacity > MAX_CAPACITY)
+        {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        int index = classIndex(minCapacity);
+        ByteBuffer buffer = free[index].poll();
+        if (buffer == null)
+        {
+            return ByteBuffer.allocate(MIN_CAPACITY << index);
+        }
+        freeCount[index].decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * 归还缓冲区，归还后调用方不能再使用此缓冲区及其任何视图
+     * 不是由池分配的容量（超过最大级别）的缓冲区会被直接丢弃
+     */
+    public void release(ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        if (capacity > MAX_CAPACITY || capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1 || !buffer.hasArray())
+        {
+            return;
+        }
+        int index = classIndex(capacity);
+        //每一级保留的空闲缓冲区数量有上限，突发的大量响应结束后不会一直占用内存
+        if (freeCount[index].incrementAndGet() * (long) capacity > MAX_RETAINED_BYTES)
+        {
+            freeCount[index].decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        free[index].offer(buffer);
+    }
+
+    /**
+     * 将缓冲区扩容为原来的两倍，已写入的数据会被复制到新的缓冲区，原缓冲区被归还
+     *
+     * @param buffer 已写满的缓冲区
+     * @return 新的缓冲区，position为已写入的数据长度
+     */
+    public ByteBuffer grow(ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        ByteBuffer larger = acquire(capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 8 : capacity * 2);
+        buffer.flip();
+        larger.put(buffer);
+        release(buffer);
+        return larger;
+    }
+
+    /**
+     * 容量对应的级别，即向上取整到2的幂后相对MIN_CAPACITY的位移
+     */
+    private static int classIndex(int capacity)
+    {
+        if (capacity <= MIN_CAPACITY)
+        {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,232 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import xin.tomdonkey.util.http.common.deadline.Deadline;
+import xin.tomdonkey.util.http.common.hedge.HedgingPolicy;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * 一次带对冲的GET请求
+ *
+ * 原始请求在调用线程中发送，到达延迟仍未收到响应时，在对冲线程池中发送一个相同的请求
+ * 先收到响应的请求获胜，另一个请求被中止，其连接被关闭后归还连接池
+ * 对冲请求获胜时，调用线程中的原始请求因被中止而返回，随后取得对冲请求的响应
+ * 带截止时间时，到达截止时间仍在进行的对冲请求同样被中止，等待对冲请求的结果不超过剩余时间
+ *
+ * @author guolinyuan
+ */
+class HedgedExecution
+{
+    private static Logger logger = LoggerFactory.getLogger(HedgedExecution.class);
+
+    private final HttpRequestBase primary;
+    private final String route;
+    private final Function<HttpRequestBase, CloseableHttpResponse> sender;
+    private final Deadline deadline;
+    private final HedgingPolicy policy;
+    private final HttpClientMetrics metrics;
+
+    /**
+     * 获胜的请求，只设置一次，获胜的请求不会被中止
+     */
+    private final AtomicReference<HttpRequestBase> winner = new AtomicReference<>();
+    private final CompletableFuture<CloseableHttpResponse> hedgeResult = new CompletableFuture<>();
+
+    private HttpRequestBase hedge;
+    private boolean primaryDone = false;
+
+    /**
+     * @param primary 原始的GET请求
+     * @param route 请求所在的路由名
+     * @param sender 发送单个请求，发生异常时返回null
+     * @param deadline 调用的截止时间，为null时不限制，原始请求到期时的中止由调用方注册
+     */
+    HedgedExecution(HttpRequestBase primary, String route, Function<HttpRequestBase, CloseableHttpResponse> sender,
+                    @Nullable Deadline deadline, HedgingPolicy policy, HttpClientMetrics metrics)
+    {
+        this.primary = primary;
+        this.route = route;
+        this.sender = sender;
+        this.deadline = deadline;
+        this.policy = policy;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 发送请求，直到获胜的请求收到响应，或两个请求均失败
+     *
+     * @param permit 发送对冲请求前调用，返回false时不发送
+     * @param release 对冲请求结束（收到响应，失败或被中止）后调用，归还permit占用的资源
+     * @return 获胜请求的响应，均失败时返回null
+     */
+    CloseableHttpResponse execute(BooleanSupplier permit, Runnable release)
+    {
+        policy.onRequest();
+        ScheduledFuture<?> trigger = policy.getTimer().schedule(() -> fireHedge(permit, release), policy.delayNanos(route), TimeUnit.NANOSECONDS);
+        CloseableHttpResponse response = attempt(primary);
+        trigger.cancel(false);
+        boolean hedged;
+        synchronized (this)
+        {
+            primaryDone = true;
+            hedged = hedge != null;
+        }
+        if (response != null || !hedged)
+        {
+            return response;
+        }
+        //原始请求失败或被对冲请求中止，等待对冲请求的结果，带截止时间时不超过剩余时间
+        try
+        {
+            if (deadline == null)
+            {
+                return hedgeResult.get();
+            }
+            return hedgeResult.get(Math.max(0, deadline.remainingNanos()), TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            abandonHedge();
+            return null;
+        }
+        catch (TimeoutException e)
+        {
+            abandonHedge();
+            return null;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    private void fireHedge(BooleanSupplier permit, Runnable release)
+    {
+        HttpRequestBase request;
+        synchronized (this)
+        {
+            if (primaryDone || winner.get() != null || (deadline != null && deadline.isExpired()) || !permit.getAsBoolean())
+            {
+                return;
+            }
+            request = copy(primary);
+            hedge = request;
+        }
+        if (deadline != null)
+        {
+            deadline.onExpiry(() -> abort(request));
+        }
+        logger.debug("请求超过对冲延迟仍未响应，发送对冲请求：" + primary.getURI());
+        metrics.increment(HttpClientMetrics.HEDGE, route, 1);
+        try
+        {
+            policy.getExecutor().execute(() ->
+            {
+                CloseableHttpResponse response = null;
+                try
+                {
+                    response = attempt(request);
+                    if (response != null)
+                    {
+                        metrics.increment(HttpClientMetrics.HEDGE_WON, route, 1);
+                    }
+                }
+                finally
+                {
+                    release.run();
+                    hedgeResult.complete(response);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            release.run();
+            hedgeResult.complete(null);
+        }
+    }
+
+    /**
+     * 发送一个请求，收到响应且获胜时中止另一个请求，收到响应但已落败时关闭响应
+     *
+     * @return 获胜请求的响应，请求失败或落败时返回null
+     */
+    private CloseableHttpResponse attempt(HttpRequestBase request)
+    {
+        long start = System.nanoTime();
+        CloseableHttpResponse response = sender.apply(request);
+        if (response == null)
+        {
+            return null;
+        }
+        policy.record(route, System.nanoTime() - start);
+        if (winner.compareAndSet(null, request))
+        {
+            HttpRequestBase other;
+            synchronized (this)
+            {
+                other = request == primary ? hedge : primary;
+            }
+            abort(other);
+            return response;
+        }
+        close(response);
+        return null;
+    }
+
+    /**
+     * 不再等待对冲请求：中止请求，已经收到的响应在完成后关闭
+     */
+    private void abandonHedge()
+    {
+        abort(hedge);
+        hedgeResult.thenAccept(HedgedExecution::close);
+    }
+
+    private static void close(CloseableHttpResponse response)
+    {
+        if (response == null)
+        {
+            return;
+        }
+        try
+        {
+            response.close();
+        }
+        catch (IOException e)
+        {
+            logger.debug("关闭落败请求的响应时发生异常", e);
+        }
+    }
+
+    private static void abort(HttpRequestBase request)
+    {
+        if (request != null)
+        {
+            request.abort();
+        }
+    }
+
+    private static HttpRequestBase copy(HttpRequestBase request)
+    {
+        HttpGet copy = new HttpGet(request.getURI());
+        copy.setHeaders(request.getAllHeaders());
+        copy.setConfig(request.getConfig());
+        return copy;
+    }
+}
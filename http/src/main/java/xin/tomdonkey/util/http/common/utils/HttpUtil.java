@@ -4,32 +4,95 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONException;
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONReader;
 import com.sun.istack.internal.NotNull;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.ParseException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.conn.NHttpClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import xin.tomdonkey.util.http.common.admission.AdmissionRegistry;
+import xin.tomdonkey.util.http.common.admission.ConcurrencyLimiter;
+import xin.tomdonkey.util.http.common.breaker.CircuitBreaker;
+import xin.tomdonkey.util.http.common.breaker.CircuitBreakerRegistry;
+import xin.tomdonkey.util.http.common.config.RouteSpecs;
+import xin.tomdonkey.util.http.common.deadline.Deadline;
+import xin.tomdonkey.util.http.common.exception.AdmissionRejectedException;
+import xin.tomdonkey.util.http.common.exception.CircuitBreakerOpenException;
+import xin.tomdonkey.util.http.common.exception.RateLimitExceededException;
+import xin.tomdonkey.util.http.common.exception.RequestRejectedException;
+import xin.tomdonkey.util.http.common.hedge.HedgingPolicy;
+import xin.tomdonkey.util.http.common.lb.LogicalService;
+import xin.tomdonkey.util.http.common.lb.ServiceInstance;
+import xin.tomdonkey.util.http.common.lb.ServiceRegistry;
+import xin.tomdonkey.util.http.common.limit.RateLimiter;
+import xin.tomdonkey.util.http.common.limit.RateLimiterRegistry;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+import xin.tomdonkey.util.http.common.metrics.MeteredHttpEntity;
+import xin.tomdonkey.util.http.common.profile.ClientProfile;
+import xin.tomdonkey.util.http.common.profile.ClientProfiles;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -47,6 +110,99 @@ public class HttpUtil
     @Autowired
     private CloseableHttpClient client;
 
+    @Autowired
+    private CloseableHttpAsyncClient asyncClient;
+
+    @Autowired
+    private NHttpClientConnectionManager poolingNHttpClientConnectionManager;
+
+    @Autowired
+    private HttpClientMetrics metrics;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakers;
+
+    @Autowired
+    private RateLimiterRegistry rateLimiters;
+
+    @Autowired
+    private HedgingPolicy hedging;
+
+    @Autowired
+    private AdmissionRegistry admissions;
+
+    @Autowired
+    private ServiceRegistry services;
+
+    @Autowired
+    private ClientProfiles profiles;
+
+    /**
+     * 各个客户端配置对应的HttpUtil，首次使用时创建，由默认的HttpUtil及其创建的HttpUtil共用
+     */
+    private ConcurrentHashMap<String, HttpUtil> profileUtils = new ConcurrentHashMap<>();
+
+    /**
+     * 是否合并相同地址的并发GET请求，开启后sendSynGetBytes与sendSynGetString
+     * 对同一地址的并发调用只发送一次请求，所有调用共享结果
+     */
+    @Value("${httpclient.config.coalesce}")
+    private boolean coalesce = false;
+
+    private final SingleFlight<String, byte[]> bytesFlight = new SingleFlight<>();
+    private final SingleFlight<String, String> stringFlight = new SingleFlight<>();
+
+    /**
+     * 批量请求默认的最大并发数
+     */
+    @Value("${httpclient.config.batchConcurrency}")
+    private int batchConcurrency = 64;
+
+    /*
+     *******************************客户端配置******************************************************
+     */
+
+    /**
+     * 获取使用指定客户端配置（httpclient.profiles.配置名.*）发送请求的HttpUtil
+     * 返回的HttpUtil的所有方法与此HttpUtil相同，但同步与异步请求均使用该配置独立的连接池，超时，重试策略与keep-alive
+     * 熔断，限流，对冲与逻辑服务与默认的HttpUtil共用
+     *
+     * 可以每次调用时选择，如 httpUtil.profile("batch").sendSynGetString(url)
+     * 也可以声明为一个Bean后注入：@Bean public HttpUtil batchHttpUtil(HttpUtil httpUtil){ return httpUtil.profile("batch"); }
+     *
+     * @param name 配置名
+     * @return 同一配置名总是返回同一个HttpUtil
+     * @throws IllegalArgumentException 未配置的配置名
+     */
+    public HttpUtil profile(String name)
+    {
+        ClientProfile profile = profiles.get(name);
+        if (profile == null)
+        {
+            throw new IllegalArgumentException("未配置的客户端配置：" + name);
+        }
+        return profileUtils.computeIfAbsent(name, n -> withProfile(profile));
+    }
+
+    private HttpUtil withProfile(ClientProfile profile)
+    {
+        HttpUtil util = new HttpUtil();
+        util.client = profile.getClient();
+        util.asyncClient = profile.getAsyncClient();
+        util.poolingNHttpClientConnectionManager = profile.getAsyncConnectionManager();
+        util.metrics = this.metrics;
+        util.circuitBreakers = this.circuitBreakers;
+        util.rateLimiters = this.rateLimiters;
+        util.hedging = this.hedging;
+        util.admissions = this.admissions;
+        util.services = this.services;
+        util.profiles = this.profiles;
+        util.profileUtils = this.profileUtils;
+        util.coalesce = this.coalesce;
+        util.batchConcurrency = this.batchConcurrency;
+        return util;
+    }
+
     /*
      *******************************请求方法******************************************************
      */
@@ -62,6 +218,11 @@ public class HttpUtil
      * 需要指定请求头时，请修改指定的httpRequestBase
      * 作为作为原始基础方法，此类不推荐直接使用
      * 此方法的所有异常都被捕获，如发生异常，请查看日志，此类会返回null
+     * 启用了熔断的路由熔断器打开时，或配置了限流的路由获取不到许可时，请求不会发送，同样返回null
+     * 限流方式为block或timeout时，此方法会先等待许可，再从连接池获取连接
+     * 启用了准入控制时，路由的并发已满的请求在有界队列中短暂等待，队列已满或等待超时时同样返回null，不会阻塞在连接池上
+     * 需要区分请求被拒绝与请求失败时，使用sendSynHttpRequestOrThrow
+     * 启用了对冲时，GET请求超过对冲延迟仍未收到响应，会在另一个连接上发送相同的请求，返回先收到的响应
      *
      * 注意，此方法返回后，自行解析响应资源，解析完成之后
      * 资源并不会被释放，请调用EntityUtils.consume(response.getEntity());释放连接资源
@@ -70,23 +231,187 @@ public class HttpUtil
      * @return CloseableHttpResponse 类型的原始请求结果 如果发生异常，则返回null。
      */
     public CloseableHttpResponse sendSynHttpRequest(@NotNull HttpRequestBase httpRequest)
+    {
+        return sendSynHttpRequest(httpRequest, (Deadline) null);
+    }
+
+    /**
+     * 同步请求，与sendSynHttpRequest相同，但请求被熔断，限流或准入控制拒绝时抛出异常，而不是返回null
+     * 调用方据此区分请求没有发出（可以稍后重试或降级）与请求失败，发生io异常时仍然返回null
+     *
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
+     * @param httpRequest HttpRequestBase类型的请求
+     * @return 原始请求结果，发生异常时返回null
+     * @throws RequestRejectedException 请求在发送之前被拒绝，具体原因见其子类
+     */
+    public CloseableHttpResponse sendSynHttpRequestOrThrow(@NotNull HttpRequestBase httpRequest)
+    {
+        return executeSynHttpRequest(httpRequest, null);
+    }
+
+    /**
+     * 带截止时间的同步请求，整个调用（限流等待，连接租用，所有重试）在timeout内结束
+     * 每次执行的连接租用，连接与读取超时被缩短为不超过剩余时间，剩余时间不足以完成退避等待时不再重试
+     * 到达截止时间时仍在进行的请求被中止，返回null
+     *
+     * 截止时间只覆盖到收到响应为止，返回的响应实体由调用方自行读取
+     * 需要覆盖响应体读取时，使用sendSynGetString(String, long, TimeUnit)等方法
+     *
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
+     * @param httpRequest HttpRequestBase类型的请求
+     * @param timeout 整个调用的最长时间，不大于0时不发送请求，返回null
+     * @return 原始请求结果，超过截止时间或发生异常时返回null
+     */
+    public CloseableHttpResponse sendSynHttpRequest(@NotNull HttpRequestBase httpRequest, long timeout, TimeUnit unit)
+    {
+        Deadline deadline = newDeadline(timeout, unit);
+        if (deadline == null)
+        {
+            return null;
+        }
+        try
+        {
+            return sendSynHttpRequest(httpRequest, deadline);
+        }
+        finally
+        {
+            deadline.cancel();
+        }
+    }
+
+    /**
+     * @param deadline 截止时间，为null时不限制，不为null时在截止时间到达时中止请求，调用方须在调用结束后取消
+     */
+    private CloseableHttpResponse sendSynHttpRequest(HttpRequestBase httpRequest, @Nullable Deadline deadline)
+    {
+        try
+        {
+            return executeSynHttpRequest(httpRequest, deadline);
+        }
+        catch (RequestRejectedException e)
+        {
+            logger.warn(e.getMessage() + "，请求地址：" + httpRequest.getURI());
+            return null;
+        }
+    }
+
+    /**
+     * 同步请求的实现，请求被熔断，限流或准入控制拒绝时抛出异常，其他情况与sendSynHttpRequest相同
+     * 调用方据此区分请求没有发出与请求失败
+     *
+     * @throws RequestRejectedException 请求在发送之前被拒绝，没有到达远程服务
+     */
+    private CloseableHttpResponse executeSynHttpRequest(HttpRequestBase httpRequest, @Nullable Deadline deadline)
     {
         Assert.notNull(httpRequest, "需要发送的请求为null");
 
+        //启用了熔断时，路由的熔断器打开期间直接拒绝，不再等待连接或超时
+        String route = HttpClientMetrics.routeName(httpRequest.getURI());
+        CircuitBreaker breaker = circuitBreakers.get(route);
+        if (breaker != null && !breaker.tryAcquire())
+        {
+            circuitBreakers.onRejected(route);
+            throw new CircuitBreakerOpenException(route);
+        }
+
+        //配置了限流的路由，在从连接池获取连接之前先获取许可，带截止时间时等待不超过剩余时间
+        if (!(deadline == null ? rateLimiters.acquire(route) : rateLimiters.acquire(route, deadline.remainingNanos())))
+        {
+            if (breaker != null)
+            {
+                breaker.release();
+            }
+            throw new RateLimitExceededException(route);
+        }
+
+        //启用了准入控制时，并发已满的请求在有界队列中短暂等待，队列已满或等待超时时直接拒绝，不在连接池中等待
+        ConcurrencyLimiter admission = admissions.get(route);
+        if (admission != null && !admissions.acquire(admission, deadline == null ? Long.MAX_VALUE : deadline.remainingNanos()))
+        {
+            if (breaker != null)
+            {
+                breaker.release();
+            }
+            throw new AdmissionRejectedException(route);
+        }
+
+        //到达截止时间时中止进行中的请求，包括等待连接，重试的退避等待与读取响应
+        if (deadline != null)
+        {
+            deadline.onExpiry(() ->
+            {
+                metrics.increment(HttpClientMetrics.DEADLINE_EXCEEDED, route, 1);
+                httpRequest.abort();
+            });
+        }
+
+        long start = System.nanoTime();
+        CloseableHttpResponse response = null;
+        try
+        {
+            //启用了对冲时，GET请求超过延迟仍未响应则发送对冲请求
+            if (hedging.isEnabled() && HttpGet.METHOD_NAME.equals(httpRequest.getMethod()))
+            {
+                response = new HedgedExecution(httpRequest, route, request -> doSendSynHttpRequest(request, deadline), deadline, hedging, metrics)
+                        .execute(() -> hedgePermit(route, admission), () -> releaseHedgePermit(admission));
+            }
+            else
+            {
+                response = doSendSynHttpRequest(httpRequest, deadline);
+            }
+            return response;
+        }
+        finally
+        {
+            long nanos = System.nanoTime() - start;
+            if (breaker != null)
+            {
+                breaker.onResult(nanos, isFailure(response));
+            }
+            if (admission != null)
+            {
+                //被调用方的截止时间中止的请求不代表路由过载，只归还许可，不调整并发限制
+                if (response == null && deadline != null && deadline.isExpired())
+                {
+                    admission.release();
+                }
+                else
+                {
+                    admission.onResult(nanos, response == null);
+                }
+            }
+        }
+    }
+
+    private CloseableHttpResponse doSendSynHttpRequest(HttpRequestBase httpRequest, @Nullable Deadline deadline)
+    {
         CloseableHttpResponse response = null;
+        //启用了响应缓存时，通过此上下文获知本次请求的缓存命中情况
+        HttpCacheContext context = HttpCacheContext.create();
+        //截止时间经由上下文传递给请求拦截器与重试处理
+        if (deadline != null)
+        {
+            deadline.bind(context);
+        }
         logger.debug("httpclient向：" + httpRequest.getURI() + "发送" + httpRequest.getMethod() + "请求：" + httpRequest.toString());
         try
         {
-            response = client.execute(httpRequest);
+            response = client.execute(httpRequest, context);
             logger.debug("通讯正常，远程回复：" + httpRequest.toString());
+            recordCacheStatus(httpRequest, context);
         }
         catch (ClientProtocolException e)
         {
             logger.error("客户端协议异常，远程响应出错,尝试增加http://再次访问", e);
+            if (deadline != null && deadline.isExpired())
+            {
+                return null;
+            }
             try
             {
                 httpRequest.setURI(new URI("http://"+httpRequest.getURI().toString()));
-                response = client.execute(httpRequest);
+                response = client.execute(httpRequest, context);
+                recordCacheStatus(httpRequest, context);
             }
             catch (URISyntaxException | IOException e1)
             {
@@ -96,11 +421,87 @@ public class HttpUtil
         }
         catch (IOException e)
         {
-            logger.error("发生io异常，远程响应出错", e);
+            if (deadline != null && deadline.isExpired())
+            {
+                logger.warn("超过截止时间，请求被中止：" + httpRequest.getURI());
+            }
+            else if (httpRequest.isAborted())
+            {
+                logger.debug("请求被中止：" + httpRequest.getURI());
+            }
+            else
+            {
+                logger.error("发生io异常，远程响应出错", e);
+            }
         }
         return response;
     }
 
+    /**
+     * 对冲请求需要对冲预算的额度，配置了限流的路由还需要立即可用的许可，对冲请求不等待许可
+     * 启用了准入控制时，对冲请求同样占用路由的并发许可，并发已满时不排队，不发送对冲请求
+     * 准入许可可以归还，因此最先获取，之后的条件不满足时归还
+     */
+    private boolean hedgePermit(String route, @Nullable ConcurrencyLimiter admission)
+    {
+        if (admission != null && !admission.acquire(0))
+        {
+            return false;
+        }
+        RateLimiter limiter = rateLimiters.get(route);
+        if (hedging.tryHedge() && (limiter == null || limiter.tryAcquire()))
+        {
+            return true;
+        }
+        releaseHedgePermit(admission);
+        return false;
+    }
+
+    /**
+     * 对冲请求结束后归还准入许可，对冲请求只是原始请求的副本，其耗时与结果不参与并发限制的调整
+     */
+    private static void releaseHedgePermit(@Nullable ConcurrencyLimiter admission)
+    {
+        if (admission != null)
+        {
+            admission.release();
+        }
+    }
+
+    /**
+     * 对熔断器而言，没有获得响应（io异常）或5xx响应均视为失败
+     */
+    private static boolean isFailure(HttpResponse response)
+    {
+        return response == null || response.getStatusLine() == null || response.getStatusLine().getStatusCode() >= 500;
+    }
+
+    /**
+     * 未启用响应缓存时，缓存状态为null，不做记录
+     */
+    private void recordCacheStatus(HttpRequestBase httpRequest, HttpCacheContext context)
+    {
+        CacheResponseStatus status = context.getCacheResponseStatus();
+        if (status == null)
+        {
+            return;
+        }
+        String route = HttpClientMetrics.routeName(httpRequest.getURI());
+        switch (status)
+        {
+            case CACHE_HIT:
+            case CACHE_MODULE_RESPONSE:
+                metrics.increment(HttpClientMetrics.CACHE_HIT, route, 1);
+                break;
+            case VALIDATED:
+                metrics.increment(HttpClientMetrics.CACHE_VALIDATED, route, 1);
+                break;
+            default:
+                metrics.increment(HttpClientMetrics.CACHE_MISS, route, 1);
+                break;
+        }
+    }
+
     public CloseableHttpResponse sendSynGet(String url)
     {
         //请求对象
@@ -133,45 +534,67 @@ public class HttpUtil
     }
 
     public CloseableHttpResponse sendSynPost(String url, @Nullable HttpEntity entity, @Nullable List<Header> headers)
+    {
+        return sendSynEntityRequest(HttpPost::new, url, entity, headers);
+    }
+
+    public CloseableHttpResponse sendSynPut(String url, @Nullable HttpEntity entity, @Nullable List<Header> headers)
+    {
+        return sendSynEntityRequest(HttpPut::new, url, entity, headers);
+    }
+
+    /**
+     * 发送携带请求实体的同步请求，sendSynPost与sendSynPut均基于此方法
+     * 地址缺少协议时，会增加默认的http协议重试构造请求
+     *
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
+     * @param requestFactory 请求的构造方法，如 HttpPost::new
+     * @param url 请求地址
+     * @param entity 请求实体
+     * @param headers 请求头
+     * @return 原始请求结果，如果发生异常，则返回null
+     */
+    public CloseableHttpResponse sendSynEntityRequest(Function<String, ? extends HttpEntityEnclosingRequestBase> requestFactory, String url,
+                                                      @Nullable HttpEntity entity, @Nullable List<Header> headers)
     {
 
         //请求对象
-        HttpPost post ;
+        HttpEntityEnclosingRequestBase request ;
 
         // 响应对象
         CloseableHttpResponse response;
 
         try
         {
-            post = new HttpPost(url);
+            request = requestFactory.apply(url);
         }
         catch (IllegalArgumentException e)
         {
             try
             {
-                logger.debug("构造Post请求时，传入了非法的参数，可能是没有协议，增加默认http协议，重试");
-                post = new HttpPost("http://" + url);
+                logger.debug("构造请求时，传入了非法的参数，可能是没有协议，增加默认http协议，重试");
+                request = requestFactory.apply("http://" + url);
             }
             catch (IllegalArgumentException e2)
             {
-                logger.error("构造Post请求时，传入了非法的参数，请求失败", e);
+                logger.error("构造请求时，传入了非法的参数，请求失败", e);
                 return null;
             }
         }
         if (entity != null)
         {
-            post.setEntity(entity);
+            request.setEntity(entity);
         }
         if (headers != null && headers.size() > 0)
         {
             for (Header header : headers)
             {
-                post.setHeader(header);
+                request.setHeader(header);
             }
         }
 
         //发送请求
-        response = sendSynHttpRequest(post);
+        response = sendSynHttpRequest(request);
 
         //获得请求
         if (response != null)
@@ -182,301 +605,1949 @@ public class HttpUtil
         return null;
     }
 
-    @Deprecated
-    public static String getAsyn()
-    {
-        return null;
-    }
-
     /*
-     *******************************请求结果转换方法*************************************************
+     *******************************异步请求方法******************************************************
      */
 
     /**
-     * 将响应的响应实体，转化为二进制数组
-     * 如果响应行为null，则返回null，如果响应行的状态码大于400或为0，返回null,打印日志
-     * 如果获取响应体为null了，返回null，打印日志
+     * 异步请求，使用此请求方法作为基础方法的请求，均为异步请求，调用线程不会被阻塞
+     * 请求由异步客户端的IO线程完成，少量IO线程即可承载大量同时进行中的请求
      *
-     * @param response 响应
-     * @return 返回响应实体中的数据，以byte[]数组处理
-     * @throws IllegalArgumentException 参数必须保证 response不为null
+     * 响应实体会被完整读入内存后才完成返回的CompletableFuture，因此无需手动释放连接资源
+     * 如发生io异常，返回的CompletableFuture会以该异常异常完成
+     * 如取消返回的CompletableFuture，正在进行的请求会被中止，其连接会被释放
+     * 启用了熔断且路由的熔断器打开时，返回的CompletableFuture以CircuitBreakerOpenException异常完成
+     * 路由配置了限流时，需要等待许可的请求被延迟发送，被拒绝的请求以RateLimitExceededException异常完成
+     * 启用了准入控制时，路由的并发已满的请求进入等待队列，队列已满或等待超过admissionTimeout时以AdmissionRejectedException异常完成
+     *
+     * @param httpRequest HttpRequestBase类型的请求
+     * @return 原始请求结果的CompletableFuture
      */
-    public static byte[] responseToBytes(CloseableHttpResponse response)
+    public CompletableFuture<HttpResponse> sendAsynHttpRequest(@NotNull HttpRequestBase httpRequest)
     {
-        Assert.notNull(response, "需要转化的响应实体为null");
+        Assert.notNull(httpRequest, "需要发送的请求为null");
 
-        //请求行null和错误码处理
-        try
-        {
-            StatusLine line = response.getStatusLine();
-            if (line.getStatusCode() >= 400 || line.getStatusCode() == 0)
-            {
-                logger.error("响应发生错误！状态码为：" + line.getStatusCode());
-                return null;
-            }
-        }
-        catch (NullPointerException e)
-        {
-            logger.error("获取响应行时，空指针异常，获取到 HttpEntity.getStatusLine()为null", e);
-            return null;
-        }
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
 
-        //获取请求实体byte流
-        try
-        {
-            return EntityUtils.toByteArray(response.getEntity());
-        }
-        catch (NullPointerException e)
+        String route = HttpClientMetrics.routeName(httpRequest.getURI());
+        CircuitBreaker breaker = circuitBreakers.get(route);
+        if (breaker != null && !breaker.tryAcquire())
         {
-            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+            circuitBreakers.onRejected(route);
+            future.completeExceptionally(new CircuitBreakerOpenException(route));
+            return future;
         }
-        catch (IOException e)
+
+        //配置了限流的路由，需要等待许可时延迟发送，不阻塞调用线程
+        long wait = rateLimiters.reserve(route);
+        if (wait < 0)
         {
-            logger.error("获取请求结果时，发生io异常，解析结果失败", e);
+            if (breaker != null)
+            {
+                breaker.release();
+            }
+            future.completeExceptionally(new RateLimitExceededException(route));
+            return future;
         }
-        catch (ParseException e)
+        if (wait == 0)
         {
-            logger.error("转换异常，响应结果无法使用默认的字符集UTF-8解析为字符串", e);
+            doSendAsynHttpRequest(httpRequest, breaker, future);
+            return future;
         }
-        finally
+        ScheduledFuture<?> scheduled = rateLimiters.schedule(() -> doSendAsynHttpRequest(httpRequest, breaker, future), wait);
+        future.whenComplete((response, e) ->
         {
-            try
-            {
-                logger.debug("释放资源：" + response.getEntity());
-                EntityUtils.consume(response.getEntity());
-            }
-            catch (IOException e)
+            //等待许可期间被调用方取消
+            if (future.isCancelled() && scheduled.cancel(false) && breaker != null)
             {
-                logger.error("释放资源时发生异常", e);
+                breaker.release();
             }
-        }
-
-        return null;
+        });
+        return future;
     }
 
-    public static String responseToString(CloseableHttpResponse response, Charset charset)
+    private void doSendAsynHttpRequest(HttpRequestBase httpRequest, CircuitBreaker breaker, CompletableFuture<HttpResponse> future)
     {
-        byte[] bytes = responseToBytes(response);
-        Assert.notNull(bytes,"获得的二进制流为null");
-
-        try
+        if (future.isDone())
         {
-            return new String(bytes, charset);
+            return;
         }
-        catch (Exception e)
-        {
-            logger.error("使用字符集"+charset.name()+"转换出错！",e);
-            return null;
-        }
-    }
 
-    public static JSONObject responseToJSONObject(CloseableHttpResponse response, Charset charset)
-    {
-        try
-        {
-            return JSON.parseObject(responseToString(response,charset));
-        }
-        catch (JSONException e)
+        //启用了准入控制时，并发已满的请求进入等待队列，获得许可后由归还许可的线程发送，队列已满时以AdmissionRejectedException异常完成
+        String route = HttpClientMetrics.routeName(httpRequest.getURI());
+        ConcurrencyLimiter admission = admissions.get(route);
+        if (admission == null)
         {
-            logger.error("此json不是一个合法的json对象，请尝试使用sendGetSynJSONArray()方法转换，或者检查json",e);
-            return null;
+            executeAsynHttpRequest(httpRequest, breaker, null, future);
+            return;
         }
-    }
-
-    public static JSONArray responseToJSONArray(CloseableHttpResponse response, Charset charset)
-    {
-        try
+        Runnable onGranted = () -> executeAsynHttpRequest(httpRequest, breaker, admission, future);
+        Runnable onRejected = () ->
         {
-            return JSON.parseArray(responseToString(response,charset));
-        }
-        catch (JSONException e)
+            if (breaker != null)
+            {
+                breaker.release();
+            }
+            future.completeExceptionally(new AdmissionRejectedException(route));
+        };
+        switch (admissions.tryAcquire(admission, onGranted, onRejected))
         {
-            logger.error("此json不是一个合法的json数组，请尝试使用sendGetSynJSONObject()方法转换，或者检查json",e);
-            return null;
+            case ADMITTED:
+                executeAsynHttpRequest(httpRequest, breaker, admission, future);
+                break;
+            case REJECTED:
+                onRejected.run();
+                break;
+            default:
+                //在等待队列中时被调用方取消，移出队列，不再占用队列的位置
+                future.whenComplete((response, e) ->
+                {
+                    if (future.isCancelled() && admission.cancel(onGranted) && breaker != null)
+                    {
+                        breaker.release();
+                    }
+                });
+                break;
         }
     }
 
-    public static <T> T responseToObject(CloseableHttpResponse response, Class<T> clazz, Charset charset)
+    /**
+     * @param admission 已经获得的准入许可，请求结束时归还，未启用准入控制时为null
+     */
+    private void executeAsynHttpRequest(HttpRequestBase httpRequest, CircuitBreaker breaker, ConcurrencyLimiter admission,
+                                        CompletableFuture<HttpResponse> future)
     {
-        JSONObject jsonObject = responseToJSONObject(response,charset);
-        if (jsonObject != null)
+        //在等待队列中时被调用方取消
+        if (future.isDone())
         {
-            try
+            if (breaker != null)
             {
-                return jsonObject.toJavaObject(clazz);
+                breaker.release();
             }
-            catch (Exception e)
+            if (admission != null)
             {
-                return null;
+                admission.release();
             }
+            return;
         }
-        return null;
-    }
-
-    public static <T> List<T> responseToList(CloseableHttpResponse response, Class<T> clazz, Charset charset)
-    {
-        JSONArray jsonArray = responseToJSONArray(response,charset);
-        if (jsonArray != null)
+        long start = System.nanoTime();
+        logger.debug("httpclient向：" + httpRequest.getURI() + "异步发送" + httpRequest.getMethod() + "请求：" + httpRequest.toString());
+        Future<HttpResponse> execution = asyncClient.execute(httpRequest, new FutureCallback<HttpResponse>()
         {
-            try
+            @Override
+            public void completed(HttpResponse response)
             {
-                return jsonArray.toJavaList(clazz);
+                logger.debug("通讯正常，远程回复：" + httpRequest.toString());
+                long nanos = System.nanoTime() - start;
+                if (breaker != null)
+                {
+                    breaker.onResult(nanos, isFailure(response));
+                }
+                if (admission != null)
+                {
+                    admission.onResult(nanos, false);
+                }
+                future.complete(response);
             }
-            catch (Exception e)
+
+            @Override
+            public void failed(Exception e)
             {
-                return null;
+                logger.error("发生io异常，远程响应出错", e);
+                long nanos = System.nanoTime() - start;
+                if (breaker != null)
+                {
+                    breaker.onResult(nanos, true);
+                }
+                if (admission != null)
+                {
+                    admission.onResult(nanos, true);
+                }
+                future.completeExceptionally(e);
             }
-        }
-        return null;
+
+            @Override
+            public void cancelled()
+            {
+                //被调用方取消的请求不代表路由的健康状况
+                if (breaker != null)
+                {
+                    breaker.release();
+                }
+                if (admission != null)
+                {
+                    admission.release();
+                }
+                future.cancel(false);
+            }
+        });
+
+        //调用方取消时，中止进行中的请求
+        future.whenComplete((response, e) ->
+        {
+            if (future.isCancelled())
+            {
+                execution.cancel(true);
+            }
+        });
+    }
+
+    public CompletableFuture<HttpResponse> sendAsynGet(String url)
+    {
+        HttpGet get;
+        try
+        {
+            get = new HttpGet(url);
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("构造Get请求时，传入了非法的参数，请求失败",e);
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return sendAsynHttpRequest(get);
+    }
+
+    /*
+     *******************************请求结果转换方法*************************************************
+     */
+
+    /**
+     * 将响应的响应实体，转化为二进制数组
+     * 如果响应行为null，则返回null，如果响应行的状态码大于400或为0，返回null,打印日志
+     * 如果获取响应体为null了，返回null，打印日志
+     *
+     * 响应流先读入池化的缓冲区（按Content-Length预分配），最后只复制一次为恰好大小的数组
+     *
+     * @param response 响应
+     * @return 返回响应实体中的数据，以byte[]数组处理
+     * @throws IllegalArgumentException 参数必须保证 response不为null
+     */
+    public static byte[] responseToBytes(HttpResponse response)
+    {
+        return withEntityBuffer(response, buffer ->
+                Arrays.copyOfRange(buffer.array(), buffer.arrayOffset(), buffer.arrayOffset() + buffer.limit()));
+    }
+
+    /**
+     * 将响应实体读入池化的缓冲区，并在回调期间借出其只读视图，回调返回后缓冲区被归还并复用
+     * 适用于只需要扫描、解码或写出响应数据，而不需要保留byte[]的场景，可以避免为每个响应分配数组
+     *
+     * 注意，回调返回后不能再使用该视图或其任何派生视图，其内容随时会被其他响应覆盖
+     * 如果响应行为null，或状态码大于400或为0，或读取失败，不会调用回调，返回null，打印日志
+     * 无论成功与否，连接资源都会被释放
+     *
+     * @param response 响应
+     * @param callback 使用响应数据的回调，参数的position为0，limit为响应实体的长度
+     * @return 回调的返回值
+     * @throws IllegalArgumentException 参数必须保证 response不为null
+     */
+    public static <R> R responseWithBuffer(HttpResponse response, Function<ByteBuffer, R> callback)
+    {
+        return withEntityBuffer(response, buffer -> callback.apply(buffer.asReadOnlyBuffer()));
+    }
+
+    /**
+     * 同responseWithBuffer，但借出的是缓冲区本身，供内部直接访问其数组，不对外开放
+     */
+    private static <R> R withEntityBuffer(HttpResponse response, Function<ByteBuffer, R> callback)
+    {
+        Assert.notNull(response, "需要转化的响应实体为null");
+
+        //请求行null和错误码处理
+        if (!checkStatusLine(response))
+        {
+            release(response, null);
+            return null;
+        }
+
+        ByteBuffer buffer = null;
+        try
+        {
+            buffer = readEntity(response.getEntity());
+            return callback.apply(buffer);
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("获取请求结果时，发生io异常，解析结果失败", e);
+        }
+        finally
+        {
+            if (buffer != null)
+            {
+                ByteBufferPool.SHARED.release(buffer);
+            }
+            release(response, null);
+        }
+
+        return null;
+    }
+
+    /**
+     * 将响应实体完整读入池化的缓冲区
+     * 已知Content-Length时直接分配足够的容量，未知时从最小级别开始按两倍扩容
+     *
+     * @return 已flip的缓冲区，position为0，limit为响应实体的长度，使用完毕后需要归还
+     */
+    private static ByteBuffer readEntity(HttpEntity entity) throws IOException
+    {
+        long length = entity.getContentLength();
+        int initial = length < 0 || length > Integer.MAX_VALUE - 8 ? ByteBufferPool.MIN_CAPACITY : (int) length;
+        ByteBuffer buffer = ByteBufferPool.SHARED.acquire(initial);
+        try (InputStream in = entity.getContent())
+        {
+            while (true)
+            {
+                if (!buffer.hasRemaining())
+                {
+                    //恰好读满时先探测是否已经结束，避免预分配准确时无谓的扩容
+                    int next = in.read();
+                    if (next < 0)
+                    {
+                        break;
+                    }
+                    buffer = ByteBufferPool.SHARED.grow(buffer);
+                    buffer.put((byte) next);
+                }
+                int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (read < 0)
+                {
+                    break;
+                }
+                buffer.position(buffer.position() + read);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            ByteBufferPool.SHARED.release(buffer);
+            throw e;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public static String responseToString(HttpResponse response, Charset charset)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return readString(response, charset);
+        }
+        finally
+        {
+            recordDecode(response, start);
+        }
+    }
+
+    public static JSONObject responseToJSONObject(HttpResponse response, Charset charset)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return JSON.parseObject(readString(response,charset));
+        }
+        catch (JSONException e)
+        {
+            logger.error("此json不是一个合法的json对象，请尝试使用sendGetSynJSONArray()方法转换，或者检查json",e);
+            return null;
+        }
+        finally
+        {
+            recordDecode(response, start);
+        }
+    }
+
+    public static JSONArray responseToJSONArray(HttpResponse response, Charset charset)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            return JSON.parseArray(readString(response,charset));
+        }
+        catch (JSONException e)
+        {
+            logger.error("此json不是一个合法的json数组，请尝试使用sendGetSynJSONObject()方法转换，或者检查json",e);
+            return null;
+        }
+        finally
+        {
+            recordDecode(response, start);
+        }
+    }
+
+    /**
+     * 将响应实体直接以流的方式解析为指定类型的对象
+     * 不经过byte[]，String，JSONObject等中间结果，fastjson边读取响应流边反序列化
+     * 解析完成，解析失败或状态码错误时，均会释放连接资源
+     * 如果响应行的状态码大于400或为0，或解析失败，返回null，打印日志
+     *
+     * @param response 响应
+     * @param clazz 目标类型
+     * @param charset 解析响应流使用的字符集
+     * @return 解析得到的对象
+     * @throws IllegalArgumentException 参数必须保证 response不为null
+     */
+    public static <T> T responseToObject(HttpResponse response, Class<T> clazz, Charset charset)
+    {
+        Assert.notNull(response, "需要转化的响应实体为null");
+        if (!checkStatusLine(response))
+        {
+            release(response, null);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        JSONReader reader = null;
+        try
+        {
+            reader = new JSONReader(new InputStreamReader(response.getEntity().getContent(), charset));
+            return reader.readObject(clazz);
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("获取请求结果时，发生io异常，解析结果失败", e);
+        }
+        catch (JSONException e)
+        {
+            logger.error("响应流无法解析为" + clazz.getName() + "类型的对象，请检查json", e);
+        }
+        finally
+        {
+            recordDecode(response, start);
+            release(response, reader);
+        }
+        return null;
+    }
+
+    /**
+     * 将响应实体直接以流的方式解析为指定类型的列表
+     * 与responseToObject相同，数组中的元素边读取边反序列化，不会先生成JSONArray
+     *
+     * @see HttpUtil#responseToObject(HttpResponse, Class, Charset)
+     * @param response 响应
+     * @param clazz 元素类型
+     * @param charset 解析响应流使用的字符集
+     * @return 解析得到的列表
+     */
+    public static <T> List<T> responseToList(HttpResponse response, Class<T> clazz, Charset charset)
+    {
+        Assert.notNull(response, "需要转化的响应实体为null");
+        if (!checkStatusLine(response))
+        {
+            release(response, null);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        JSONReader reader = null;
+        try
+        {
+            reader = new JSONReader(new InputStreamReader(response.getEntity().getContent(), charset));
+            List<T> list = new ArrayList<>();
+            reader.startArray();
+            while (reader.hasNext())
+            {
+                list.add(reader.readObject(clazz));
+            }
+            reader.endArray();
+            return list;
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("获取请求结果时，发生io异常，解析结果失败", e);
+        }
+        catch (JSONException e)
+        {
+            logger.error("响应流无法解析为" + clazz.getName() + "类型的数组，请检查json", e);
+        }
+        finally
+        {
+            recordDecode(response, start);
+            release(response, reader);
+        }
+        return null;
+    }
+
+    /**
+     * 将json数组的响应实体转换为惰性的迭代器，元素在迭代时才从响应流中读取并解析
+     * 内存占用只与单个元素的大小有关，与整个数组的大小无关
+     * 迭代完毕后连接会自动释放，提前结束迭代时，请调用close()中止响应
+     * 如果响应行的状态码大于400或为0，或响应不是json数组，返回null，打印日志
+     *
+     * @see JSONArrayIterator
+     * @param response 响应
+     * @param clazz 元素类型
+     * @param charset 解析响应流使用的字符集
+     * @return 数组元素的迭代器
+     */
+    public static <T> JSONArrayIterator<T> responseToIterator(HttpResponse response, Class<T> clazz, Charset charset)
+    {
+        Assert.notNull(response, "需要转化的响应实体为null");
+        if (!checkStatusLine(response))
+        {
+            release(response, null);
+            return null;
+        }
+
+        try
+        {
+            return new JSONArrayIterator<>(response, clazz, charset);
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("获取请求结果时，发生io异常，解析结果失败", e);
+        }
+        catch (JSONException e)
+        {
+            logger.error("此json不是一个合法的json数组，请检查json", e);
+        }
+        return null;
+    }
+
+    /**
+     * 将json数组的响应实体转换为惰性的Stream，语义同responseToIterator
+     * Stream被完整消费后连接会自动释放，提前结束时，请关闭Stream（推荐使用try-with-resources）
+     *
+     * @see HttpUtil#responseToIterator(HttpResponse, Class, Charset)
+     * @param response 响应
+     * @param clazz 元素类型
+     * @param charset 解析响应流使用的字符集
+     * @return 数组元素的顺序Stream
+     */
+    public static <T> Stream<T> responseToStream(HttpResponse response, Class<T> clazz, Charset charset)
+    {
+        JSONArrayIterator<T> iterator = responseToIterator(response, clazz, charset);
+        if (iterator == null)
+        {
+            return null;
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * 检查响应行，如果响应行为null，或者状态码大于400或为0，返回false，打印日志
+     */
+    private static boolean checkStatusLine(HttpResponse response)
+    {
+        try
+        {
+            StatusLine line = response.getStatusLine();
+            if (line.getStatusCode() >= 400 || line.getStatusCode() == 0)
+            {
+                logger.error("响应发生错误！状态码为：" + line.getStatusCode());
+                return false;
+            }
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取响应行时，空指针异常，获取到 HttpEntity.getStatusLine()为null", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 将响应实体读取为字符串，不记录转换耗时
+     * 直接从池化的缓冲区解码，不生成中间的byte[]
+     */
+    private static String readString(HttpResponse response, Charset charset)
+    {
+        return withEntityBuffer(response, buffer ->
+        {
+            try
+            {
+                return new String(buffer.array(), buffer.arrayOffset(), buffer.limit(), charset);
+            }
+            catch (Exception e)
+            {
+                logger.error("使用字符集"+charset.name()+"转换出错！",e);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 响应实体经过度量包装时，记录转换耗时，读取响应流的时间不计入
+     *
+     * @param startNanos 开始转换时的System.nanoTime()
+     */
+    private static void recordDecode(HttpResponse response, long startNanos)
+    {
+        HttpEntity entity = response.getEntity();
+        if (entity instanceof MeteredHttpEntity)
+        {
+            ((MeteredHttpEntity) entity).recordDecode(startNanos);
+        }
+    }
+
+    /**
+     * 关闭流式解析使用的reader，并释放响应占用的连接资源
+     */
+    private static void release(HttpResponse response, JSONReader reader)
+    {
+        if (reader != null)
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (JSONException e)
+            {
+                logger.debug("关闭json流时，响应流未读取完毕", e);
+            }
+        }
+        try
+        {
+            logger.debug("释放资源：" + response.getEntity());
+            EntityUtils.consume(response.getEntity());
+        }
+        catch (IOException e)
+        {
+            logger.error("释放资源时发生异常", e);
+        }
+    }
+
+    /*
+     *******************************发送获得结果转换方法，主要工具方法*****************************************
+     */
+
+    /**
+     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
+     * 获得的结果不会被解析，而是作为byte[]返回
+     * 或者在指定了超时时间后放弃
+     * 或者在重试若干次后放弃
+     * 开启httpclient.config.coalesce时，对同一地址的并发调用共享一次请求的结果
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
+     * @see HttpUtil#responseToBytes(HttpResponse)
+     * @param url 请求地址
+     * @return 二进制流，以提供下一步操作
+     */
+    public byte[] sendSynGetBytes(String url)
+    {
+        if (coalesce)
+        {
+            //合并的调用共享同一个数组，复制后返回，避免调用方之间互相修改
+            byte[] bytes = bytesFlight.execute(url, () -> doSendSynGetBytes(url));
+            return bytes == null ? null : bytes.clone();
+        }
+        return doSendSynGetBytes(url);
+    }
+
+    private byte[] doSendSynGetBytes(String url)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToBytes(response);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，响应实体读入池化的缓冲区后，在回调期间借出其只读视图
+     * 回调返回后缓冲区被复用，不能在回调之外保留该视图
+     * @see HttpUtil#responseWithBuffer(HttpResponse, Function)
+     * @param url 请求地址
+     * @param callback 使用响应数据的回调
+     * @return 回调的返回值，请求或读取失败时返回null
+     */
+    public <R> R sendSynGetWithBuffer(String url, Function<ByteBuffer, R> callback)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseWithBuffer(response, callback);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
+     * 获得的结果会被直接解析成为String字符串形式，解析出错不会抛出异常，而是返回null
+     * 或者在指定了超时时间后放弃
+     * 或者在重试若干次后放弃
+     * 开启httpclient.config.coalesce时，对同一地址的并发调用共享一次请求的结果
+     * @see HttpUtil#sendSynGetBytes(String)
+     * @param url 请求地址
+     * @return 相应的数据使用指定的字符集转换的结果
+     */
+    public String sendSynGetString(String url,Charset charset)
+    {
+        if (coalesce)
+        {
+            return stringFlight.execute(charset.name() + " " + url, () -> doSendSynGetString(url, charset));
+        }
+        return doSendSynGetString(url, charset);
+    }
+
+    private String doSendSynGetString(String url,Charset charset)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToString(response,charset);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
+     * 获得的结果会使用utf-8被直接解析成为String字符串形式，解析出错不会抛出异常，而是返回null
+     * 或者在指定了超时时间后放弃
+     * 或者在重试若干次后放弃
+     * @see HttpUtil#sendSynGetBytes(String)
+     * @param url 请求地址
+     * @return 相应的数据使用指定的字符集转换的结果
+     */
+    public String sendSynGetString(String url)
+    {
+        return sendSynGetString(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 当且仅当 请求实体的返回的字符串是
+     * 一个可以被解析的json对象，非数组时，返回此JSONObject
+     * 否则返回null
+     * 注意，默认使用utf-8字符集解析此字符串
+     * 注意，默认使用fastjson解析json
+     * @see HttpUtil#sendSynGetString(String)
+     * @param url
+     * @return
+     */
+    public JSONObject sendSynGetJSONObject(String url,Charset charset)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToJSONObject(response,charset);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    public JSONObject sendSynGetJSONObject(String url)
+    {
+        return sendSynGetJSONObject(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 当且仅当 请求实体的返回的字符串是
+     * 一个可以被解析的json数组，非对象，返回此JSONObject
+     * 否则返回null
+     * 注意，默认使用utf-8字符集解析此字符串
+     * 注意，默认使用fastjson解析json
+     * @see HttpUtil#sendSynGetString(String)
+     * @param url
+     * @return
+     */
+    public JSONArray sendSynGetJSONArray(String url,Charset charset)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToJSONArray(response,charset);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    public JSONArray sendGetSynJSONArray(String url)
+    {
+        return sendSynGetJSONArray(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 当且仅当 请求实体的返回的字符串是一个json数组时
+     * 返回一个边读取边解析数组元素的Stream，适用于体积巨大的数组响应，否则返回null
+     * 使用完毕后请关闭Stream，以释放连接资源
+     * @see HttpUtil#responseToStream(HttpResponse, Class, Charset)
+     * @param clazz 元素类型
+     * @param url 请求地址
+     * @return 数组元素的Stream
+     */
+    public <T> Stream<T> sendSynGetStream(Class<T> clazz, String url, Charset charset)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToStream(response,clazz,charset);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    public <T> Stream<T> sendSynGetStream(Class<T> clazz, String url)
+    {
+        return sendSynGetStream(clazz,url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * @param clazz
+     * @param url
+     * @param <T>
+     * @return
+     */
+    public <T> T sendSynGetObject(Class<T> clazz, String url,Charset charset)
+    {
+        CloseableHttpResponse response =  sendSynGet(url);
+        if (response != null)
+        {
+            return responseToObject(response,clazz,charset);
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    public <T> T sendSynGetObject(Class<T> clazz, String url)
+    {
+        return sendSynGetObject(clazz,url,DEFAULT_CHARSET);
+    }
+
+
+    public String sendSynJsonStrPostStr(String url,String requestJson)
+    {
+        CloseableHttpResponse response = sendSynPost(url,new StringEntity(requestJson,JSON_CONTENT_TYPE),null);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    public <T> T  sendSynJsonStrPostObject(String url,String requestJson,Class<T> clazz)
+    {
+        CloseableHttpResponse response = sendSynPost(url,new StringEntity(requestJson,JSON_CONTENT_TYPE),null);
+        if (response != null)
+        {
+            return responseToObject(response,clazz,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 将对象以json形式POST到指定的URL，对象由fastjson直接序列化到请求的输出流中，以chunked方式发送
+     * 不需要调用方先生成json字符串，适用于体积很大的请求体
+     * 获得的结果会使用utf-8被解析成为String字符串形式，失败时返回null
+     * @see JsonEntity
+     * @param url 请求地址
+     * @param body 请求体对象
+     * @return 响应字符串
+     */
+    public String sendSynObjectPostStr(String url, Object body)
+    {
+        CloseableHttpResponse response = sendSynPost(url,new JsonEntity(body,DEFAULT_CHARSET),null);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 同sendSynObjectPostStr，响应以流的方式解析为指定类型的对象
+     * @see HttpUtil#sendSynObjectPostStr(String, Object)
+     */
+    public <T> T sendSynObjectPostObject(String url, Object body, Class<T> clazz)
+    {
+        CloseableHttpResponse response = sendSynPost(url,new JsonEntity(body,DEFAULT_CHARSET),null);
+        if (response != null)
+        {
+            return responseToObject(response,clazz,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 同sendSynObjectPostObject，使用PUT方法
+     * @see HttpUtil#sendSynObjectPostObject(String, Object, Class)
+     */
+    public <T> T sendSynObjectPutObject(String url, Object body, Class<T> clazz)
+    {
+        CloseableHttpResponse response = sendSynPut(url,new JsonEntity(body,DEFAULT_CHARSET),null);
+        if (response != null)
+        {
+            return responseToObject(response,clazz,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 将文件的内容作为请求体POST到指定的URL，文件以流的方式发送，不会被读入内存
+     * 文件实体可重复，请求失败后可以被重试
+     * @param url 请求地址
+     * @param file 发送的文件
+     * @param contentType 请求体的类型，如 ContentType.APPLICATION_OCTET_STREAM
+     * @return 响应字符串，失败时返回null
+     */
+    public String sendSynFilePostStr(String url, Path file, ContentType contentType)
+    {
+        Assert.notNull(file, "发送的文件为null");
+        CloseableHttpResponse response = sendSynPost(url,new FileEntity(file.toFile(),contentType),null);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 同sendSynFilePostStr，使用PUT方法
+     * @see HttpUtil#sendSynFilePostStr(String, Path, ContentType)
+     */
+    public String sendSynFilePutStr(String url, Path file, ContentType contentType)
+    {
+        Assert.notNull(file, "发送的文件为null");
+        CloseableHttpResponse response = sendSynPut(url,new FileEntity(file.toFile(),contentType),null);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 将输入流的内容作为请求体POST到指定的URL，边读取边发送
+     * 输入流只能读取一次，因此请求失败后不会被重试；发送完毕后输入流会被关闭
+     * @param url 请求地址
+     * @param in 请求体的输入流
+     * @param length 请求体的长度，未知时传入-1，以chunked方式发送
+     * @param contentType 请求体的类型
+     * @return 响应字符串，失败时返回null
+     */
+    public String sendSynStreamPostStr(String url, InputStream in, long length, ContentType contentType)
+    {
+        Assert.notNull(in, "发送的输入流为null");
+        CloseableHttpResponse response = sendSynPost(url,new InputStreamEntity(in,length,contentType),null);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /*
+     *******************************下载方法*****************************************
+     */
+
+    /**
+     * 下载时使用的固定大小的传输缓冲区，无论响应实体多大，占用的堆内存都不变
+     */
+    private static final int TRANSFER_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * 分段下载时单个分段的最小长度，文件过小时分段没有意义，直接整体下载
+     */
+    private static final long MIN_SEGMENT_SIZE = 1 << 20;
+
+    /**
+     * 将响应实体以流的方式写入指定的通道，不在内存中缓存整个响应
+     * 写入完成后连接被释放，写入失败时直接中止响应，不再读取剩余的数据
+     * 通道由调用方负责关闭
+     * 如果响应行的状态码大于400或为0，或读写失败，返回null，打印日志
+     *
+     * @param response 响应
+     * @param channel 写入的通道
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 参数必须保证 response，channel不为null
+     */
+    public static Long responseToChannel(HttpResponse response, WritableByteChannel channel)
+    {
+        Assert.notNull(response, "需要转化的响应实体为null");
+        Assert.notNull(channel, "写入的通道为null");
+        if (!checkStatusLine(response))
+        {
+            release(response, null);
+            return null;
+        }
+
+        boolean completed = false;
+        try
+        {
+            long written = transfer(response.getEntity(), channel, -1);
+            completed = true;
+            return written;
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("将响应写入通道时发生io异常，写入失败", e);
+        }
+        finally
+        {
+            finish(response, completed);
+        }
+        return null;
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，响应实体以流的方式写入指定的通道
+     * @see HttpUtil#responseToChannel(HttpResponse, WritableByteChannel)
+     * @param url 请求地址
+     * @param channel 写入的通道，由调用方负责关闭
+     * @return 写入的字节数，失败时返回null
+     */
+    public Long sendSynGetToChannel(String url, WritableByteChannel channel)
+    {
+        HttpGet get = downloadGet(url);
+        if (get == null)
+        {
+            return null;
+        }
+        CloseableHttpResponse response = sendSynHttpRequest(get);
+        if (response != null)
+        {
+            return responseToChannel(response, channel);
+        }
+        return null;
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，响应实体以流的方式写入指定的文件，文件已存在时被覆盖
+     * @see HttpUtil#sendSynGetToFile(String, Path, boolean)
+     */
+    public Long sendSynGetToFile(String url, Path file)
+    {
+        return sendSynGetToFile(url, file, false);
+    }
+
+    /**
+     * 向指定的URL发送一个同步请求，响应实体以流的方式写入指定的文件
+     *
+     * 下载过程中，响应的强ETag或Last-Modified保存在文件旁的 文件名.validator 中，下载完整后删除
+     * resume为true且文件与保存的校验值都存在时，使用Range请求只下载文件之后的部分，并携带If-Range，实现断点续传
+     * 远程资源已经变化，或服务端不支持Range，返回完整响应时，文件会被覆盖为完整的响应
+     * 没有保存的校验值时，无法确认已下载的部分与远程资源一致，不续传，重新下载完整的文件
+     * 服务端返回416，且文件长度与远程长度一致时，视为文件已经下载完整
+     *
+     * 如果响应行的状态码大于400或为0，或读写失败，返回null，打印日志，已写入的部分与校验值保留，可以再次续传
+     *
+     * @param url 请求地址
+     * @param file 写入的文件
+     * @param resume 是否从已存在的文件末尾继续下载
+     * @return 下载完成后文件的长度
+     */
+    public Long sendSynGetToFile(String url, Path file, boolean resume)
+    {
+        Assert.notNull(file, "写入的文件为null");
+        HttpGet get = downloadGet(url);
+        if (get == null)
+        {
+            return null;
+        }
+
+        long existing = 0;
+        String validator = null;
+        try
+        {
+            if (resume && Files.exists(file))
+            {
+                existing = Files.size(file);
+                validator = readValidator(file);
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("获取已下载文件的长度时发生io异常，下载失败：" + file, e);
+            return null;
+        }
+        if (existing > 0 && validator == null)
+        {
+            logger.debug("没有保存的校验值，无法确认已下载的部分与远程资源一致，重新下载：" + file);
+            existing = 0;
+        }
+        if (existing > 0)
+        {
+            get.setHeader(HttpHeaders.RANGE, "bytes=" + existing + "-");
+            get.setHeader(HttpHeaders.IF_RANGE, validator);
+        }
+
+        CloseableHttpResponse response = sendSynHttpRequest(get);
+        if (response == null)
+        {
+            return null;
+        }
+
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            int status = response.getStatusLine().getStatusCode();
+            if (existing > 0 && status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+            {
+                long total = contentRangeTotal(response);
+                if (total >= 0 && total != existing)
+                {
+                    logger.error("已下载的文件长度" + existing + "与远程长度" + total + "不一致，请删除后重新下载：" + file);
+                    return null;
+                }
+                logger.debug("文件已经下载完整：" + file);
+                Files.deleteIfExists(validatorFile(file));
+                completed = true;
+                return existing;
+            }
+
+            long position;
+            if (existing > 0 && status == HttpStatus.SC_PARTIAL_CONTENT)
+            {
+                if (contentRangeStart(response) != existing)
+                {
+                    logger.error("服务端返回的分段与请求的不一致：" + response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+                    return null;
+                }
+                position = existing;
+            }
+            else if (checkStatusLine(response))
+            {
+                //远程资源已经变化或服务端忽略了Range，返回了完整的响应，从头覆盖
+                channel.truncate(0);
+                saveValidator(file, validator(response));
+                position = 0;
+            }
+            else
+            {
+                return null;
+            }
+
+            long written = transfer(response.getEntity(), channel, position);
+            Files.deleteIfExists(validatorFile(file));
+            completed = true;
+            return position + written;
+        }
+        catch (NullPointerException e)
+        {
+            logger.error("获取请求结果时，空指针异常，获取到 HttpEntity.getContent()为null", e);
+        }
+        catch (IOException e)
+        {
+            logger.error("将响应写入文件时发生io异常，下载失败：" + file, e);
+        }
+        finally
+        {
+            finish(response, completed);
+        }
+        return null;
+    }
+
+    /**
+     * 将指定URL的资源分为若干段，使用多个连接并行下载到指定的文件，文件已存在时被覆盖
+     * 每个分段使用独立的线程，通过FileChannel的定位写入直接写到文件中对应的位置
+     *
+     * 先发送HEAD请求获取资源的长度，服务端不支持Range（没有Accept-Ranges: bytes或长度未知）
+     * 或资源太小时，退化为单个连接下载
+     * 分段请求携带If-Range，下载过程中远程资源发生变化时，下载失败
+     * 任意分段失败时，其余分段会被中止，返回null，打印日志
+     *
+     * 同时进行的分段数同样受连接池中该路由最大连接数的限制
+     *
+     * @param url 请求地址
+     * @param file 写入的文件
+     * @param segments 分段数
+     * @return 下载完成后文件的长度
+     */
+    public Long sendSynGetToFileSegmented(String url, Path file, int segments)
+    {
+        Assert.notNull(file, "写入的文件为null");
+        Assert.isTrue(segments > 0, "分段数必须大于0");
+
+        HttpHead head;
+        try
+        {
+            head = new HttpHead(url);
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("构造Head请求时，传入了非法的参数，请求失败",e);
+            return null;
+        }
+        head.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+
+        long length = -1;
+        String validator = null;
+        CloseableHttpResponse headResponse = sendSynHttpRequest(head);
+        if (headResponse != null)
+        {
+            if (checkStatusLine(headResponse) && headResponse.containsHeader(HttpHeaders.CONTENT_LENGTH)
+                    && "bytes".equalsIgnoreCase(headerValue(headResponse, HttpHeaders.ACCEPT_RANGES)))
+            {
+                try
+                {
+                    length = Long.parseLong(headerValue(headResponse, HttpHeaders.CONTENT_LENGTH).trim());
+                    validator = validator(headResponse);
+                }
+                catch (NumberFormatException e)
+                {
+                    //Content-Length不合法时无法分段，使用单个连接下载
+                    length = -1;
+                }
+            }
+            release(headResponse, null);
+        }
+
+        int count = (int) Math.min(segments, length / MIN_SEGMENT_SIZE);
+        if (count <= 1)
+        {
+            logger.debug("服务端不支持分段下载或资源过小，使用单个连接下载：" + url);
+            return sendSynGetToFile(url, file, false);
+        }
+
+        long segmentSize = (length + count - 1) / count;
+        List<HttpGet> gets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            HttpGet get = downloadGet(url);
+            get.setHeader(HttpHeaders.RANGE, "bytes=" + (i * segmentSize) + "-" + (Math.min(length, (i + 1) * segmentSize) - 1));
+            if (validator != null)
+            {
+                get.setHeader(HttpHeaders.IF_RANGE, validator);
+            }
+            gets.add(get);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(count, r ->
+        {
+            Thread thread = new Thread(r, "httpclient-segment-download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            //分段下载失败时文件中间可能有空洞，不能续传，删除之前单连接下载留下的校验值
+            Files.deleteIfExists(validatorFile(file));
+            List<CompletableFuture<Void>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                HttpGet get = gets.get(i);
+                long start = i * segmentSize;
+                long expected = Math.min(length, start + segmentSize) - start;
+                CompletableFuture<Void> future = CompletableFuture.runAsync(() -> downloadSegment(get, channel, start, expected), executor);
+                //任意分段失败时中止其余的分段，不再等待它们下载完毕
+                future.whenComplete((v, e) ->
+                {
+                    if (e != null)
+                    {
+                        gets.forEach(HttpGet::abort);
+                    }
+                });
+                futures.add(future);
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            return length;
+        }
+        catch (CompletionException e)
+        {
+            logger.error("分段下载失败：" + url, e.getCause());
+        }
+        catch (IOException e)
+        {
+            logger.error("打开下载文件时发生io异常，下载失败：" + file, e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        return null;
+    }
+
+    /**
+     * 下载一个分段，并写入文件中对应的位置
+     */
+    private void downloadSegment(HttpGet get, FileChannel channel, long start, long expected)
+    {
+        String range = get.getFirstHeader(HttpHeaders.RANGE).getValue();
+        CloseableHttpResponse response = sendSynHttpRequest(get);
+        if (response == null)
+        {
+            throw new UncheckedIOException(new IOException("分段请求失败：" + range));
+        }
+        boolean completed = false;
+        try
+        {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT || contentRangeStart(response) != start)
+            {
+                throw new IOException("服务端没有按请求的分段" + range + "响应，远程资源可能已经变化：" + response.getStatusLine());
+            }
+            long written = transfer(response.getEntity(), channel, start);
+            if (written != expected)
+            {
+                throw new IOException("分段" + range + "的长度不完整，期望" + expected + "，实际" + written);
+            }
+            completed = true;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        finally
+        {
+            finish(response, completed);
+        }
+    }
+
+    /**
+     * 使用固定大小的池化缓冲区，将响应实体写入通道
+     *
+     * @param position 大于等于0且通道为FileChannel时，从该位置开始定位写入，不改变通道的位置，可被多个线程同时调用
+     *                 否则按通道当前的位置顺序写入
+     * @return 写入的字节数
+     */
+    private static long transfer(HttpEntity entity, WritableByteChannel channel, long position) throws IOException
+    {
+        FileChannel file = position >= 0 && channel instanceof FileChannel ? (FileChannel) channel : null;
+        ByteBuffer buffer = ByteBufferPool.SHARED.acquire(TRANSFER_BUFFER_SIZE);
+        long total = 0;
+        try (InputStream in = entity.getContent())
+        {
+            int read;
+            while ((read = in.read(buffer.array(), buffer.arrayOffset(), buffer.capacity())) >= 0)
+            {
+                buffer.clear();
+                buffer.limit(read);
+                while (buffer.hasRemaining())
+                {
+                    if (file != null)
+                    {
+                        file.write(buffer, position + total + buffer.position());
+                    }
+                    else
+                    {
+                        channel.write(buffer);
+                    }
+                }
+                total += read;
+            }
+        }
+        finally
+        {
+            ByteBufferPool.SHARED.release(buffer);
+        }
+        return total;
+    }
+
+    /**
+     * 下载使用的GET请求，要求服务端不压缩响应，保证Range与Content-Length对应的是文件本身的字节
+     */
+    private static HttpGet downloadGet(String url)
+    {
+        try
+        {
+            HttpGet get = new HttpGet(url);
+            get.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+            return get;
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("构造Get请求时，传入了非法的参数，请求失败",e);
+            return null;
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name)
+    {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * 可用于If-Range的校验值，弱ETag不能用于If-Range，退而使用Last-Modified，都没有时返回null
+     */
+    private static String validator(HttpResponse response)
+    {
+        String etag = headerValue(response, HttpHeaders.ETAG);
+        return etag != null && !etag.startsWith("W/") ? etag : headerValue(response, HttpHeaders.LAST_MODIFIED);
+    }
+
+    /**
+     * 保存下载中的文件对应的校验值的文件
+     */
+    private static Path validatorFile(Path file)
+    {
+        return file.resolveSibling(file.getFileName() + ".validator");
+    }
+
+    /**
+     * 读取保存的校验值，没有时返回null
+     */
+    private static String readValidator(Path file) throws IOException
+    {
+        Path path = validatorFile(file);
+        if (!Files.exists(path))
+        {
+            return null;
+        }
+        String validator = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+        return validator.isEmpty() ? null : validator;
+    }
+
+    /**
+     * 保存校验值，响应没有校验值时删除之前保存的，避免用旧的校验值续传
+     */
+    private static void saveValidator(Path file, String validator) throws IOException
+    {
+        if (validator == null)
+        {
+            Files.deleteIfExists(validatorFile(file));
+        }
+        else
+        {
+            Files.write(validatorFile(file), validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Content-Range: bytes start-end/total 中的start，没有或格式错误时返回-1
+     */
+    private static long contentRangeStart(HttpResponse response)
+    {
+        String value = headerValue(response, HttpHeaders.CONTENT_RANGE);
+        if (value == null || !value.startsWith("bytes ") || value.indexOf('-') < 0)
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong(value.substring("bytes ".length(), value.indexOf('-')).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Content-Range: bytes start-end/total 或 bytes * /total 中的total，没有或未知时返回-1
+     */
+    private static long contentRangeTotal(HttpResponse response)
+    {
+        String value = headerValue(response, HttpHeaders.CONTENT_RANGE);
+        if (value == null || value.indexOf('/') < 0)
+        {
+            return -1;
+        }
+        try
+        {
+            return Long.parseLong(value.substring(value.indexOf('/') + 1).trim());
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * 响应实体已经完整读取时释放连接，否则直接关闭响应，不读取剩余的数据，连接不会被复用
+     */
+    private static void finish(HttpResponse response, boolean completed)
+    {
+        if (completed || !(response instanceof Closeable))
+        {
+            release(response, null);
+            return;
+        }
+        try
+        {
+            ((Closeable) response).close();
+        }
+        catch (IOException e)
+        {
+            logger.error("关闭响应时发生异常", e);
+        }
+    }
+
+    /*
+     *******************************批量请求方法*****************************************
+     */
+
+    /**
+     * 并行发送一批请求，阻塞等待直到全部完成或超过截止时间
+     * 请求通过异步客户端发送，不为每个请求占用线程，同时进行中的请求数不超过concurrency
+     * 同一路由同时进行中的请求数也不超过异步连接池中该路由的最大连接数
+     *
+     * 单个请求的失败只体现在其对应的BatchResult中，不会影响其他请求
+     * 超过截止时间后，进行中的请求会被中止，未完成的请求以TimeoutException失败
+     *
+     * @param requests 需要发送的请求
+     * @param converter 响应的转换方法，如 HttpUtil::responseToBytes
+     * @param concurrency 最大并发数
+     * @param timeout 整个批量请求的截止时间
+     * @param unit 截止时间的单位
+     * @return 与输入顺序一致的结果
+     */
+    public <T> List<BatchResult<T>> sendSynBatch(List<? extends HttpRequestBase> requests, Function<HttpResponse, T> converter,
+                                                  int concurrency, long timeout, TimeUnit unit)
+    {
+        Assert.notNull(requests, "需要发送的请求为null");
+        try
+        {
+            return new BatchFanOut<>(requests, this::sendAsynHttpRequest, converter, concurrency, this::asyncRouteLimit)
+                    .execute(timeout, unit);
+        }
+        catch (InterruptedException e)
+        {
+            logger.error("等待批量请求时线程被中断", e);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 并行发送一批GET请求，使用httpclient.config.batchConcurrency作为最大并发数
+     * 非法的地址只会使其对应的结果失败
+     *
+     * @see HttpUtil#sendSynBatch(List, Function, int, long, TimeUnit)
+     * @param urls 请求地址
+     * @param converter 响应的转换方法
+     * @param timeout 整个批量请求的截止时间
+     * @param unit 截止时间的单位
+     * @return 与输入顺序一致的结果
+     */
+    public <T> List<BatchResult<T>> sendSynGetBatch(Collection<String> urls, Function<HttpResponse, T> converter, long timeout, TimeUnit unit)
+    {
+        Assert.notNull(urls, "需要请求的地址为null");
+        List<HttpGet> gets = new ArrayList<>(urls.size());
+        List<BatchResult<T>> results = new ArrayList<>(urls.size());
+        for (String url : urls)
+        {
+            try
+            {
+                gets.add(new HttpGet(url));
+                results.add(null);
+            }
+            catch (IllegalArgumentException e)
+            {
+                logger.error("构造Get请求时，传入了非法的参数，请求失败",e);
+                results.add(BatchResult.failure(e));
+            }
+        }
+
+        List<BatchResult<T>> sent = sendSynBatch(gets, converter, batchConcurrency, timeout, unit);
+        if (sent == null)
+        {
+            return null;
+        }
+        //将发送的结果按顺序填回非法地址之间的空位
+        int next = 0;
+        for (int i = 0; i < results.size(); i++)
+        {
+            if (results.get(i) == null)
+            {
+                results.set(i, sent.get(next++));
+            }
+        }
+        return results;
+    }
+
+    public List<BatchResult<String>> sendSynGetStringBatch(Collection<String> urls, long timeout, TimeUnit unit)
+    {
+        return sendSynGetBatch(urls, response -> responseToString(response,DEFAULT_CHARSET), timeout, unit);
+    }
+
+    public <T> List<BatchResult<T>> sendSynGetObjectBatch(Class<T> clazz, Collection<String> urls, long timeout, TimeUnit unit)
+    {
+        return sendSynGetBatch(urls, response -> responseToObject(response,clazz,DEFAULT_CHARSET), timeout, unit);
+    }
+
+    /**
+     * 异步连接池中请求所在路由的最大连接数
+     */
+    @SuppressWarnings("unchecked")
+    private int asyncRouteLimit(HttpRequestBase request)
+    {
+        if (!(poolingNHttpClientConnectionManager instanceof ConnPoolControl))
+        {
+            return Integer.MAX_VALUE;
+        }
+        URI uri = request.getURI();
+        try
+        {
+            HttpRoute route = RouteSpecs.toRoute(uri.getScheme() + "://" + uri.getRawAuthority());
+            return ((ConnPoolControl<HttpRoute>) poolingNHttpClientConnectionManager).getMaxPerRoute(route);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Integer.MAX_VALUE;
+        }
     }
 
     /*
-     *******************************发送获得结果转换方法，主要工具方法*****************************************
+     *******************************异步发送获得结果转换方法*****************************************
      */
 
     /**
-     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
+     * 向指定的URL发送一个异步请求，不阻塞调用线程
      * 获得的结果不会被解析，而是作为byte[]返回
-     * 或者在指定了超时时间后放弃
-     * 或者在重试若干次后放弃
-     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
-     * @see HttpUtil#responseToBytes(CloseableHttpResponse)
+     * 结果的转换在公共线程池中进行，不会占用异步客户端的IO线程
+     * @see HttpUtil#sendAsynHttpRequest(HttpRequestBase)
+     * @see HttpUtil#responseToBytes(HttpResponse)
      * @param url 请求地址
-     * @return 二进制流，以提供下一步操作
+     * @return 二进制流的CompletableFuture
      */
-    public byte[] sendSynGetBytes(String url)
+    public CompletableFuture<byte[]> sendAsynGetBytes(String url)
     {
-        CloseableHttpResponse response =  sendSynGet(url);
-        if (response != null)
-        {
-            return responseToBytes(response);
-        }
-        else
-        {
-            return null;
-        }
+        return sendAsynGet(url).thenApplyAsync(HttpUtil::responseToBytes);
     }
 
     /**
-     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
-     * 获得的结果会被直接解析成为String字符串形式，解析出错不会抛出异常，而是返回null
-     * 或者在指定了超时时间后放弃
-     * 或者在重试若干次后放弃
-     * @see HttpUtil#sendSynGetBytes(String)
+     * 向指定的URL发送一个异步请求，结果使用指定的字符集解析为String
+     * 解析出错不会异常完成，而是以null完成
+     * @see HttpUtil#sendSynGetString(String, Charset)
      * @param url 请求地址
      * @return 相应的数据使用指定的字符集转换的结果
      */
-    public String sendSynGetString(String url,Charset charset)
+    public CompletableFuture<String> sendAsynGetString(String url,Charset charset)
     {
-        CloseableHttpResponse response =  sendSynGet(url);
-        if (response != null)
-        {
-            return responseToString(response,charset);
-        }
-        else
+        return sendAsynGet(url).thenApplyAsync(response -> responseToString(response,charset));
+    }
+
+    public CompletableFuture<String> sendAsynGetString(String url)
+    {
+        return sendAsynGetString(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 异步获取json对象，语义同sendSynGetJSONObject
+     * @see HttpUtil#sendSynGetJSONObject(String, Charset)
+     */
+    public CompletableFuture<JSONObject> sendAsynGetJSONObject(String url,Charset charset)
+    {
+        return sendAsynGet(url).thenApplyAsync(response -> responseToJSONObject(response,charset));
+    }
+
+    public CompletableFuture<JSONObject> sendAsynGetJSONObject(String url)
+    {
+        return sendAsynGetJSONObject(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 异步获取json数组，语义同sendSynGetJSONArray
+     * @see HttpUtil#sendSynGetJSONArray(String, Charset)
+     */
+    public CompletableFuture<JSONArray> sendAsynGetJSONArray(String url,Charset charset)
+    {
+        return sendAsynGet(url).thenApplyAsync(response -> responseToJSONArray(response,charset));
+    }
+
+    public CompletableFuture<JSONArray> sendAsynGetJSONArray(String url)
+    {
+        return sendAsynGetJSONArray(url,DEFAULT_CHARSET);
+    }
+
+    /**
+     * 异步获取指定类型的对象，语义同sendSynGetObject
+     * @see HttpUtil#sendSynGetObject(Class, String, Charset)
+     */
+    public <T> CompletableFuture<T> sendAsynGetObject(Class<T> clazz, String url,Charset charset)
+    {
+        return sendAsynGet(url).thenApplyAsync(response -> responseToObject(response,clazz,charset));
+    }
+
+    public <T> CompletableFuture<T> sendAsynGetObject(Class<T> clazz, String url)
+    {
+        return sendAsynGetObject(clazz,url,DEFAULT_CHARSET);
+    }
+
+    /*
+     *******************************带截止时间的同步请求方法*****************************************
+     */
+
+    /**
+     * 带截止时间的GET请求，截止时间只覆盖到收到响应为止
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase, long, TimeUnit)
+     */
+    public CloseableHttpResponse sendSynGet(String url, long timeout, TimeUnit unit)
+    {
+        HttpGet get = newGet(url);
+        return get == null ? null : sendSynHttpRequest(get, timeout, unit);
+    }
+
+    /**
+     * 带截止时间的GET请求，结果作为byte[]返回
+     * 发送请求，所有重试与响应体的读取均在timeout内完成，到达截止时间时请求或读取被中止，返回null
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase, long, TimeUnit)
+     */
+    public byte[] sendSynGetBytes(String url, long timeout, TimeUnit unit)
+    {
+        HttpGet get = newGet(url);
+        return get == null ? null : sendSynWithDeadline(get, timeout, unit, HttpUtil::responseToBytes);
+    }
+
+    /**
+     * 带截止时间的GET请求，结果使用utf-8解析为String，截止时间同时覆盖响应体的读取
+     * @see HttpUtil#sendSynGetBytes(String, long, TimeUnit)
+     */
+    public String sendSynGetString(String url, long timeout, TimeUnit unit)
+    {
+        HttpGet get = newGet(url);
+        return get == null ? null : sendSynWithDeadline(get, timeout, unit, response -> responseToString(response,DEFAULT_CHARSET));
+    }
+
+    /**
+     * 带截止时间的GET请求，响应以流的方式解析为指定类型的对象，截止时间同时覆盖响应体的读取
+     * @see HttpUtil#sendSynGetBytes(String, long, TimeUnit)
+     */
+    public <T> T sendSynGetObject(Class<T> clazz, String url, long timeout, TimeUnit unit)
+    {
+        HttpGet get = newGet(url);
+        return get == null ? null : sendSynWithDeadline(get, timeout, unit, response -> responseToObject(response,clazz,DEFAULT_CHARSET));
+    }
+
+    /**
+     * 带截止时间的json字符串POST请求，结果使用utf-8解析为String，截止时间同时覆盖响应体的读取
+     * @see HttpUtil#sendSynGetBytes(String, long, TimeUnit)
+     */
+    public String sendSynJsonStrPostStr(String url, String requestJson, long timeout, TimeUnit unit)
+    {
+        HttpPost post = newPost(url);
+        if (post == null)
         {
             return null;
         }
+        post.setEntity(new StringEntity(requestJson,JSON_CONTENT_TYPE));
+        return sendSynWithDeadline(post, timeout, unit, response -> responseToString(response,DEFAULT_CHARSET));
     }
 
     /**
-     * 向指定的URL发送一个同步请求，阻塞等待响应，直到获得结果
-     * 获得的结果会使用utf-8被直接解析成为String字符串形式，解析出错不会抛出异常，而是返回null
-     * 或者在指定了超时时间后放弃
-     * 或者在重试若干次后放弃
-     * @see HttpUtil#sendSynGetBytes(String)
-     * @param url 请求地址
-     * @return 相应的数据使用指定的字符集转换的结果
+     * 带截止时间的对象POST请求，对象以json形式发送，响应解析为指定类型的对象，截止时间同时覆盖响应体的读取
+     * @see HttpUtil#sendSynObjectPostObject(String, Object, Class)
      */
-    public String sendSynGetString(String url)
+    public <T> T sendSynObjectPostObject(String url, Object body, Class<T> clazz, long timeout, TimeUnit unit)
     {
-        return sendSynGetString(url,DEFAULT_CHARSET);
+        HttpPost post = newPost(url);
+        if (post == null)
+        {
+            return null;
+        }
+        post.setEntity(new JsonEntity(body,DEFAULT_CHARSET));
+        return sendSynWithDeadline(post, timeout, unit, response -> responseToObject(response,clazz,DEFAULT_CHARSET));
     }
 
     /**
-     * 当且仅当 请求实体的返回的字符串是
-     * 一个可以被解析的json对象，非数组时，返回此JSONObject
-     * 否则返回null
-     * 注意，默认使用utf-8字符集解析此字符串
-     * 注意，默认使用fastjson解析json
-     * @see HttpUtil#sendSynGetString(String)
-     * @param url
-     * @return
+     * 发送带截止时间的请求，并在同一截止时间内转换响应
+     * 到达截止时间时仍在读取的响应被关闭，转换方法因读取失败返回null
      */
-    public JSONObject sendSynGetJSONObject(String url,Charset charset)
+    private <R> R sendSynWithDeadline(HttpRequestBase request, long timeout, TimeUnit unit, Function<CloseableHttpResponse, R> converter)
     {
-        CloseableHttpResponse response =  sendSynGet(url);
-        if (response != null)
+        Deadline deadline = newDeadline(timeout, unit);
+        if (deadline == null)
         {
-            return responseToJSONObject(response,charset);
+            return null;
         }
-        else
+        try
         {
-            return null;
+            CloseableHttpResponse response = sendSynHttpRequest(request, deadline);
+            if (response == null)
+            {
+                return null;
+            }
+            //对冲请求获胜时响应不属于request，中止request不会结束响应体的读取，因此直接关闭响应
+            deadline.onExpiry(() ->
+            {
+                try
+                {
+                    response.close();
+                }
+                catch (IOException e)
+                {
+                    logger.debug("超过截止时间，关闭响应时发生异常", e);
+                }
+            });
+            return converter.apply(response);
+        }
+        finally
+        {
+            deadline.cancel();
         }
     }
 
-    public JSONObject sendSynGetJSONObject(String url)
+    private static Deadline newDeadline(long timeout, TimeUnit unit)
     {
-        return sendSynGetJSONObject(url,DEFAULT_CHARSET);
+        try
+        {
+            return Deadline.after(timeout, unit);
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("截止时间必须大于0，请求未发送：" + timeout + " " + unit);
+            return null;
+        }
     }
 
-    /**
-     * 当且仅当 请求实体的返回的字符串是
-     * 一个可以被解析的json数组，非对象，返回此JSONObject
-     * 否则返回null
-     * 注意，默认使用utf-8字符集解析此字符串
-     * 注意，默认使用fastjson解析json
-     * @see HttpUtil#sendSynGetString(String)
-     * @param url
-     * @return
-     */
-    public JSONArray sendSynGetJSONArray(String url,Charset charset)
+    private static HttpGet newGet(String url)
     {
-        CloseableHttpResponse response =  sendSynGet(url);
-        if (response != null)
+        try
         {
-            return responseToJSONArray(response,charset);
+            return new HttpGet(url);
         }
-        else
+        catch (IllegalArgumentException e)
         {
+            logger.error("构造Get请求时，传入了非法的参数，请求失败",e);
             return null;
         }
     }
 
-    public JSONArray sendGetSynJSONArray(String url)
+    private static HttpPost newPost(String url)
     {
-        return sendSynGetJSONArray(url,DEFAULT_CHARSET);
+        try
+        {
+            return new HttpPost(url);
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("构造Post请求时，传入了非法的参数，请求失败",e);
+            return null;
+        }
     }
 
+    /*
+     *******************************逻辑服务请求方法*****************************************
+     */
+
     /**
-     * @param clazz
-     * @param url
-     * @param <T>
-     * @return
+     * 向逻辑服务发送同步请求：按负载均衡策略选择一个实例，以实例的基础地址拼接path作为请求地址
+     * 请求经由sendSynHttpRequest发送，熔断，限流，重试等均以所选实例的路由为准，失败后不会换到其他实例重试
+     * 没有响应（io异常）或5xx响应记为实例的失败，连续失败的实例被暂时摘除
+     * 被熔断，限流或准入控制拒绝的请求没有发出，只减少实例进行中的请求数，不计入实例的结果
+     * 实例的耗时与进行中的请求数统计到收到响应头为止，不包括调用方读取响应实体的时间
+     *
+     * @see HttpUtil#sendSynHttpRequest(HttpRequestBase)
+     * @param service 服务名，即 httpclient.services.服务名.urls 中的服务名
+     * @param path 请求路径，可以带查询参数，如 /users/1?detail=true
+     * @param requestFactory 由完整的请求地址构造请求，如 HttpGet::new
+     * @return 原始请求结果，服务未配置或发生异常时返回null
      */
-    public <T> T sendSynGetObject(Class<T> clazz, String url,Charset charset)
+    public CloseableHttpResponse sendSynServiceRequest(String service, String path, Function<String, ? extends HttpRequestBase> requestFactory)
     {
-        CloseableHttpResponse response =  sendSynGet(url);
-        if (response != null)
+        LogicalService logicalService = services.get(service);
+        if (logicalService == null)
         {
-            return responseToObject(response,clazz,charset);
+            logger.error("未配置的逻辑服务：" + service);
+            return null;
         }
-        else
+        ServiceInstance instance = logicalService.choose();
+
+        HttpRequestBase request;
+        try
+        {
+            request = requestFactory.apply(instance.resolve(path));
+        }
+        catch (IllegalArgumentException e)
+        {
+            logicalService.release(instance);
+            logger.error("构造请求时，传入了非法的参数，请求失败", e);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        CloseableHttpResponse response = null;
+        boolean rejected = false;
+        try
+        {
+            response = executeSynHttpRequest(request, null);
+            return response;
+        }
+        catch (RequestRejectedException e)
         {
+            //被熔断，限流或准入控制拒绝的请求没有到达实例，不计入实例的结果
+            rejected = true;
+            logicalService.release(instance);
+            logger.warn(e.getMessage() + "，请求地址：" + request.getURI());
             return null;
         }
+        finally
+        {
+            if (!rejected)
+            {
+                services.onComplete(logicalService, instance, System.nanoTime() - start, isFailure(response));
+            }
+        }
     }
 
-    public <T> T sendSynGetObject(Class<T> clazz, String url)
+    /**
+     * 向逻辑服务发送同步GET请求
+     * @see HttpUtil#sendSynServiceRequest(String, String, Function)
+     */
+    public CloseableHttpResponse sendSynServiceGet(String service, String path)
     {
-        return sendSynGetObject(clazz,url,DEFAULT_CHARSET);
+        return sendSynServiceRequest(service, path, HttpGet::new);
     }
 
+    /**
+     * 向逻辑服务发送同步GET请求，结果使用utf-8解析为String，失败时返回null
+     * @see HttpUtil#sendSynServiceRequest(String, String, Function)
+     */
+    public String sendSynServiceGetString(String service, String path)
+    {
+        CloseableHttpResponse response = sendSynServiceGet(service, path);
+        if (response != null)
+        {
+            return responseToString(response,DEFAULT_CHARSET);
+        }
+        return null;
+    }
 
-    public String sendSynJsonStrPostStr(String url,String requestJson)
+    /**
+     * 向逻辑服务发送同步GET请求，结果以流的方式解析为指定类型的对象，失败时返回null
+     * @see HttpUtil#sendSynServiceRequest(String, String, Function)
+     */
+    public <T> T sendSynServiceGetObject(Class<T> clazz, String service, String path)
     {
-        CloseableHttpResponse response = sendSynPost(url,new StringEntity(requestJson,JSON_CONTENT_TYPE),null);
+        CloseableHttpResponse response = sendSynServiceGet(service, path);
+        if (response != null)
+        {
+            return responseToObject(response,clazz,DEFAULT_CHARSET);
+        }
+        return null;
+    }
+
+    /**
+     * 将json字符串POST到逻辑服务，结果使用utf-8解析为String，失败时返回null
+     * @see HttpUtil#sendSynServiceRequest(String, String, Function)
+     */
+    public String sendSynServiceJsonStrPostStr(String service, String path, String requestJson)
+    {
+        CloseableHttpResponse response = sendSynServiceRequest(service, path, url ->
+        {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new StringEntity(requestJson,JSON_CONTENT_TYPE));
+            return post;
+        });
         if (response != null)
         {
             return responseToString(response,DEFAULT_CHARSET);
@@ -484,13 +2555,86 @@ public class HttpUtil
         return null;
     }
 
-    public <T> T  sendSynJsonStrPostObject(String url,String requestJson,Class<T> clazz)
+    /**
+     * 将对象以json形式POST到逻辑服务，响应以流的方式解析为指定类型的对象，失败时返回null
+     * @see HttpUtil#sendSynObjectPostObject(String, Object, Class)
+     */
+    public <T> T sendSynServiceObjectPostObject(String service, String path, Object body, Class<T> clazz)
     {
-        CloseableHttpResponse response = sendSynPost(url,new StringEntity(requestJson,JSON_CONTENT_TYPE),null);
+        CloseableHttpResponse response = sendSynServiceRequest(service, path, url ->
+        {
+            HttpPost post = new HttpPost(url);
+            post.setEntity(new JsonEntity(body,DEFAULT_CHARSET));
+            return post;
+        });
         if (response != null)
         {
             return responseToObject(response,clazz,DEFAULT_CHARSET);
         }
         return null;
     }
+
+    /**
+     * 向逻辑服务发送异步请求，实例的选择与摘除同sendSynServiceRequest
+     * 服务未配置或构造请求失败时，返回的CompletableFuture以IllegalArgumentException异常完成
+     * 被熔断或限流拒绝，以及被调用方取消的请求不计入实例的结果
+     *
+     * @see HttpUtil#sendAsynHttpRequest(HttpRequestBase)
+     * @see HttpUtil#sendSynServiceRequest(String, String, Function)
+     */
+    public CompletableFuture<HttpResponse> sendAsynServiceRequest(String service, String path, Function<String, ? extends HttpRequestBase> requestFactory)
+    {
+        LogicalService logicalService = services.get(service);
+        if (logicalService == null)
+        {
+            logger.error("未配置的逻辑服务：" + service);
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalArgumentException("未配置的逻辑服务：" + service));
+            return failed;
+        }
+        ServiceInstance instance = logicalService.choose();
+
+        HttpRequestBase request;
+        try
+        {
+            request = requestFactory.apply(instance.resolve(path));
+        }
+        catch (IllegalArgumentException e)
+        {
+            logicalService.release(instance);
+            logger.error("构造请求时，传入了非法的参数，请求失败", e);
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> future = sendAsynHttpRequest(request);
+        future.whenComplete((response, e) ->
+        {
+            if (future.isCancelled() || e instanceof RequestRejectedException)
+            {
+                logicalService.release(instance);
+            }
+            else
+            {
+                services.onComplete(logicalService, instance, System.nanoTime() - start, e != null || isFailure(response));
+            }
+        });
+        return future;
+    }
+
+    public CompletableFuture<HttpResponse> sendAsynServiceGet(String service, String path)
+    {
+        return sendAsynServiceRequest(service, path, HttpGet::new);
+    }
+
+    /**
+     * 异步向逻辑服务发送GET请求，结果解析为指定类型的对象，语义同sendAsynGetObject
+     * @see HttpUtil#sendAsynGetObject(Class, String)
+     */
+    public <T> CompletableFuture<T> sendAsynServiceGetObject(Class<T> clazz, String service, String path)
+    {
+        return sendAsynServiceGet(service, path).thenApplyAsync(response -> responseToObject(response,clazz,DEFAULT_CHARSET));
+    }
 }
@@ -0,0 +1,158 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONReader;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 响应实体为json数组时，边读取响应流边逐个解析数组元素的迭代器
+ * 任意时刻内存中只保留当前正在解析的一个元素，适合体积很大的数组响应
+ *
+ * 数组被完整遍历后，连接会被自动释放回连接池
+ * 未遍历完毕时调用close()，不会再读取剩余的响应，而是直接中止响应并关闭连接
+ * 解析出错时抛出JSONException，并同样关闭连接
+ *
+ * @author guolinyuan
+ */
+public class JSONArrayIterator<T> implements Iterator<T>, Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(JSONArrayIterator.class);
+
+    private final HttpResponse response;
+    private final JSONReader reader;
+    private final Class<T> clazz;
+
+    /**
+     * 是否已经释放了响应资源
+     */
+    private boolean closed = false;
+
+    JSONArrayIterator(HttpResponse response, Class<T> clazz, Charset charset) throws IOException
+    {
+        this.response = response;
+        this.clazz = clazz;
+        this.reader = new JSONReader(new InputStreamReader(response.getEntity().getContent(), charset));
+        try
+        {
+            this.reader.startArray();
+        }
+        catch (JSONException e)
+        {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        if (closed)
+        {
+            return false;
+        }
+        try
+        {
+            if (reader.hasNext())
+            {
+                return true;
+            }
+            //数组已经读取完毕，正常释放连接
+            reader.endArray();
+            release();
+            return false;
+        }
+        catch (JSONException e)
+        {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException("json数组已经读取完毕");
+        }
+        try
+        {
+            return reader.readObject(clazz);
+        }
+        catch (JSONException e)
+        {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * 未读取完毕时中止响应，已读取完毕时不做任何操作
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            logger.debug("json数组未读取完毕，中止响应：" + response.getEntity());
+            abort();
+        }
+    }
+
+    /**
+     * 响应流已经读取完毕，释放连接，连接可以被复用
+     */
+    private void release()
+    {
+        closed = true;
+        try
+        {
+            reader.close();
+        }
+        catch (JSONException e)
+        {
+            logger.debug("关闭json流时，响应流未读取完毕", e);
+        }
+        try
+        {
+            EntityUtils.consume(response.getEntity());
+        }
+        catch (IOException e)
+        {
+            logger.error("释放资源时发生异常", e);
+        }
+    }
+
+    /**
+     * 响应流未读取完毕，直接关闭响应，不读取剩余的数据，连接不会被复用
+     */
+    private void abort()
+    {
+        closed = true;
+        try
+        {
+            if (response instanceof Closeable)
+            {
+                ((Closeable) response).close();
+            }
+            else
+            {
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+        catch (IOException e)
+        {
+            logger.error("关闭响应时发生异常", e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.springframework.util.Assert;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * 以json形式发送任意对象的请求实体，发送时fastjson直接将对象序列化到连接的输出流中
+ * 不生成完整的json字符串及其编码后的byte[]，体积很大的请求体在内存中只存在对象本身
+ *
+ * 长度未知，以chunked方式发送
+ * 每次发送都会重新序列化，因此实体可重复，请求失败后可以被重试
+ *
+ * @author guolinyuan
+ */
+public class JsonEntity extends AbstractHttpEntity
+{
+    private final Object object;
+    private final Charset charset;
+
+    public JsonEntity(Object object, Charset charset)
+    {
+        Assert.notNull(charset, "序列化使用的字符集为null");
+        this.object = object;
+        this.charset = charset;
+        setContentType(ContentType.create("application/json", charset).toString());
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable()
+    {
+        return true;
+    }
+
+    @Override
+    public long getContentLength()
+    {
+        return -1;
+    }
+
+    /**
+     * 只在需要以流的方式读取实体时使用（例如响应缓存或日志），会在内存中生成完整的json
+     */
+    @Override
+    public InputStream getContent()
+    {
+        return new ByteArrayInputStream(JSON.toJSONString(object).getBytes(charset));
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException
+    {
+        Assert.notNull(outstream, "输出流为null");
+        //fastjson的SerializeWriter在缓冲区写满时即刷新到writer，不会积累完整的json
+        Writer writer = new OutputStreamWriter(outstream, charset);
+        try
+        {
+            JSON.writeJSONString(writer, object);
+        }
+        catch (JSONException e)
+        {
+            //fastjson将写出时的io异常包装为JSONException，还原为IOException，使连接被正确关闭并交由重试机制处理
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming()
+    {
+        return false;
+    }
+}
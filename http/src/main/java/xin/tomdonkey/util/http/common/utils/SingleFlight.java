@@ -0,0 +1,81 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同key的并发调用，同一时刻相同key只有一个调用真正执行，其余调用等待并共享其结果
+ * 结果不会被缓存，执行完毕后下一次调用会重新执行
+ *
+ * 适用于大量线程同时请求同一个地址的场景，避免每个线程各自占用一个连接访问远程服务
+ *
+ * @author guolinyuan
+ */
+public class SingleFlight<K, V>
+{
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 执行调用，如果相同key的调用正在进行中，则等待其结果
+     * 执行中抛出的RuntimeException会同样抛给所有等待者
+     *
+     * @param key 调用的key
+     * @param loader 真正执行的调用
+     * @return 调用结果
+     */
+    public V execute(K key, Supplier<V> loader)
+    {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null)
+        {
+            return await(existing);
+        }
+
+        try
+        {
+            V value = loader.get();
+            future.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * 当前进行中的调用数
+     */
+    public int inFlightCount()
+    {
+        return inFlight.size();
+    }
+
+    private V await(CompletableFuture<V> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package xin.tomdonkey.util.http.common.admission;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 准入控制的排队顺序，等待超时，取消与并发限制调整范围的测试
+ *
+ * @author guolinyuan
+ */
+public class ConcurrencyLimiterTests
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @After
+    public void clearInterrupt()
+    {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void admitsUpToLimit()
+    {
+        ConcurrencyLimiter limiter = fixed(2, 0);
+        assertTrue(limiter.acquire(0));
+        assertEquals(ConcurrencyLimiter.Admission.ADMITTED, limiter.tryAcquire(() -> { }));
+        assertFalse(limiter.acquire(0));
+        assertEquals(ConcurrencyLimiter.Admission.REJECTED, limiter.tryAcquire(() -> { }));
+        assertEquals(2, limiter.getInflight());
+
+        limiter.release();
+        assertTrue(limiter.acquire(0));
+    }
+
+    @Test
+    public void queuedCallbacksAreGrantedInOrder()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 3);
+        assertTrue(limiter.acquire(0));
+        List<Integer> granted = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 3; i++)
+        {
+            int index = i;
+            assertEquals(ConcurrencyLimiter.Admission.QUEUED, limiter.tryAcquire(() -> granted.add(index)));
+        }
+        assertEquals(ConcurrencyLimiter.Admission.REJECTED, limiter.tryAcquire(() -> granted.add(-1)));
+        assertEquals(3, limiter.getQueued());
+
+        for (int i = 0; i < 3; i++)
+        {
+            limiter.onResult(MILLIS, false);
+            assertEquals(i + 1, granted.size());
+            assertEquals(1, limiter.getInflight());
+        }
+        assertEquals("[0, 1, 2]", granted.toString());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    public void newRequestsDoNotOvertakeQueue()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 2);
+        assertTrue(limiter.acquire(0));
+        AtomicBoolean granted = new AtomicBoolean();
+        assertEquals(ConcurrencyLimiter.Admission.QUEUED, limiter.tryAcquire(() -> granted.set(true)));
+
+        //许可归还后直接分给队列中的请求，新的请求不能插队
+        limiter.release();
+        assertTrue(granted.get());
+        assertFalse(limiter.acquire(0));
+    }
+
+    @Test
+    public void syncWaiterIsGrantedOnRelease() throws InterruptedException
+    {
+        ConcurrencyLimiter limiter = fixed(1, 1);
+        assertTrue(limiter.acquire(0));
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicBoolean admitted = new AtomicBoolean();
+        Thread waiter = new Thread(() ->
+        {
+            waiting.countDown();
+            admitted.set(limiter.acquire(TimeUnit.SECONDS.toNanos(5)));
+        });
+        waiter.start();
+        waiting.await();
+        while (limiter.getQueued() == 0)
+        {
+            Thread.sleep(1);
+        }
+        limiter.onResult(MILLIS, false);
+        waiter.join(5000);
+        assertTrue(admitted.get());
+        assertEquals(1, limiter.getInflight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    public void syncWaiterTimesOut()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 1);
+        assertTrue(limiter.acquire(0));
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(30 * MILLIS));
+        assertTrue(System.nanoTime() - start >= 25 * MILLIS);
+        //超时的请求移出队列，不占用队列的位置
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getInflight());
+    }
+
+    @Test
+    public void fullQueueRejectsWithoutWaiting()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 1);
+        assertTrue(limiter.acquire(0));
+        assertEquals(ConcurrencyLimiter.Admission.QUEUED, limiter.tryAcquire(() -> { }));
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(System.nanoTime() - start < 100 * MILLIS);
+    }
+
+    @Test
+    public void interruptedWaiterLeavesQueue()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 1);
+        assertTrue(limiter.acquire(0));
+        Thread.currentThread().interrupt();
+        assertFalse(limiter.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(Thread.interrupted());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(1, limiter.getInflight());
+    }
+
+    @Test
+    public void cancelRemovesQueuedCallback()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 2);
+        assertTrue(limiter.acquire(0));
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        AtomicBoolean nextRan = new AtomicBoolean();
+        Runnable cancelled = () -> cancelledRan.set(true);
+        limiter.tryAcquire(cancelled);
+        limiter.tryAcquire(() -> nextRan.set(true));
+
+        assertTrue(limiter.cancel(cancelled));
+        assertFalse(limiter.cancel(cancelled));
+        assertEquals(1, limiter.getQueued());
+
+        limiter.release();
+        assertFalse(cancelledRan.get());
+        assertTrue(nextRan.get());
+    }
+
+    @Test
+    public void cancelAfterGrantReturnsFalse()
+    {
+        ConcurrencyLimiter limiter = fixed(1, 1);
+        assertTrue(limiter.acquire(0));
+        Runnable callback = () -> { };
+        limiter.tryAcquire(callback);
+        limiter.release();
+        //已经获得许可的请求由回调负责归还许可
+        assertFalse(limiter.cancel(callback));
+        assertEquals(1, limiter.getInflight());
+    }
+
+    @Test
+    public void aimdBacksOffToMinimum()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("127.0.0.1:80",
+                new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.AIMD, 20, 5, 40, 0));
+        for (int i = 0; i < 100; i++)
+        {
+            assertTrue(limiter.acquire(0));
+            limiter.onResult(MILLIS, true);
+            assertTrue(limiter.getLimit() >= 5);
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void aimdGrowsToMaximumOnlyWhenBusy()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("127.0.0.1:80",
+                new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.AIMD, 4, 1, 10, 0));
+        //并发远低于限制时，成功的请求不增大限制
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(limiter.acquire(0));
+            limiter.onResult(MILLIS, false);
+        }
+        assertEquals(4, limiter.getLimit());
+
+        for (int i = 0; i < 50; i++)
+        {
+            fill(limiter);
+            limiter.onResult(MILLIS, false);
+            drain(limiter);
+            assertTrue(limiter.getLimit() <= 10);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void vegasStaysWithinBounds()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("127.0.0.1:80",
+                new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.VEGAS, 10, 4, 30, 0));
+        //耗时稳定时没有排队，限制增大到上限
+        for (int i = 0; i < 100; i++)
+        {
+            fill(limiter);
+            limiter.onResult(MILLIS, false);
+            drain(limiter);
+        }
+        assertEquals(30, limiter.getLimit());
+
+        //耗时变为最小耗时的10倍，估算的排队数超过beta，限制减小到下限
+        for (int i = 0; i < 100; i++)
+        {
+            fill(limiter);
+            limiter.onResult(10 * MILLIS, false);
+            drain(limiter);
+        }
+        assertEquals(4, limiter.getLimit());
+
+        //失败同样减小限制，不低于下限
+        assertTrue(limiter.acquire(0));
+        limiter.onResult(MILLIS, true);
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void fixedLimitDoesNotChange()
+    {
+        ConcurrencyLimiter limiter = fixed(3, 0);
+        for (int i = 0; i < 10; i++)
+        {
+            fill(limiter);
+            limiter.onResult(i % 2 == 0 ? MILLIS : 100 * MILLIS, i % 3 == 0);
+            drain(limiter);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSettings()
+    {
+        new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.FIXED, 5, 1, 4, 0);
+    }
+
+    @Test
+    public void parseAlgorithm()
+    {
+        assertEquals(ConcurrencyLimiter.Algorithm.VEGAS, ConcurrencyLimiter.Algorithm.parse(" Vegas "));
+    }
+
+    private static ConcurrencyLimiter fixed(int limit, int queueDepth)
+    {
+        return new ConcurrencyLimiter("127.0.0.1:80",
+                new ConcurrencyLimiter.Settings(ConcurrencyLimiter.Algorithm.FIXED, limit, 1, limit, queueDepth));
+    }
+
+    /**
+     * 占满当前的并发限制
+     */
+    private static void fill(ConcurrencyLimiter limiter)
+    {
+        while (limiter.acquire(0))
+        {
+            //占用许可
+        }
+    }
+
+    private static void drain(ConcurrencyLimiter limiter)
+    {
+        while (limiter.getInflight() > 0)
+        {
+            limiter.release();
+        }
+    }
+}
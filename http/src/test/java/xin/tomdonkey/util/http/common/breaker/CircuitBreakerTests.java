@@ -0,0 +1,188 @@
+package xin.tomdonkey.util.http.common.breaker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 熔断器的状态切换与半开状态探测名额的测试
+ *
+ * @author guolinyuan
+ */
+public class CircuitBreakerTests
+{
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long OPEN_DURATION = 50;
+
+    private final List<String> transitions = new ArrayList<>();
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp()
+    {
+        //窗口10s，至少4个请求，失败率50%，慢请求率50%，慢请求100ms，打开50ms，探测2个
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(10, 4, 50, 50, 100, OPEN_DURATION, 2);
+        breaker = new CircuitBreaker("127.0.0.1:80", settings, (b, from, to) -> transitions.add(from + "->" + to));
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(FAST, true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(transitions.isEmpty());
+    }
+
+    @Test
+    public void staysClosedBelowFailureRate()
+    {
+        record(1, true);
+        record(2, false);
+        record(1, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void opensOnFailureRate()
+    {
+        record(2, false);
+        record(2, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals("[CLOSED->OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void opensOnSlowCallRate()
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            breaker.onResult(i < 2 ? SLOW : FAST, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void resultsCompletedWhileOpenAreIgnored() throws InterruptedException
+    {
+        open();
+        //打开之前放行的请求在打开之后完成
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        halfOpen();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenAdmitsLimitedProbes() throws InterruptedException
+    {
+        open();
+        halfOpen();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void successfulProbesClose() throws InterruptedException
+    {
+        open();
+        halfOpen();
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+
+        //关闭时清空窗口，打开之前的失败不再计入
+        record(3, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void failedProbeReopens() throws InterruptedException
+    {
+        open();
+        halfOpen();
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        breaker.onResult(FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->OPEN]", transitions.toString());
+    }
+
+    @Test
+    public void releaseReturnsProbePermit() throws InterruptedException
+    {
+        open();
+        halfOpen();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        //请求最终没有发送，名额归还后可以再放行一个探测请求，且不计入探测结果
+        breaker.release();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void releaseOutsideHalfOpenHasNoEffect() throws InterruptedException
+    {
+        breaker.release();
+        open();
+        breaker.release();
+        halfOpen();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidSettings()
+    {
+        new CircuitBreaker.Settings(0, 4, 50, 50, 100, OPEN_DURATION, 2);
+    }
+
+    private void record(int calls, boolean failure)
+    {
+        for (int i = 0; i < calls; i++)
+        {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(FAST, failure);
+        }
+    }
+
+    private void open()
+    {
+        record(4, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * 等待打开状态结束，由第一次tryAcquire切换为半开状态，这次调用占用一个探测名额
+     */
+    private void halfOpen() throws InterruptedException
+    {
+        Thread.sleep(OPEN_DURATION + 20);
+        assertTrue(breaker.tryAcquire());
+    }
+}
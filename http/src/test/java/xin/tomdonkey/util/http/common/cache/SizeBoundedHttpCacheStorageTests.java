@@ -0,0 +1,210 @@
+package xin.tomdonkey.util.http.common.cache;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.impl.client.cache.FileResource;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+import xin.tomdonkey.util.http.common.metrics.SimpleHttpClientMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按字节数限制的缓存存储的LRU淘汰，占用字节数的计算与磁盘响应体延迟删除的测试
+ *
+ * @author guolinyuan
+ */
+public class SizeBoundedHttpCacheStorageTests
+{
+    /**
+     * 与SizeBoundedHttpCacheStorage中每个条目的估算开销一致
+     */
+    private static final long OVERHEAD = 512;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SimpleHttpClientMetrics metrics;
+
+    @Before
+    public void setUp()
+    {
+        metrics = new SimpleHttpClientMetrics();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverHeapLimit()
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(3 * (1000 + OVERHEAD), Long.MAX_VALUE, metrics);
+        storage.putEntry("a", heapEntry(1000));
+        storage.putEntry("b", heapEntry(1000));
+        storage.putEntry("c", heapEntry(1000));
+        assertEquals(3 * (1000 + OVERHEAD), storage.getHeapBytes());
+
+        //访问a之后，最久未使用的是b
+        assertNotNull(storage.getEntry("a"));
+        storage.putEntry("d", heapEntry(1000));
+        assertNull(storage.getEntry("b"));
+        assertNotNull(storage.getEntry("a"));
+        assertNotNull(storage.getEntry("c"));
+        assertNotNull(storage.getEntry("d"));
+        assertEquals(3, storage.size());
+        assertEquals(3 * (1000 + OVERHEAD), storage.getHeapBytes());
+        assertEquals(1, metrics.getCount(HttpClientMetrics.CACHE_EVICTION, HttpClientMetrics.UNKNOWN_ROUTE));
+    }
+
+    @Test
+    public void largeEntryEvictsSeveral()
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(3 * (1000 + OVERHEAD), Long.MAX_VALUE, metrics);
+        storage.putEntry("a", heapEntry(1000));
+        storage.putEntry("b", heapEntry(1000));
+        storage.putEntry("c", heapEntry(1000));
+        storage.putEntry("d", heapEntry(3000));
+        assertEquals(1, storage.size());
+        assertEquals(3000 + OVERHEAD, storage.getHeapBytes());
+        assertEquals(3, metrics.getCount(HttpClientMetrics.CACHE_EVICTION, HttpClientMetrics.UNKNOWN_ROUTE));
+    }
+
+    @Test
+    public void evictsOverDiskLimit() throws IOException
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(Long.MAX_VALUE, 2500, metrics);
+        storage.putEntry("a", diskEntry(1000));
+        storage.putEntry("b", diskEntry(1000));
+        assertEquals(2000, storage.getDiskBytes());
+        assertEquals(2 * OVERHEAD, storage.getHeapBytes());
+
+        storage.putEntry("c", diskEntry(1000));
+        assertNull(storage.getEntry("a"));
+        assertEquals(2, storage.size());
+        assertEquals(2000, storage.getDiskBytes());
+        assertEquals(1, metrics.getCount(HttpClientMetrics.CACHE_EVICTION, HttpClientMetrics.UNKNOWN_ROUTE));
+    }
+
+    @Test
+    public void replaceAndRemoveReleaseBytes() throws IOException
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(Long.MAX_VALUE, Long.MAX_VALUE, metrics);
+        storage.putEntry("a", heapEntry(1000));
+        storage.putEntry("a", heapEntry(200));
+        assertEquals(200 + OVERHEAD, storage.getHeapBytes());
+
+        //重复放入同一个条目不重复计算
+        HttpCacheEntry entry = diskEntry(300);
+        storage.putEntry("b", entry);
+        storage.putEntry("b", entry);
+        assertEquals(300, storage.getDiskBytes());
+
+        storage.updateEntry("a", old -> null);
+        storage.removeEntry("b");
+        assertEquals(0, storage.size());
+        assertEquals(0, storage.getHeapBytes());
+        assertEquals(0, storage.getDiskBytes());
+        assertEquals(0, metrics.getCount(HttpClientMetrics.CACHE_EVICTION, HttpClientMetrics.UNKNOWN_ROUTE));
+    }
+
+    @Test
+    public void evictedDiskBodyIsKeptWhileReferenced() throws Exception
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(Long.MAX_VALUE, 1500, metrics);
+        File file = folder.newFile();
+        storage.putEntry("a", diskEntry(file, 1000));
+        //模拟另一个线程已经通过getEntry取得条目，尚未读取响应体
+        HttpCacheEntry inUse = storage.getEntry("a");
+
+        storage.putEntry("b", diskEntry(1000));
+        assertNull(storage.getEntry("a"));
+        //淘汰后立即从占用中扣除，但文件要等条目不再被引用后才删除
+        assertEquals(1000, storage.getDiskBytes());
+        assertEquals(1, storage.getPendingDisposals());
+        awaitGc();
+        assertEquals(1, storage.getPendingDisposals());
+        assertTrue(file.exists());
+        assertEquals(1000, inUse.getResource().length());
+
+        inUse = null;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (storage.getPendingDisposals() > 0 && System.currentTimeMillis() < deadline)
+        {
+            awaitGc();
+        }
+        assertEquals(0, storage.getPendingDisposals());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void unreferencedBodiesAreDeletedOnLaterWrites() throws Exception
+    {
+        SizeBoundedHttpCacheStorage storage = new SizeBoundedHttpCacheStorage(Long.MAX_VALUE, Long.MAX_VALUE, metrics);
+        File file = putDisk(storage, "a");
+        storage.removeEntry("a");
+        assertTrue(file.exists());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (file.exists() && System.currentTimeMillis() < deadline)
+        {
+            awaitGc();
+            //写操作时顺带删除已回收条目的文件
+            storage.putEntry("b", heapEntry(10));
+        }
+        assertFalse(file.exists());
+        assertEquals(0, storage.getPendingDisposals());
+    }
+
+    /**
+     * 单独的方法保证条目不被调用方的局部变量引用
+     */
+    private File putDisk(SizeBoundedHttpCacheStorage storage, String key) throws IOException
+    {
+        File file = folder.newFile();
+        storage.putEntry(key, diskEntry(file, 100));
+        return file;
+    }
+
+    private static HttpCacheEntry heapEntry(int length)
+    {
+        return entry(new HeapResource(new byte[length]));
+    }
+
+    private HttpCacheEntry diskEntry(int length) throws IOException
+    {
+        return diskEntry(folder.newFile(), length);
+    }
+
+    private static HttpCacheEntry diskEntry(File file, int length) throws IOException
+    {
+        Files.write(file.toPath(), new byte[length]);
+        return entry(new FileResource(file));
+    }
+
+    private static HttpCacheEntry entry(Resource resource)
+    {
+        Date now = new Date();
+        return new HttpCacheEntry(now, now, new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK"),
+                new Header[0], resource);
+    }
+
+    private static void awaitGc() throws InterruptedException
+    {
+        System.gc();
+        Thread.sleep(20);
+    }
+}
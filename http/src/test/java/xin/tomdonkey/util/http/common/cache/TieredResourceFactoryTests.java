@@ -0,0 +1,188 @@
+package xin.tomdonkey.util.http.common.cache;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.cache.InputLimit;
+import org.apache.http.client.cache.Resource;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClientBuilder;
+import org.apache.http.impl.client.cache.FileResource;
+import org.apache.http.impl.client.cache.HeapResource;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分层响应体工厂的堆内存与磁盘保存，以及响应体超过可缓存大小时完整返回的测试
+ *
+ * @author guolinyuan
+ */
+public class TieredResourceFactoryTests
+{
+    private static final int MAX_OBJECT_SIZE = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private volatile byte[] body;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        //长度为0时使用分块传输，没有Content-Length，HttpClient只能边读边检查大小
+        server.createContext("/body", exchange ->
+        {
+            hits.incrementAndGet();
+            exchange.getResponseHeaders().add("Cache-Control", "max-age=60");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void heapBodyLargerThanMaxObjectSizeIsComplete() throws IOException
+    {
+        body = bytes(5 * MAX_OBJECT_SIZE + 123);
+        try (CloseableHttpClient client = client(new TieredResourceFactory(null, Long.MAX_VALUE)))
+        {
+            assertArrayEquals(body, get(client));
+            assertArrayEquals(body, get(client));
+        }
+        //超过可缓存大小的响应不缓存
+        assertEquals(2, hits.get());
+    }
+
+    @Test
+    public void diskBodyLargerThanMaxObjectSizeIsComplete() throws IOException
+    {
+        body = bytes(5 * MAX_OBJECT_SIZE + 123);
+        try (CloseableHttpClient client = client(new TieredResourceFactory(folder.getRoot(), 1000)))
+        {
+            assertArrayEquals(body, get(client));
+            assertArrayEquals(body, get(client));
+        }
+        assertEquals(2, hits.get());
+    }
+
+    @Test
+    public void bodyWithinMaxObjectSizeIsCached() throws IOException
+    {
+        body = bytes(MAX_OBJECT_SIZE / 2);
+        try (CloseableHttpClient client = client(new TieredResourceFactory(folder.getRoot(), 1000)))
+        {
+            assertArrayEquals(body, get(client));
+            assertArrayEquals(body, get(client));
+        }
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void generatedResourceAndRemainingStreamFormWholeBody() throws IOException
+    {
+        byte[] data = bytes(20000);
+        for (File directory : new File[]{null, folder.getRoot()})
+        {
+            InputStream in = new ByteArrayInputStream(data);
+            InputLimit limit = new InputLimit(MAX_OBJECT_SIZE);
+            Resource resource = new TieredResourceFactory(directory, 1000).generate("id", in, limit);
+            assertTrue(limit.isReached());
+            assertTrue(resource.length() > MAX_OBJECT_SIZE);
+
+            ByteArrayOutputStream whole = new ByteArrayOutputStream();
+            copy(resource.getInputStream(), whole);
+            copy(in, whole);
+            assertArrayEquals(data, whole.toByteArray());
+            resource.dispose();
+        }
+    }
+
+    @Test
+    public void smallBodyStaysOnHeap() throws IOException
+    {
+        TieredResourceFactory factory = new TieredResourceFactory(folder.getRoot(), 1000);
+        Resource small = factory.generate("id", new ByteArrayInputStream(bytes(1000)), new InputLimit(MAX_OBJECT_SIZE));
+        Resource large = factory.generate("id", new ByteArrayInputStream(bytes(1001)), new InputLimit(MAX_OBJECT_SIZE));
+        assertTrue(small instanceof HeapResource);
+        assertTrue(large instanceof FileResource);
+        assertEquals(1001, large.length());
+
+        //复制时按相同规则重新决定位置
+        Resource copy = factory.copy("id", large);
+        assertTrue(copy instanceof FileResource);
+        assertEquals(1001, copy.length());
+        large.dispose();
+        copy.dispose();
+    }
+
+    private CloseableHttpClient client(TieredResourceFactory factory)
+    {
+        return CachingHttpClientBuilder.create()
+                .setCacheConfig(CacheConfig.custom().setMaxObjectSize(MAX_OBJECT_SIZE).setSharedCache(false).build())
+                .setHttpCacheStorage(new SizeBoundedHttpCacheStorage(Long.MAX_VALUE, Long.MAX_VALUE, HttpClientMetrics.NOOP))
+                .setResourceFactory(factory)
+                .build();
+    }
+
+    private byte[] get(CloseableHttpClient client) throws IOException
+    {
+        HttpGet get = new HttpGet("http://127.0.0.1:" + server.getAddress().getPort() + "/body");
+        try (CloseableHttpResponse response = client.execute(get))
+        {
+            assertEquals(200, response.getStatusLine().getStatusCode());
+            return EntityUtils.toByteArray(response.getEntity());
+        }
+    }
+
+    private static byte[] bytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            bytes[i] = (byte) (i * 31 + i / 251);
+        }
+        return bytes;
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buf = new byte[4096];
+        int l;
+        while ((l = in.read(buf)) != -1)
+        {
+            out.write(buf, 0, l);
+        }
+        in.close();
+    }
+}
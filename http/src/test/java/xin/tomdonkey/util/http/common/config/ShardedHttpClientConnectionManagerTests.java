@@ -0,0 +1,405 @@
+package xin.tomdonkey.util.http.common.config;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 分片连接池的租用，归还，取消与调整大小的测试
+ * 租出的连接没有建立连接，归还时被关闭，只验证许可的计数与等待线程的唤醒
+ *
+ * @author guolinyuan
+ */
+public class ShardedHttpClientConnectionManagerTests
+{
+    private static final HttpRoute ROUTE_A = new HttpRoute(new HttpHost("127.0.0.1", 1));
+    private static final HttpRoute ROUTE_B = new HttpRoute(new HttpHost("127.0.0.1", 2));
+
+    private ShardedHttpClientConnectionManager manager;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp()
+    {
+        manager = new ShardedHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .build(), SystemDefaultDnsResolver.INSTANCE, -1, TimeUnit.SECONDS);
+        manager.setMaxTotal(4);
+        manager.setDefaultMaxPerRoute(2);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        manager.shutdown();
+        Thread.interrupted();
+    }
+
+    @Test
+    public void leaseTimesOutAtRouteLimit() throws Exception
+    {
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        long start = System.nanoTime();
+        try
+        {
+            manager.requestConnection(ROUTE_A, null).get(50, TimeUnit.MILLISECONDS);
+            fail("路由的连接已满，应当超时");
+        }
+        catch (ConnectionPoolTimeoutException e)
+        {
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        }
+        //其他路由不受影响
+        assertNotNull(lease(ROUTE_B));
+        assertEquals(0, manager.getTotalStats().getPending());
+    }
+
+    @Test
+    public void leaseTimesOutAtTotalLimit() throws Exception
+    {
+        manager.setMaxTotal(3);
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        lease(ROUTE_B);
+        try
+        {
+            manager.requestConnection(ROUTE_B, null).get(50, TimeUnit.MILLISECONDS);
+            fail("连接池的连接已满，应当超时");
+        }
+        catch (ConnectionPoolTimeoutException e)
+        {
+            //超时的请求归还了路由的许可
+            assertEquals(0, manager.getStats(ROUTE_B).getPending());
+        }
+    }
+
+    @Test
+    public void releaseWakesWaiter() throws Exception
+    {
+        HttpClientConnection first = lease(ROUTE_A);
+        lease(ROUTE_A);
+        Future<HttpClientConnection> waiting = executor.submit(() -> manager.requestConnection(ROUTE_A, null).get(5, TimeUnit.SECONDS));
+        awaitPending(ROUTE_A, 1);
+
+        manager.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+        assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void releaseOnOtherRouteWakesTotalWaiter() throws Exception
+    {
+        manager.setMaxTotal(2);
+        HttpClientConnection a = lease(ROUTE_A);
+        lease(ROUTE_A);
+        Future<HttpClientConnection> waiting = executor.submit(() -> manager.requestConnection(ROUTE_B, null).get(5, TimeUnit.SECONDS));
+        awaitPending(ROUTE_B, 1);
+
+        manager.releaseConnection(a, null, 0, TimeUnit.MILLISECONDS);
+        assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownWakesWaitersWithoutTimeout() throws Exception
+    {
+        manager.setMaxTotal(3);
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        lease(ROUTE_B);
+        //timeout为0时一直等待，分别等待路由的许可与连接池的许可
+        Future<HttpClientConnection> routeWaiter = executor.submit(() -> manager.requestConnection(ROUTE_A, null).get(0, TimeUnit.MILLISECONDS));
+        Future<HttpClientConnection> totalWaiter = executor.submit(() -> manager.requestConnection(ROUTE_B, null).get(0, TimeUnit.MILLISECONDS));
+        awaitPending(ROUTE_A, 1);
+        awaitPending(ROUTE_B, 1);
+
+        manager.shutdown();
+        assertShutDown(routeWaiter);
+        assertShutDown(totalWaiter);
+    }
+
+    @Test
+    public void cancelWakesWaiterWithoutInterrupt() throws Exception
+    {
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        ConnectionRequest request = manager.requestConnection(ROUTE_A, null);
+        Future<Boolean> waiting = executor.submit(() ->
+        {
+            try
+            {
+                request.get(0, TimeUnit.MILLISECONDS);
+                return false;
+            }
+            catch (ExecutionException e)
+            {
+                //与PoolingHttpClientConnectionManager一致，且不设置中断状态
+                return e.getCause() instanceof CancellationException && !Thread.currentThread().isInterrupted();
+            }
+        });
+        awaitPending(ROUTE_A, 1);
+
+        assertTrue(request.cancel());
+        assertFalse(request.cancel());
+        assertTrue(waiting.get(1, TimeUnit.SECONDS));
+        assertEquals(0, manager.getStats(ROUTE_A).getPending());
+    }
+
+    @Test
+    public void cancelBeforeGetFailsImmediately() throws Exception
+    {
+        ConnectionRequest request = manager.requestConnection(ROUTE_A, null);
+        assertTrue(request.cancel());
+        try
+        {
+            request.get(1, TimeUnit.SECONDS);
+            fail("已取消的请求不应获得连接");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof CancellationException);
+        }
+        assertFalse(Thread.currentThread().isInterrupted());
+        //没有占用许可
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+    }
+
+    @Test
+    public void cancelAfterLeaseHasNoEffect() throws Exception
+    {
+        ConnectionRequest request = manager.requestConnection(ROUTE_A, null);
+        assertNotNull(request.get(1, TimeUnit.SECONDS));
+        assertFalse(request.cancel());
+    }
+
+    @Test
+    public void interruptedWaiterThrowsInterruptedException() throws Exception
+    {
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        CountDownLatch started = new CountDownLatch(1);
+        Future<Boolean> waiting = executor.submit(() ->
+        {
+            started.countDown();
+            try
+            {
+                manager.requestConnection(ROUTE_A, null).get(5, TimeUnit.SECONDS);
+                return false;
+            }
+            catch (InterruptedException e)
+            {
+                return true;
+            }
+        });
+        started.await();
+        awaitPending(ROUTE_A, 1);
+        waiting.cancel(true);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (manager.getStats(ROUTE_A).getPending() > 0 && System.nanoTime() < deadline)
+        {
+            Thread.sleep(1);
+        }
+        assertEquals(0, manager.getStats(ROUTE_A).getPending());
+    }
+
+    @Test
+    public void growingRouteLimitWakesWaiter() throws Exception
+    {
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        Future<HttpClientConnection> waiting = executor.submit(() -> manager.requestConnection(ROUTE_A, null).get(5, TimeUnit.SECONDS));
+        awaitPending(ROUTE_A, 1);
+
+        manager.setMaxPerRoute(ROUTE_A, 3);
+        assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void growingTotalLimitWakesWaiter() throws Exception
+    {
+        manager.setMaxTotal(2);
+        lease(ROUTE_A);
+        lease(ROUTE_B);
+        Future<HttpClientConnection> waiting = executor.submit(() -> manager.requestConnection(ROUTE_A, null).get(5, TimeUnit.SECONDS));
+        awaitPending(ROUTE_A, 1);
+
+        manager.setMaxTotal(3);
+        assertNotNull(waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shrinkingRouteLimitTakesEffectOnRelease() throws Exception
+    {
+        HttpClientConnection first = lease(ROUTE_A);
+        lease(ROUTE_A);
+        manager.setMaxPerRoute(ROUTE_A, 1);
+
+        //调小后已经租出的连接归还之前不再发出新的许可
+        manager.releaseConnection(first, null, 0, TimeUnit.MILLISECONDS);
+        try
+        {
+            manager.requestConnection(ROUTE_A, null).get(30, TimeUnit.MILLISECONDS);
+            fail("调小后的限制应当生效");
+        }
+        catch (ConnectionPoolTimeoutException e)
+        {
+            assertEquals(1, manager.getStats(ROUTE_A).getMax());
+        }
+    }
+
+    /**
+     * 多个线程同时租用与归还，同时随机取消请求并调整路由的最大连接数
+     * 租出的连接数任何时候都不超过连接池的限制，结束后所有许可均被归还
+     */
+    @Test
+    public void concurrentLeaseCancelReleaseAndResize() throws Exception
+    {
+        int threads = 8;
+        int iterations = 300;
+        manager.setMaxTotal(3);
+        HttpRoute[] routes = {ROUTE_A, ROUTE_B};
+        AtomicInteger leasedNow = new AtomicInteger();
+        AtomicInteger maxLeased = new AtomicInteger();
+        AtomicInteger leases = new AtomicInteger();
+        AtomicInteger cancellations = new AtomicInteger();
+        ConcurrentHashMap<ConnectionRequest, Boolean> waiting = new ConcurrentHashMap<>();
+
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            workers.add(executor.submit(() ->
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < iterations; i++)
+                {
+                    ConnectionRequest request = manager.requestConnection(routes[random.nextInt(routes.length)], null);
+                    waiting.put(request, Boolean.TRUE);
+                    HttpClientConnection connection;
+                    try
+                    {
+                        connection = request.get(2, TimeUnit.SECONDS);
+                    }
+                    catch (ExecutionException e)
+                    {
+                        assertTrue(e.getCause() instanceof CancellationException);
+                        cancellations.incrementAndGet();
+                        continue;
+                    }
+                    finally
+                    {
+                        waiting.remove(request);
+                    }
+                    int now = leasedNow.incrementAndGet();
+                    maxLeased.accumulateAndGet(now, Math::max);
+                    leases.incrementAndGet();
+                    if (random.nextInt(4) == 0)
+                    {
+                        Thread.yield();
+                    }
+                    leasedNow.decrementAndGet();
+                    manager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+                }
+                assertFalse(Thread.currentThread().isInterrupted());
+                return null;
+            }));
+        }
+
+        //取消与调整大小的线程
+        Future<?> chaos = executor.submit(() ->
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (workers.stream().anyMatch(worker -> !worker.isDone()))
+            {
+                for (ConnectionRequest request : waiting.keySet())
+                {
+                    if (random.nextInt(3) == 0)
+                    {
+                        request.cancel();
+                    }
+                }
+                manager.setMaxPerRoute(routes[random.nextInt(routes.length)], 1 + random.nextInt(2));
+                Thread.yield();
+            }
+            return null;
+        });
+
+        for (Future<?> worker : workers)
+        {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        chaos.get(5, TimeUnit.SECONDS);
+
+        assertEquals(threads * iterations, leases.get() + cancellations.get());
+        assertTrue("租出的连接数超过了连接池的限制：" + maxLeased.get(), maxLeased.get() <= 3);
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(0, manager.getTotalStats().getPending());
+
+        //所有许可均已归还，可以租满调整后的限制
+        manager.setMaxPerRoute(ROUTE_A, 2);
+        manager.setMaxPerRoute(ROUTE_B, 1);
+        lease(ROUTE_A);
+        lease(ROUTE_A);
+        lease(ROUTE_B);
+    }
+
+    private HttpClientConnection lease(HttpRoute route) throws Exception
+    {
+        return manager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+    }
+
+    private static void assertShutDown(Future<HttpClientConnection> waiting) throws Exception
+    {
+        try
+        {
+            waiting.get(1, TimeUnit.SECONDS);
+            fail("连接池已关闭，应当抛出异常");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private void awaitPending(HttpRoute route, int pending) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.getStats(route).getPending() < pending)
+        {
+            if (System.nanoTime() > deadline)
+            {
+                fail("等待的请求没有登记");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package xin.tomdonkey.util.http.common.limit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 令牌桶限流器的预约计算，超时方式与等待时中断的测试
+ *
+ * @author guolinyuan
+ */
+public class RateLimiterTests
+{
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MILLIS_100 = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @After
+    public void clearInterrupt()
+    {
+        Thread.interrupted();
+    }
+
+    @Test
+    public void burstIsAvailableImmediately()
+    {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        assertEquals(3, limiter.getAvailablePermits());
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(0, limiter.reserve(0));
+        }
+        assertEquals(0, limiter.getAvailablePermits());
+        assertEquals(-1, limiter.reserve(0));
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void reservationsAreSpacedByInterval()
+    {
+        RateLimiter limiter = new RateLimiter(1, 3);
+        for (int i = 0; i < 3; i++)
+        {
+            limiter.reserve(0);
+        }
+        //桶空之后每个预约比前一个晚一个间隔
+        long first = limiter.reserve(Long.MAX_VALUE);
+        long second = limiter.reserve(Long.MAX_VALUE);
+        assertBetween(SECOND - MILLIS_100, SECOND, first);
+        assertBetween(2 * SECOND - MILLIS_100, 2 * SECOND, second);
+        assertBetween(SECOND - MILLIS_100 / 10, SECOND + MILLIS_100 / 10, second - first);
+    }
+
+    @Test
+    public void failedReservationConsumesNothing()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals(0, limiter.reserve(0));
+        assertEquals(-1, limiter.reserve(SECOND / 2));
+        assertEquals(-1, limiter.reserve(0));
+        //失败的预约没有推进下一个许可的时间
+        assertBetween(SECOND - MILLIS_100, SECOND, limiter.reserve(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void fractionalRate()
+    {
+        RateLimiter limiter = new RateLimiter(0.5, 1);
+        assertEquals(0, limiter.reserve(0));
+        assertBetween(2 * SECOND - MILLIS_100, 2 * SECOND, limiter.reserve(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void burstRefillsAfterIdle() throws InterruptedException
+    {
+        RateLimiter limiter = new RateLimiter(50, 2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        //间隔20ms，空闲足够久后桶重新装满，但不超过burst
+        Thread.sleep(100);
+        assertEquals(2, limiter.getAvailablePermits());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void timeoutModeWaitsWithinTimeout()
+    {
+        RateLimiter limiter = new RateLimiter(20, 1);
+        assertTrue(limiter.tryAcquire());
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(RateLimiter.Mode.TIMEOUT, 200, TimeUnit.MILLISECONDS));
+        long elapsed = System.nanoTime() - start;
+        assertBetween(TimeUnit.MILLISECONDS.toNanos(40), SECOND, elapsed);
+    }
+
+    @Test
+    public void timeoutModeFailsFastBeyondTimeout()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertTrue(limiter.tryAcquire());
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire(RateLimiter.Mode.TIMEOUT, 100, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.acquire(RateLimiter.Mode.FAIL_FAST, 0, TimeUnit.MILLISECONDS));
+        //超时不够时不等待
+        assertTrue(System.nanoTime() - start < MILLIS_100);
+    }
+
+    @Test
+    public void pauseStopsOnInterrupt()
+    {
+        Thread.currentThread().interrupt();
+        long start = System.nanoTime();
+        assertFalse(RateLimiter.pause(SECOND));
+        assertTrue(System.nanoTime() - start < SECOND / 2);
+        //中断状态保留给调用方
+        assertTrue(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void blockingAcquireReturnsFalseWhenInterrupted()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertTrue(limiter.acquire());
+        Thread.currentThread().interrupt();
+        assertFalse(limiter.acquire(RateLimiter.Mode.BLOCK, 0, TimeUnit.MILLISECONDS));
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void pauseHandlesFailedAndImmediateReservations()
+    {
+        assertFalse(RateLimiter.pause(-1));
+        assertTrue(RateLimiter.pause(0));
+    }
+
+    @Test
+    public void parseMode()
+    {
+        assertEquals(RateLimiter.Mode.BLOCK, RateLimiter.Mode.parse(" Block "));
+        assertEquals(RateLimiter.Mode.FAIL_FAST, RateLimiter.Mode.parse("fail-fast"));
+        assertEquals(RateLimiter.Mode.FAIL_FAST, RateLimiter.Mode.parse("FAIL_FAST"));
+        assertEquals(RateLimiter.Mode.TIMEOUT, RateLimiter.Mode.parse("timeout"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseUnknownMode()
+    {
+        RateLimiter.Mode.parse("queue");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate()
+    {
+        new RateLimiter(0, 1);
+    }
+
+    private static void assertBetween(long min, long max, long actual)
+    {
+        assertTrue(actual + " 不在 [" + min + ", " + max + "] 之间", actual >= min && actual <= max);
+    }
+}
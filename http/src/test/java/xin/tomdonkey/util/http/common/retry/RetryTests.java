@@ -0,0 +1,167 @@
+package xin.tomdonkey.util.http.common.retry;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import xin.tomdonkey.util.http.common.metrics.HttpClientMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * io异常重试与429/503重试共用最大执行次数，以及Retry-After解析的测试
+ *
+ * @author guolinyuan
+ */
+public class RetryTests
+{
+    private static final int MAX_ATTEMPTS = 3;
+
+    private ServerSocket server;
+    private Thread acceptor;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /**
+     * 按第几次请求（从1开始）返回响应，返回null时不响应直接关闭连接
+     */
+    private volatile IntFunction<String> responder;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::serve, "retry-test-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        server.close();
+    }
+
+    @Test
+    public void serviceUnavailableRetriesUpToMaxAttempts() throws IOException
+    {
+        responder = hit -> "503 Service Unavailable";
+        try (CloseableHttpClient client = client(); CloseableHttpResponse response = client.execute(get()))
+        {
+            assertEquals(503, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(MAX_ATTEMPTS, hits.get());
+    }
+
+    @Test
+    public void ioAndServiceUnavailableRetriesShareMaxAttempts() throws IOException
+    {
+        //奇数次请求断开连接，偶数次请求返回503
+        responder = hit -> hit % 2 == 1 ? null : "503 Service Unavailable";
+        try (CloseableHttpClient client = client(); CloseableHttpResponse response = client.execute(get()))
+        {
+            fail("第" + MAX_ATTEMPTS + "次执行断开了连接，应当抛出异常，实际返回" + response.getStatusLine());
+        }
+        catch (NoHttpResponseException e)
+        {
+            //次数用尽后抛出最后一次的异常
+        }
+        assertEquals(MAX_ATTEMPTS, hits.get());
+    }
+
+    @Test
+    public void tooLongRetryAfterIsNotRetried() throws IOException
+    {
+        responder = hit -> "429 Too Many Requests\r\nRetry-After: 9223372036854775807";
+        try (CloseableHttpClient client = client(); CloseableHttpResponse response = client.execute(get()))
+        {
+            assertEquals(429, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    public void parseRetryAfter()
+    {
+        assertEquals(-1, RetryAfterRetryStrategy.retryAfter(response(null)));
+        assertEquals(-1, RetryAfterRetryStrategy.retryAfter(response("soon")));
+        assertEquals(0, RetryAfterRetryStrategy.retryAfter(response("-5")));
+        assertEquals(3000, RetryAfterRetryStrategy.retryAfter(response(" 3 ")));
+        //换算为ms溢出，或超出long的秒数，视为无限长
+        assertEquals(Long.MAX_VALUE, RetryAfterRetryStrategy.retryAfter(response("9223372036854775807")));
+        assertEquals(Long.MAX_VALUE, RetryAfterRetryStrategy.retryAfter(response("99999999999999999999")));
+        assertEquals(0, RetryAfterRetryStrategy.retryAfter(response("Wed, 21 Oct 2015 07:28:00 GMT")));
+    }
+
+    private CloseableHttpClient client()
+    {
+        RetryPolicy.Routes policies = new RetryPolicy.Routes(new RetryPolicy(MAX_ATTEMPTS, 1, 1), "");
+        RetryBudget budget = new RetryBudget(1, 1000, 10);
+        return HttpClients.custom()
+                .setRetryHandler(new BackoffRetryHandler(policies, budget, HttpClientMetrics.NOOP))
+                .setServiceUnavailableRetryStrategy(new RetryAfterRetryStrategy(policies, budget, HttpClientMetrics.NOOP, 1000))
+                .addInterceptorFirst(BackoffRetryHandler.attemptInterceptor(budget))
+                .build();
+    }
+
+    private HttpGet get()
+    {
+        return new HttpGet("http://127.0.0.1:" + server.getLocalPort() + "/");
+    }
+
+    private static HttpResponse response(String retryAfter)
+    {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+        if (retryAfter != null)
+        {
+            response.addHeader("Retry-After", retryAfter);
+        }
+        return response;
+    }
+
+    private void serve()
+    {
+        while (!server.isClosed())
+        {
+            try (Socket socket = server.accept())
+            {
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+                String line;
+                while ((line = in.readLine()) != null && !line.isEmpty())
+                {
+                    //读取完请求头
+                }
+                String status = responder.apply(hits.incrementAndGet());
+                if (status != null)
+                {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                }
+            }
+            catch (IOException e)
+            {
+                //服务关闭
+            }
+        }
+    }
+}
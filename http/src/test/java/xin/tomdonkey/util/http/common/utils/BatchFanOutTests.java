@@ -0,0 +1,219 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量请求扇出的并发限制，路由限制，截止时间与同步抛出异常的测试
+ * 使用模拟的发送方法，不发送真实的请求
+ *
+ * @author guolinyuan
+ */
+public class BatchFanOutTests
+{
+    private static final String PATH = "X-Path";
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    /**
+     * 当前进行中的请求数，按host统计
+     */
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> maxInFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger maxTotal = new AtomicInteger();
+
+    @After
+    public void tearDown()
+    {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void resultsKeepInputOrder() throws InterruptedException
+    {
+        List<HttpGet> requests = gets("http://a.test/1", "http://b.test/2", "http://a.test/3", "http://c.test/4");
+        List<BatchResult<String>> results = fanOut(requests, this::delayed, 10, 10).execute(5, TimeUnit.SECONDS);
+
+        assertEquals(4, results.size());
+        for (int i = 0; i < requests.size(); i++)
+        {
+            assertTrue(results.get(i).isSuccess());
+            assertEquals(requests.get(i).getURI().getPath(), results.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void routeLimitCapsRequestsPerRoute() throws InterruptedException
+    {
+        List<HttpGet> requests = gets("http://a.test/1", "http://a.test/2", "http://a.test/3",
+                "http://b.test/1", "http://b.test/2", "http://b.test/3");
+        List<BatchResult<String>> results = fanOut(requests, this::delayed, 10, 1).execute(5, TimeUnit.SECONDS);
+
+        assertTrue(results.stream().allMatch(BatchResult::isSuccess));
+        //每个路由同时只有一个请求，但两个路由之间并不互相等待
+        assertEquals(1, maxInFlight.get("a.test").get());
+        assertEquals(1, maxInFlight.get("b.test").get());
+        assertEquals(2, maxTotal.get());
+    }
+
+    @Test
+    public void concurrencyCapsWholeBatch() throws InterruptedException
+    {
+        List<HttpGet> requests = gets("http://a.test/1", "http://b.test/1", "http://c.test/1",
+                "http://d.test/1", "http://e.test/1");
+        List<BatchResult<String>> results = fanOut(requests, this::delayed, 2, 10).execute(5, TimeUnit.SECONDS);
+
+        assertTrue(results.stream().allMatch(BatchResult::isSuccess));
+        assertEquals(2, maxTotal.get());
+    }
+
+    @Test
+    public void expiryCancelsInFlightRequests() throws InterruptedException
+    {
+        List<CompletableFuture<HttpResponse>> sent = new ArrayList<>();
+        Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender = request ->
+        {
+            //永远不会完成的请求
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        };
+        List<HttpGet> requests = gets("http://a.test/1", "http://a.test/2", "http://b.test/1");
+        long start = System.nanoTime();
+        List<BatchResult<String>> results = fanOut(requests, sender, 10, 1).execute(50, TimeUnit.MILLISECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+        for (BatchResult<String> result : results)
+        {
+            assertFalse(result.isSuccess());
+            assertTrue(result.getException() instanceof TimeoutException);
+        }
+        //路由限制为1，a.test的第二个请求一直在等待，超时后不再发送
+        assertEquals(2, sent.size());
+        assertTrue(sent.stream().allMatch(CompletableFuture::isCancelled));
+    }
+
+    @Test
+    public void expiryKeepsCompletedResults() throws InterruptedException
+    {
+        Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender = request ->
+                "a.test".equals(request.getURI().getHost()) ? CompletableFuture.completedFuture(ok(request)) : new CompletableFuture<>();
+        List<HttpGet> requests = gets("http://a.test/1", "http://b.test/1");
+        List<BatchResult<String>> results = fanOut(requests, sender, 10, 10).execute(100, TimeUnit.MILLISECONDS);
+
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).getException() instanceof TimeoutException);
+    }
+
+    @Test
+    public void synchronousExceptionReleasesSlot() throws InterruptedException
+    {
+        IllegalStateException closed = new IllegalStateException("客户端已关闭");
+        Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender = request ->
+        {
+            if ("/bad".equals(request.getURI().getPath()))
+            {
+                throw closed;
+            }
+            return delayed(request);
+        };
+        //并发数与路由限制都为1，同步抛出的异常没有归还名额时，后面的请求永远不会发送
+        List<HttpGet> requests = gets("http://a.test/bad", "http://a.test/1", "http://a.test/bad", "http://a.test/2");
+        List<BatchResult<String>> results = fanOut(requests, sender, 1, 1).execute(5, TimeUnit.SECONDS);
+
+        assertSame(closed, results.get(0).getException());
+        assertEquals("/1", results.get(1).getValue());
+        assertSame(closed, results.get(2).getException());
+        assertEquals("/2", results.get(3).getValue());
+    }
+
+    @Test
+    public void failedRequestDoesNotFailBatch() throws InterruptedException
+    {
+        IllegalArgumentException failure = new IllegalArgumentException("failed");
+        Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender = request ->
+        {
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            if ("/bad".equals(request.getURI().getPath()))
+            {
+                future.completeExceptionally(failure);
+                return future;
+            }
+            return delayed(request);
+        };
+        List<HttpGet> requests = gets("http://a.test/bad", "http://a.test/1");
+        List<BatchResult<String>> results = fanOut(requests, sender, 1, 1).execute(5, TimeUnit.SECONDS);
+
+        //异步失败的异常被展开，而不是包装的CompletionException
+        assertSame(failure, results.get(0).getException());
+        assertEquals("/1", results.get(1).getValue());
+    }
+
+    private static BatchFanOut<String> fanOut(List<HttpGet> requests, Function<HttpRequestBase, CompletableFuture<HttpResponse>> sender,
+                                              int concurrency, int routeLimit)
+    {
+        return new BatchFanOut<>(requests, sender, response -> response.getFirstHeader(PATH).getValue(), concurrency, request -> routeLimit);
+    }
+
+    /**
+     * 20ms后完成的请求，同时统计进行中的请求数
+     */
+    private CompletableFuture<HttpResponse> delayed(HttpRequestBase request)
+    {
+        String host = request.getURI().getHost();
+        AtomicInteger route = inFlight.computeIfAbsent(host, k -> new AtomicInteger());
+        maxInFlight.computeIfAbsent(host, k -> new AtomicInteger()).accumulateAndGet(route.incrementAndGet(), Math::max);
+        maxTotal.accumulateAndGet(total.incrementAndGet(), Math::max);
+
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        scheduler.schedule(() ->
+        {
+            //先减少计数再完成，完成后扇出才会发送下一个请求
+            route.decrementAndGet();
+            total.decrementAndGet();
+            future.complete(ok(request));
+        }, 20, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * 响应中携带请求的路径，转换的结果即为路径，便于检查结果与请求的对应关系
+     */
+    private static HttpResponse ok(HttpRequestBase request)
+    {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setHeader(PATH, request.getURI().getPath());
+        return response;
+    }
+
+    private static List<HttpGet> gets(String... urls)
+    {
+        List<HttpGet> gets = new ArrayList<>();
+        Arrays.stream(urls).map(HttpGet::new).forEach(gets::add);
+        return gets;
+    }
+}
@@ -0,0 +1,157 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 缓冲池的容量分级，归还复用，扩容与每一级保留上限的测试
+ *
+ * @author guolinyuan
+ */
+public class ByteBufferPoolTests
+{
+    private final ByteBufferPool pool = new ByteBufferPool();
+
+    @Test
+    public void acquireRoundsUpToSizeClass()
+    {
+        assertEquals(ByteBufferPool.MIN_CAPACITY, pool.acquire(0).capacity());
+        assertEquals(ByteBufferPool.MIN_CAPACITY, pool.acquire(1).capacity());
+        assertEquals(ByteBufferPool.MIN_CAPACITY, pool.acquire(ByteBufferPool.MIN_CAPACITY).capacity());
+        assertEquals(2 * ByteBufferPool.MIN_CAPACITY, pool.acquire(ByteBufferPool.MIN_CAPACITY + 1).capacity());
+        assertEquals(1 << 20, pool.acquire((1 << 19) + 1).capacity());
+        assertEquals(ByteBufferPool.MAX_CAPACITY, pool.acquire(ByteBufferPool.MAX_CAPACITY).capacity());
+        //超过最大级别时按需要的容量分配，不再取整
+        assertEquals(ByteBufferPool.MAX_CAPACITY + 1, pool.acquire(ByteBufferPool.MAX_CAPACITY + 1).capacity());
+    }
+
+    @Test
+    public void releasedBufferIsReusedWithinItsClass()
+    {
+        ByteBuffer buffer = pool.acquire(5000);
+        buffer.put(new byte[100]).limit(200);
+        pool.release(buffer);
+
+        //同一级别的请求取回同一个缓冲区，且已被清空
+        ByteBuffer reused = pool.acquire(8192);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+
+        //其他级别不受影响
+        pool.release(reused);
+        assertNotSame(buffer, pool.acquire(4096));
+        assertNotSame(buffer, pool.acquire(16384));
+    }
+
+    @Test
+    public void foreignBuffersAreDiscarded()
+    {
+        ByteBuffer odd = ByteBuffer.allocate(5000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(8192);
+        ByteBuffer readOnly = ByteBuffer.allocate(8192).asReadOnlyBuffer();
+        ByteBuffer small = ByteBuffer.allocate(1024);
+        ByteBuffer oversize = ByteBuffer.allocate(2 * ByteBufferPool.MAX_CAPACITY);
+        for (ByteBuffer buffer : new ByteBuffer[]{odd, direct, readOnly, small, oversize})
+        {
+            pool.release(buffer);
+        }
+
+        assertFalse(isAnyOf(pool.acquire(8192), odd, direct, readOnly));
+        assertFalse(isAnyOf(pool.acquire(1024), small));
+        assertFalse(isAnyOf(pool.acquire(2 * ByteBufferPool.MAX_CAPACITY), oversize));
+    }
+
+    @Test
+    public void growDoublesAndKeepsContent()
+    {
+        ByteBuffer buffer = pool.acquire(ByteBufferPool.MIN_CAPACITY);
+        for (int i = 0; i < buffer.capacity(); i++)
+        {
+            buffer.put((byte) i);
+        }
+        ByteBuffer larger = pool.grow(buffer);
+
+        assertEquals(2 * ByteBufferPool.MIN_CAPACITY, larger.capacity());
+        assertEquals(ByteBufferPool.MIN_CAPACITY, larger.position());
+        for (int i = 0; i < ByteBufferPool.MIN_CAPACITY; i++)
+        {
+            assertEquals((byte) i, larger.get(i));
+        }
+        //原缓冲区已被归还
+        assertSame(buffer, pool.acquire(ByteBufferPool.MIN_CAPACITY));
+    }
+
+    @Test
+    public void growBeyondMaxCapacityIsNotPooled()
+    {
+        ByteBuffer buffer = pool.acquire(ByteBufferPool.MAX_CAPACITY);
+        buffer.position(buffer.capacity());
+        ByteBuffer larger = pool.grow(buffer);
+        assertEquals(2 * ByteBufferPool.MAX_CAPACITY, larger.capacity());
+        assertEquals(ByteBufferPool.MAX_CAPACITY, larger.position());
+
+        pool.release(larger);
+        assertNotSame(larger, pool.acquire(2 * ByteBufferPool.MAX_CAPACITY));
+        assertSame(buffer, pool.acquire(ByteBufferPool.MAX_CAPACITY));
+    }
+
+    @Test
+    public void retentionIsCappedPerClass()
+    {
+        //最大级别4MB，每一级最多保留8MB，即两个空闲缓冲区
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            buffers.add(pool.acquire(ByteBufferPool.MAX_CAPACITY));
+        }
+        buffers.forEach(pool::release);
+
+        Set<ByteBuffer> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        released.addAll(buffers);
+        assertTrue(released.contains(pool.acquire(ByteBufferPool.MAX_CAPACITY)));
+        assertTrue(released.contains(pool.acquire(ByteBufferPool.MAX_CAPACITY)));
+        assertFalse(released.contains(pool.acquire(ByteBufferPool.MAX_CAPACITY)));
+    }
+
+    @Test
+    public void retentionCountsBuffersTakenOut()
+    {
+        ByteBuffer first = pool.acquire(ByteBufferPool.MAX_CAPACITY);
+        ByteBuffer second = pool.acquire(ByteBufferPool.MAX_CAPACITY);
+        ByteBuffer third = pool.acquire(ByteBufferPool.MAX_CAPACITY);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        //取出后空闲数减少，可以再归还新的缓冲区
+        assertSame(first, pool.acquire(ByteBufferPool.MAX_CAPACITY));
+        pool.release(third);
+        assertSame(second, pool.acquire(ByteBufferPool.MAX_CAPACITY));
+        assertSame(third, pool.acquire(ByteBufferPool.MAX_CAPACITY));
+    }
+
+    private static boolean isAnyOf(ByteBuffer buffer, ByteBuffer... candidates)
+    {
+        for (ByteBuffer candidate : candidates)
+        {
+            if (buffer == candidate)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,203 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import com.alibaba.fastjson.JSONException;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * json数组迭代器的逐个解析，读取完毕后释放连接，以及提前关闭与解析出错时中止连接的测试
+ *
+ * @author guolinyuan
+ */
+public class JSONArrayIteratorTests
+{
+    private HttpServer server;
+    private ExecutorService executor;
+    private PoolingHttpClientConnectionManager manager;
+    private CloseableHttpClient client;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/array", exchange ->
+        {
+            byte[] body = "[{\"id\":1},{\"id\":2},{\"id\":3}]".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        //分块传输一个几乎不会结束的数组，读取剩余的响应要等待很久
+        server.createContext("/endless", exchange ->
+        {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write('[');
+                for (int i = 0; i < 1000; i++)
+                {
+                    out.write(((i == 0 ? "" : ",") + "{\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+                out.write(']');
+            }
+            catch (IOException e)
+            {
+                //客户端中止了响应
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/broken", exchange ->
+        {
+            byte[] body = "[{\"id\":1},{\"id\":".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        server.createContext("/object", exchange ->
+        {
+            byte[] body = "{\"id\":1}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+
+        manager = new PoolingHttpClientConnectionManager();
+        client = HttpClients.custom().setConnectionManager(manager).build();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        client.close();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fullIterationReleasesConnectionForReuse() throws IOException
+    {
+        JSONArrayIterator<Item> iterator = iterator("/array");
+        List<Integer> ids = new ArrayList<>();
+        while (iterator.hasNext())
+        {
+            ids.add(iterator.next().id);
+        }
+        assertEquals("[1, 2, 3]", ids.toString());
+        assertFalse(iterator.hasNext());
+
+        //连接读取完毕后回到连接池
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(1, manager.getTotalStats().getAvailable());
+        iterator.close();
+        assertEquals(1, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void earlyCloseAbortsConnection() throws IOException
+    {
+        JSONArrayIterator<Item> iterator = iterator("/endless");
+        assertEquals(0, iterator.next().id);
+        assertEquals(1, iterator.next().id);
+
+        //不读取剩余的约20秒的响应，直接关闭连接
+        long start = System.nanoTime();
+        iterator.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertFalse(iterator.hasNext());
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(0, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void closingStreamAbortsConnection() throws IOException
+    {
+        HttpGet get = new HttpGet(url("/endless"));
+        long start = System.nanoTime();
+        try (Stream<Item> stream = HttpUtil.responseToStream(client.execute(get), Item.class, StandardCharsets.UTF_8))
+        {
+            assertEquals("[0, 1, 2]", stream.limit(3).map(item -> item.id).collect(Collectors.toList()).toString());
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, manager.getTotalStats().getLeased());
+        assertEquals(0, manager.getTotalStats().getAvailable());
+    }
+
+    @Test
+    public void parseErrorAbortsConnection() throws IOException
+    {
+        JSONArrayIterator<Item> iterator = iterator("/broken");
+        assertEquals(1, iterator.next().id);
+        try
+        {
+            iterator.next();
+            fail("不完整的json应当解析失败");
+        }
+        catch (JSONException e)
+        {
+            assertFalse(iterator.hasNext());
+        }
+        assertEquals(0, manager.getTotalStats().getLeased());
+    }
+
+    @Test
+    public void nonArrayIsRejected() throws IOException
+    {
+        assertNull(iterator("/object"));
+        assertEquals(0, manager.getTotalStats().getLeased());
+    }
+
+    private JSONArrayIterator<Item> iterator(String path) throws IOException
+    {
+        CloseableHttpResponse response = client.execute(new HttpGet(url(path)));
+        return HttpUtil.responseToIterator(response, Item.class, StandardCharsets.UTF_8);
+    }
+
+    private String url(String path)
+    {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    public static class Item
+    {
+        public int id;
+    }
+}
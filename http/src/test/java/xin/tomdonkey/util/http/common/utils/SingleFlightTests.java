@@ -0,0 +1,205 @@
+package xin.tomdonkey.util.http.common.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 相同key的并发调用合并，异常共享与结果不缓存的测试
+ *
+ * @author guolinyuan
+ */
+public class SingleFlightTests
+{
+    private static final int WAITERS = 4;
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> futures = startWaiters("key", blocking(release, () -> "value"));
+        release.countDown();
+
+        for (Future<String> future : futures)
+        {
+            assertEquals("value", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    public void waitersShareTheException() throws Exception
+    {
+        IllegalStateException failure = new IllegalStateException("远程服务不可用");
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> futures = startWaiters("key", blocking(release, () ->
+        {
+            throw failure;
+        }));
+        release.countDown();
+
+        //执行者与所有等待者收到的都是同一个异常，而不是包装后的异常
+        for (Future<String> future : futures)
+        {
+            try
+            {
+                future.get(5, TimeUnit.SECONDS);
+                fail("等待者应当收到执行时抛出的异常");
+            }
+            catch (ExecutionException e)
+            {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.inFlightCount());
+    }
+
+    @Test
+    public void waitersShareTheError() throws Exception
+    {
+        AssertionError failure = new AssertionError("error");
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> futures = startWaiters("key", blocking(release, () ->
+        {
+            throw failure;
+        }));
+        release.countDown();
+
+        for (Future<String> future : futures)
+        {
+            try
+            {
+                future.get(5, TimeUnit.SECONDS);
+                fail("等待者应当收到执行时抛出的错误");
+            }
+            catch (ExecutionException e)
+            {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void resultIsNotCached()
+    {
+        assertEquals("1", flight.execute("key", () -> String.valueOf(calls.incrementAndGet())));
+        assertEquals("2", flight.execute("key", () -> String.valueOf(calls.incrementAndGet())));
+    }
+
+    @Test
+    public void failureIsNotCached()
+    {
+        try
+        {
+            flight.execute("key", () ->
+            {
+                throw new IllegalStateException("failed");
+            });
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertEquals(0, flight.inFlightCount());
+        }
+        assertEquals("value", flight.execute("key", () -> "value"));
+    }
+
+    @Test
+    public void differentKeysRunIndependently() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked = executor.submit(() -> flight.execute("slow", blocking(release, () -> "slow")));
+        awaitInFlight(1);
+
+        //另一个key不等待进行中的调用
+        assertEquals("fast", flight.execute("fast", () -> "fast"));
+        assertEquals(1, flight.inFlightCount());
+        release.countDown();
+        assertEquals("slow", blocked.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 先启动执行者并等待其开始执行，再启动其余的等待者，保证它们都合并到这一次执行
+     */
+    private List<Future<String>> startWaiters(String key, Supplier<String> loader) throws InterruptedException
+    {
+        List<Future<String>> futures = new ArrayList<>();
+        futures.add(executor.submit(() -> flight.execute(key, loader)));
+        while (calls.get() == 0)
+        {
+            Thread.sleep(1);
+        }
+        CountDownLatch started = new CountDownLatch(WAITERS);
+        for (int i = 0; i < WAITERS; i++)
+        {
+            futures.add(executor.submit(() ->
+            {
+                started.countDown();
+                return flight.execute(key, () ->
+                {
+                    calls.incrementAndGet();
+                    return "unexpected";
+                });
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        //等待者已经进入execute，再给它们一点时间到达等待
+        Thread.sleep(50);
+        return futures;
+    }
+
+    /**
+     * 统计执行次数，并阻塞到release之后才返回的调用
+     */
+    private Supplier<String> blocking(CountDownLatch release, Supplier<String> result)
+    {
+        return () ->
+        {
+            calls.incrementAndGet();
+            try
+            {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return result.get();
+        };
+    }
+
+    private void awaitInFlight(int count) throws InterruptedException
+    {
+        while (flight.inFlightCount() != count)
+        {
+            Thread.sleep(1);
+        }
+    }
+}